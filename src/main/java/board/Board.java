@@ -6,6 +6,7 @@ import ui.UIInterface;
 import board.fields.BoardField;
 import board.fields.StartField;
 
+import java.util.ArrayList;
 import java.util.List;
 
 public class Board {
@@ -61,6 +62,34 @@ public class Board {
 
     public void setFields(java.util.List<BoardField> fields) {
         this.fields = fields;
+        // A replaced board (load/sync) counts as changed everywhere
+        for (BoardField field : fields) {
+            field.markChanged();
+        }
+    }
+
+    /**
+     * The current board version: the newest change counter of any field.
+     */
+    public long getVersion() {
+        long version = 0;
+        for (BoardField field : fields) {
+            version = Math.max(version, field.getChangeVersion());
+        }
+        return version;
+    }
+
+    /**
+     * Returns the fields that changed after the given version, in board order.
+     */
+    public List<BoardField> getFieldsChangedSince(long version) {
+        List<BoardField> changed = new ArrayList<>();
+        for (BoardField field : fields) {
+            if (field.getChangeVersion() > version) {
+                changed.add(field);
+            }
+        }
+        return changed;
     }
 
     public int getBoardSize() {
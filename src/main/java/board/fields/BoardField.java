@@ -4,13 +4,22 @@ import game.GameController;
 import players.Player;
 import util.FieldType;
 import java.io.Serializable;
+import java.util.concurrent.atomic.AtomicLong;
 
 public abstract class BoardField implements Serializable {
+    // Pinned to the original computed value so existing save files keep loading
+    private static final long serialVersionUID = 5961305781631228100L;
+
     protected String name;
     protected String description;
     protected int position;
     protected FieldType type;
 
+    // Change counter used for delta board sync. Drawn from one process-wide clock,
+    // so "changed since version X" is a simple comparison across all fields.
+    private static final AtomicLong CHANGE_CLOCK = new AtomicLong();
+    private transient long changeVersion = CHANGE_CLOCK.incrementAndGet();
+
     public BoardField(String name, String description, int position, FieldType type) {
         this.name = name;
         this.description = description;
@@ -44,4 +53,15 @@ public abstract class BoardField implements Serializable {
     public FieldType getType() {
         return type;
     }
+
+    public long getChangeVersion() {
+        return changeVersion;
+    }
+
+    /**
+     * Must be called by every setter that changes state clients need to see.
+     */
+    public void markChanged() {
+        this.changeVersion = CHANGE_CLOCK.incrementAndGet();
+    }
 }
\ No newline at end of file
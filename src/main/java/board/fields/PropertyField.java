@@ -9,6 +9,9 @@ import util.PropertyType;
 import java.io.Serializable;
 
 public class PropertyField extends BoardField implements Serializable {
+    // Pinned to the original computed value so existing save files keep loading
+    private static final long serialVersionUID = 1859917398620191605L;
+
     private Player owner;
     private int purchaseCost;
     private int[] rentCosts;
@@ -74,6 +77,7 @@ public class PropertyField extends BoardField implements Serializable {
 
     public void setMortgaged(boolean mortgaged) {
         this.isMortgaged = mortgaged;
+        markChanged();
     }
 
     public int getRent() {
@@ -93,6 +97,7 @@ public class PropertyField extends BoardField implements Serializable {
 
     public void setOwner(Player player) {
         this.owner = player;
+        markChanged();
     }
 
     public int getPurchaseCost() {
@@ -115,6 +120,15 @@ public class PropertyField extends BoardField implements Serializable {
         return currentImprovementLevel;
     }
 
+    public void setCurrentImprovementLevel(int level) {
+        this.currentImprovementLevel = level;
+        markChanged();
+    }
+
+    public int[] getRentCosts() {
+        return rentCosts;
+    }
+
     public String getImageUrl() {
         return imageUrl;
     }
@@ -122,6 +136,7 @@ public class PropertyField extends BoardField implements Serializable {
     public void incrementImprovementLevel() {
         if (currentImprovementLevel < mechanics.PropertyDevelopment.MAX_IMPROVEMENT_LEVEL) {
             this.currentImprovementLevel++;
+            markChanged();
         }
     }
 }
\ No newline at end of file
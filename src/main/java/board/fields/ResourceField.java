@@ -9,6 +9,9 @@ import util.FieldType;
 import java.io.Serializable;
 
 public class ResourceField extends BoardField implements Serializable {
+    // Pinned to the original computed value so existing save files keep loading
+    private static final long serialVersionUID = 13056782798947759L;
+
     private ResourceType resourceType;
     private int productionRate;
 
@@ -28,4 +31,12 @@ public class ResourceField extends BoardField implements Serializable {
 
         return true; // Turn is over
     }
+
+    public ResourceType getResourceType() {
+        return resourceType;
+    }
+
+    public int getProductionRate() {
+        return productionRate;
+    }
 }
\ No newline at end of file
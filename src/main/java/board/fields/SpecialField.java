@@ -10,6 +10,9 @@ import util.SpecialEffect;
 import java.io.Serializable;
 
 public class SpecialField extends BoardField implements Serializable {
+    // Pinned to the original computed value so existing save files keep loading
+    private static final long serialVersionUID = 6296788107200414217L;
+
     private SpecialEffect effect;
     private int effectValue; // Generic value for effect (caps, position, etc.)
 
@@ -57,4 +60,12 @@ public class SpecialField extends BoardField implements Serializable {
         }
         return true; // Turn is over for all cases except DRAW_EVENT
     }
+
+    public SpecialEffect getEffect() {
+        return effect;
+    }
+
+    public int getEffectValue() {
+        return effectValue;
+    }
 }
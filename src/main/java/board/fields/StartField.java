@@ -7,6 +7,9 @@ import util.FieldType;
 import java.io.Serializable;
 
 public class StartField extends BoardField implements Serializable {
+    // Pinned to the original computed value so existing save files keep loading
+    private static final long serialVersionUID = 2225184788237935366L;
+
     private int passReward;
 
     public StartField(String name, String description, int position, int passReward) {
@@ -0,0 +1,308 @@
+package game;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+import java.util.function.Predicate;
+
+/**
+ * Runs /gif video conversions a few at a time, instead of a new thread (and a
+ * download and an FFmpeg process) for every request.
+ *
+ * Every player has a queue of their own and the workers take turns between the
+ * players, so one player posting ten clips does not hold up everyone else's. A player
+ * may have -Dvop.gif.maxQueued jobs waiting (default 3). Workers (-Dvop.gif.workers,
+ * default 1) run at low priority, and a running job pauses at its checkpoints for as
+ * long as a game engine has a backlog, so conversions only get what the game leaves
+ * over. Jobs can be cancelled while they wait or while they run.
+ *
+ * Size probes for the host's approval prompt run on a small pool of their own, so
+ * the prompt never waits behind a conversion.
+ */
+public class ConversionScheduler {
+
+    public static final int DEFAULT_WORKERS = Integer.getInteger("vop.gif.workers", 1);
+    public static final int DEFAULT_MAX_QUEUED = Integer.getInteger("vop.gif.maxQueued", 3);
+    /** Threads one FFmpeg run may use (-Dvop.gif.ffmpegThreads), so a conversion leaves cores for the game. */
+    public static final int FFMPEG_THREADS = Integer.getInteger("vop.gif.ffmpegThreads", 2);
+
+    // A busy game delays a checkpoint at most this long, so a job always gets somewhere
+    private static final long MAX_PAUSE_MS = 5000;
+    private static final long PAUSE_STEP_MS = 50;
+    private static final int PROBE_THREADS = 2;
+
+    /** The work of one job. Long-running steps should call {@link Job#checkpoint()} now and then. */
+    public interface Task {
+        void run(Job job) throws Exception;
+    }
+
+    /** Tells whoever asked where their job is. */
+    public interface Feedback {
+        /** Called with the place in line (1 = next) whenever it changes, and with 0 when the job starts. */
+        void position(int position);
+    }
+
+    /** One queued or running conversion. */
+    public final class Job {
+        private final String owner;
+        private final String label;
+        private final Task task;
+        private final Feedback feedback;
+        private volatile boolean cancelled;
+        // Guarded by the scheduler
+        private Thread worker;
+        private int lastPosition = -1;
+
+        private Job(String owner, String label, Task task, Feedback feedback) {
+            this.owner = owner;
+            this.label = label;
+            this.task = task;
+            this.feedback = feedback;
+        }
+
+        public String getOwner() {
+            return owner;
+        }
+
+        public String getLabel() {
+            return label;
+        }
+
+        public boolean isCancelled() {
+            return cancelled;
+        }
+
+        /**
+         * Called by the task between steps. Throws if the job was cancelled, and waits
+         * while the game has work queued.
+         */
+        public void checkpoint() throws InterruptedException {
+            if (cancelled || Thread.currentThread().isInterrupted()) throw new InterruptedException(label + " cancelled");
+            long waited = 0;
+            while (gameBusy.getAsBoolean() && waited < MAX_PAUSE_MS) {
+                Thread.sleep(PAUSE_STEP_MS);
+                waited += PAUSE_STEP_MS;
+            }
+            if (waited > 0) {
+                synchronized (ConversionScheduler.this) {
+                    pausedMs += waited;
+                }
+            }
+        }
+    }
+
+    private final String name;
+    private final int workers;
+    private final int maxQueued;
+    private final BooleanSupplier gameBusy;
+    private final Map<String, ArrayDeque<Job>> waiting = new HashMap<>();
+    // Players with jobs waiting, whoever is next first
+    private final ArrayDeque<String> turns = new ArrayDeque<>();
+    private final List<Job> running = new ArrayList<>();
+    private final List<Thread> threads = new ArrayList<>();
+    private final ThreadPoolExecutor probes;
+
+    // Metrics
+    private long submitted;
+    private long completed;
+    private long failed;
+    private long cancelledJobs;
+    private long refused;
+    private long pausedMs;
+
+    public ConversionScheduler(String name, BooleanSupplier gameBusy) {
+        this(name, DEFAULT_WORKERS, DEFAULT_MAX_QUEUED, gameBusy);
+    }
+
+    public ConversionScheduler(String name, int workers, int maxQueued, BooleanSupplier gameBusy) {
+        this.name = name;
+        this.workers = Math.max(1, workers);
+        this.maxQueued = Math.max(1, maxQueued);
+        this.gameBusy = gameBusy;
+        this.probes = new ThreadPoolExecutor(PROBE_THREADS, PROBE_THREADS, 30, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(), r -> {
+                    Thread t = new Thread(r, "GIF-Probe-" + name);
+                    t.setDaemon(true);
+                    return t;
+                });
+        this.probes.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * Queues a job behind the owner's earlier ones.
+     *
+     * @return the job, or null if the owner already has the maximum number waiting
+     */
+    public Job submit(String owner, String label, Task task, Feedback feedback) {
+        Job job;
+        synchronized (this) {
+            ArrayDeque<Job> queue = waiting.get(owner);
+            if (queue != null && queue.size() >= maxQueued) {
+                refused++;
+                return null;
+            }
+            job = new Job(owner, label, task, feedback);
+            if (queue == null) {
+                queue = new ArrayDeque<>();
+                waiting.put(owner, queue);
+                turns.add(owner);
+            }
+            queue.add(job);
+            submitted++;
+            startWorkers();
+            notifyAll();
+        }
+        notifyPositions();
+        return job;
+    }
+
+    /** Runs a short network lookup (e.g. the size of a video) off the game and UI threads. */
+    public void probe(Runnable probe) {
+        probes.execute(probe);
+    }
+
+    /**
+     * Cancels an owner's jobs, waiting or running.
+     * @return how many were cancelled
+     */
+    public int cancel(String owner) {
+        return cancelAll(owner::equals);
+    }
+
+    /**
+     * Cancels the jobs of every owner the filter accepts, e.g. everyone at one table.
+     * @return how many were cancelled
+     */
+    public int cancelAll(Predicate<String> owners) {
+        int count = 0;
+        synchronized (this) {
+            Iterator<Map.Entry<String, ArrayDeque<Job>>> it = waiting.entrySet().iterator();
+            while (it.hasNext()) {
+                Map.Entry<String, ArrayDeque<Job>> entry = it.next();
+                if (!owners.test(entry.getKey())) continue;
+                turns.remove(entry.getKey());
+                for (Job job : entry.getValue()) job.cancelled = true;
+                count += entry.getValue().size();
+                it.remove();
+            }
+            for (Job job : running) {
+                if (owners.test(job.owner) && !job.cancelled) {
+                    cancelRunning(job);
+                    count++;
+                }
+            }
+            cancelledJobs += count;
+        }
+        if (count > 0) notifyPositions();
+        return count;
+    }
+
+    public synchronized int getWaiting() {
+        int count = 0;
+        for (ArrayDeque<Job> queue : waiting.values()) count += queue.size();
+        return count;
+    }
+
+    public synchronized String getStats() {
+        return String.format("%d waiting, %d/%d running, %d done, %d failed, %d cancelled, %d refused, paused %d ms for the game",
+                getWaiting(), running.size(), workers, completed, failed, cancelledJobs, refused, pausedMs);
+    }
+
+    // Interrupts the download or FFmpeg wait; the task's next checkpoint stops it otherwise
+    private void cancelRunning(Job job) {
+        job.cancelled = true;
+        if (job.worker != null) job.worker.interrupt();
+    }
+
+    private void startWorkers() {
+        while (threads.size() < workers) {
+            Thread t = new Thread(this::work, "GIF-Worker-" + name + "-" + threads.size());
+            t.setDaemon(true);
+            // The game comes first
+            t.setPriority(Thread.MIN_PRIORITY);
+            threads.add(t);
+            t.start();
+        }
+    }
+
+    private void work() {
+        while (true) {
+            Job job;
+            synchronized (this) {
+                while (turns.isEmpty()) {
+                    try {
+                        wait();
+                    } catch (InterruptedException e) {
+                        // Only cancellations interrupt workers, and this one runs nothing
+                    }
+                }
+                job = next();
+                job.worker = Thread.currentThread();
+                running.add(job);
+            }
+            notifyPositions();
+            job.feedback.position(0);
+            boolean ok = false;
+            try {
+                job.checkpoint();
+                job.task.run(job);
+                ok = !job.cancelled;
+            } catch (InterruptedException e) {
+                // Cancelled
+            } catch (Exception e) {
+                System.err.println("GIF job " + job.label + " failed: " + e.getMessage());
+            } finally {
+                synchronized (this) {
+                    running.remove(job);
+                    job.worker = null;
+                    // A cancel that came in late must not hit the next job
+                    Thread.interrupted();
+                    if (ok) completed++;
+                    else if (!job.cancelled) failed++;
+                }
+            }
+        }
+    }
+
+    // Round robin over the players
+    private Job next() {
+        String owner = turns.poll();
+        ArrayDeque<Job> queue = waiting.get(owner);
+        Job job = queue.poll();
+        if (queue.isEmpty()) waiting.remove(owner);
+        else turns.add(owner);
+        return job;
+    }
+
+    // Tells every waiting job whose place in line changed
+    private void notifyPositions() {
+        List<Job> changed = new ArrayList<>();
+        List<Integer> positions = new ArrayList<>();
+        synchronized (this) {
+            Map<String, Iterator<Job>> cursors = new HashMap<>();
+            for (Map.Entry<String, ArrayDeque<Job>> e : waiting.entrySet()) cursors.put(e.getKey(), e.getValue().iterator());
+            ArrayDeque<String> order = new ArrayDeque<>(turns);
+            int position = 0;
+            while (!order.isEmpty()) {
+                String owner = order.poll();
+                Iterator<Job> it = cursors.get(owner);
+                Job job = it.next();
+                position++;
+                if (job.lastPosition != position) {
+                    job.lastPosition = position;
+                    changed.add(job);
+                    positions.add(position);
+                }
+                if (it.hasNext()) order.add(owner);
+            }
+        }
+        for (int i = 0; i < changed.size(); i++) changed.get(i).feedback.position(positions.get(i));
+    }
+}
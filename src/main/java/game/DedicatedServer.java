@@ -0,0 +1,74 @@
+package game;
+
+import ui.ConsoleUI;
+
+import java.io.BufferedReader;
+import java.io.InputStreamReader;
+
+/**
+ * Runs the game server without a desktop: no local player, no windows, no Swing.
+ * Console commands: rooms, engine, open [name], close [name], quit.
+ *
+ * Start with: java -jar vault-o-poly.jar --headless [--port 10365] [--name "My Server"] [--room name]...
+ */
+public class DedicatedServer {
+
+    public static void main(String[] args) throws Exception {
+        System.setProperty("java.awt.headless", "true");
+
+        int port = 10365;
+        String name = "Dedicated Server";
+        java.util.List<String> extraRooms = new java.util.ArrayList<>();
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--port": port = Integer.parseInt(args[++i]); break;
+                case "--name": name = args[++i]; break;
+                case "--room": extraRooms.add(args[++i]); break;
+                default: break; // --headless and unknown flags
+            }
+        }
+
+        long started = System.nanoTime();
+        GameController controller = new GameController(new ConsoleUI(RoomManager.DEFAULT_ROOM), RoomManager.DEFAULT_ROOM);
+        controller.startAsDedicatedServer(name, port);
+        RoomManager rooms = controller.getRoomManager();
+        for (String room : extraRooms) rooms.createRoom(room);
+
+        Runtime rt = Runtime.getRuntime();
+        System.out.println("Dedicated server '" + name + "' ready on port " + port + " in "
+                + (System.nanoTime() - started) / 1_000_000 + " ms, heap used "
+                + (rt.totalMemory() - rt.freeMemory()) / (1024 * 1024) + " MB.");
+
+        BufferedReader console = new BufferedReader(new InputStreamReader(System.in));
+        String line;
+        while ((line = console.readLine()) != null) {
+            String[] parts = line.trim().split("\\s+");
+            switch (parts[0].toLowerCase()) {
+                case "rooms":
+                    rooms.describeRooms().forEach(System.out::println);
+                    break;
+                case "engine":
+                    rooms.describeEngines().forEach(System.out::println);
+                    break;
+                case "open":
+                    if (parts.length > 1) System.out.println(rooms.createRoom(parts[1]) != null ? "Opened." : "Room exists.");
+                    break;
+                case "close":
+                    if (parts.length > 1) System.out.println(rooms.closeRoom(parts[1]) ? "Closed." : "No such room.");
+                    break;
+                case "quit":
+                case "exit":
+                    rooms.stop();
+                    System.exit(0);
+                    break;
+                case "":
+                    break;
+                default:
+                    System.out.println("Commands: rooms, engine, open [name], close [name], quit");
+            }
+        }
+
+        // No console (e.g. running as a service): keep serving
+        Thread.currentThread().join();
+    }
+}
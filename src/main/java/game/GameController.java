@@ -3,27 +3,23 @@ package game;
 import board.Board;
 import board.fields.BoardField;
 import board.fields.PropertyField;
-import com.formdev.flatlaf.FlatDarkLaf;
 import mechanics.*;
 import players.Player;
 import resources.ResourceManager;
 import resources.ResourceType;
+import ui.ChatRenderer;
+import ui.MainMenuWindow;
 import ui.RadioWindow;
 import ui.UIInterface;
 import ui.SwingUI;
 import ui.OwnedPropertiesWindow;
 import util.PlayerToken;
 
-import com.sun.net.httpserver.HttpServer; // New Import for Media Server
 import java.net.InetSocketAddress; // New Import
-import java.nio.file.Files; // For File Operations
 import java.security.MessageDigest; // For Caching Hash
 import java.security.NoSuchAlgorithmException; // For Caching Hash
 import javax.swing.*;
-import javax.swing.event.HyperlinkEvent; // Added for Popup Link
-import java.awt.Desktop; // Added for Popup Link
 import java.awt.Frame;
-import java.io.ObjectOutputStream;
 import java.net.DatagramPacket;
 import java.net.DatagramSocket;
 import java.net.InetAddress;
@@ -35,13 +31,31 @@ import java.util.List;
 import java.util.Map;
 import java.text.SimpleDateFormat;
 import java.util.stream.Collectors;
+import game.network.ChatEvent;
 import game.network.ClientHandler;
+import game.network.ClientListener;
+import game.network.Connection;
+import game.network.JoinSnapshot;
+import game.network.LatencyTracker;
+import game.network.MediaIndex;
+import game.network.MediaReceiver;
+import game.network.MediaSender;
+import game.network.MediaServer;
+import game.network.MessageBatcher;
+import game.network.MessageCodecs;
 import game.network.NetworkMessage;
+import game.network.Protocol;
+import game.network.ReplayBuffer;
+import game.network.SpectatorFeed;
 import util.WebAudioPlayer;
 
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Supplier;
+import java.lang.reflect.InvocationTargetException;
 
-public class GameController {
+public class GameController implements ClientListener {
 
     private Board board;
     private List<Player> players;
@@ -61,16 +75,27 @@ public class GameController {
 
     public boolean isNetworkGame = false;
     private List<ClientHandler> clients = new CopyOnWriteArrayList<>();
+    private final MessageBatcher batcher = new MessageBatcher();
+    // Replay buffers per player slot, kept across reconnects
+    private final Map<PlayerToken, ReplayBuffer> replayBuffers = new ConcurrentHashMap<>();
     private Thread discoveryAnnouncerThread;
-    private ObjectOutputStream networkOut;
+    // Accepts clients for this game and any extra rooms (host only)
+    private RoomManager roomManager;
+    private Connection networkOut;
     private Player self;
 
     // --- MEDIA SERVER FIELDS ---
-    private HttpServer mediaServer;
-    private String hostPublicIp;
+    private MediaServer mediaServer;
+    private GameController mediaHost = this; // Extra rooms use the main game's media server
+    // Video to GIF jobs, shared by all rooms through mediaHost like the media server
+    private final ConversionScheduler conversions;
+    private final String roomName; // What this game was created as, a room's id for extra rooms
+    private volatile String hostPublicIp; // Looked up in the background
     private String hostLocalIp;
 
     private static final int MEDIA_SERVER_PORT = 10366; // Internal Port
+    // Engine commands waiting before conversions step aside
+    private static final int GAME_BUSY_DEPTH = 4;
     private int externalMediaPort = MEDIA_SERVER_PORT;
 
     // --- NEW: TUNNEL DETAILS (Manual Input) ---
@@ -78,9 +103,6 @@ public class GameController {
     private int externalTunnelGamePort = 0;
     // ------------------------------------------
 
-    private static String getCacheDirectory() {
-        return System.getProperty("user.home") + java.io.File.separator + "VaultOPolyCache" + java.io.File.separator + "gifs";
-    }
     // ----------------------------
 
     private Map<Player, PropertyField> pendingPropertyPurchases = new HashMap<>();
@@ -91,10 +113,34 @@ public class GameController {
     private int chatMessageCount = 0;
 
     private mechanics.CasinoConfiguration casinoConfig;
+    private Player casinoPlayer; // Whose casino dialog the host has open (engine thread only)
 
     private boolean running = true;
+    private long lastLocalBoardVersion = -1;
+
+    // Owns all game state changes on the host (null on clients, which only forward requests)
+    private final GameEngine engine;
+    // Prompts sent to remote players that are still waiting for an answer (host only)
+    private final PromptTracker prompts;
+    // Read-only stream for spectators, and the board version it last carried
+    private final SpectatorFeed spectators;
+    private long spectatorBoardVersion = -1;
+    // Client side: joined as a spectator, so there is no player to act as
+    private boolean watchOnly;
+    // Copy of the board for readers outside the engine, replaced whenever the board changes
+    private volatile List<BoardField> boardSnapshot;
 
     public GameController(UIInterface ui) {
+        this(ui, "Game");
+    }
+
+    /** @param name names the engine thread, e.g. after the room this game runs in. */
+    public GameController(UIInterface ui, String name) {
+        this.roomName = name;
+        this.engine = new GameEngine("Engine-" + name);
+        this.prompts = new PromptTracker(engine, this::applyPromptTimeout);
+        this.spectators = new SpectatorFeed(name, SpectatorFeed.DELAY_MS);
+        this.conversions = new ConversionScheduler(name, this::isGameBusy);
         this.players = new CopyOnWriteArrayList<>();
         this.dice = new Dice(2, 6);
         this.baseUI = ui;
@@ -110,7 +156,12 @@ public class GameController {
         this.casinoConfig = new mechanics.CasinoConfiguration();
     }
 
-    public GameController(UIInterface ui, ObjectOutputStream out) {
+    public GameController(UIInterface ui, Connection out) {
+        this.roomName = "client";
+        this.engine = null;
+        this.prompts = null;
+        this.spectators = new SpectatorFeed("client", 0); // Never joined, so it never starts a thread
+        this.conversions = new ConversionScheduler("client", () -> false);
         this.ui = ui;
         this.baseUI = ui;
         this.networkOut = out;
@@ -133,20 +184,18 @@ public class GameController {
         this.self = self;
     }
 
-    public static void main(String[] args) {
-        try {
-            UIManager.setLookAndFeel(new FlatDarkLaf());
-        } catch (Exception e) {
-            e.printStackTrace();
-        }
+    /** Client side: this connection only watches, chat and actions stay local. */
+    public void setWatchOnly(boolean watchOnly) {
+        this.watchOnly = watchOnly;
+    }
 
-        SwingUtilities.invokeLater(() -> {
-            SwingUI swingUI = new SwingUI();
-            GameController controller = new GameController(swingUI);
-            swingUI.setGameController(controller);
-            swingUI.getMainMenuWindow().setGameController(controller);
-            swingUI.show();
-        });
+    /** Client side: switches to a new connection after reconnecting. */
+    public void setNetworkChannel(Connection out) {
+        this.networkOut = out;
+    }
+
+    public static void main(String[] args) {
+        MainMenuWindow.main(args);
     }
 
     public void startAsHost(String username, int port, java.io.File saveFile) {
@@ -163,59 +212,37 @@ public class GameController {
         // ---------------------------------------------
 
         // --- STEP 2: Start Servers ---
-        new Thread(() -> {
-            try (java.net.ServerSocket serverSocket = new java.net.ServerSocket(port)) {
-                System.out.println("Server started on port " + port + ". Waiting for clients...");
-
-                startHttpServer();
-
-                while (true) {
-                    java.net.Socket clientSocket = serverSocket.accept();
-
-                    // Client connection logic remains to detect LAN/WAN connection types
-                    int externalGamePort = clientSocket.getLocalPort();
-
-                    if (externalGamePort != port) {
-                        // This happens if traffic arrived via the tunnel (External port != Internal port)
-                        int internalGamePort = 10365;
-                        int portDifference = MEDIA_SERVER_PORT - internalGamePort; // 10368 - 10365 = 3
-
-                        // Overwrite externalMediaPort with the calculated tunnel port for this session
-                        this.externalMediaPort = externalGamePort + portDifference;
-                        System.out.println("NETWORK: Client connected via WAN tunnel.");
-                        System.out.println("NETWORK: External Game Port detected: " + externalGamePort + ". GIF Port set to: " + this.externalMediaPort);
-                    } else {
-                        this.externalMediaPort = MEDIA_SERVER_PORT;
-                        System.out.println("NETWORK: Client connected via LAN/Localhost. GIF Port set to: " + this.externalMediaPort);
-                    }
-
-                    ClientHandler handler = new ClientHandler(clientSocket, this);
-                    handler.start();
-                }
-            } catch (Exception e) {
-                e.printStackTrace();
-                SwingUtilities.invokeLater(() -> ui.showNotification("Server Error: " + e.getMessage()));
-            }
-        }).start();
+        try {
+            startHttpServer();
+            roomManager = new RoomManager(this);
+            roomManager.listen(port, localPort -> detectMediaPort(localPort, port));
+        } catch (Exception e) {
+            e.printStackTrace();
+            SwingUtilities.invokeLater(() -> ui.showNotification("Server Error: " + e.getMessage()));
+        }
         playLocalSound("start.wav");
 
         startDiscoveryAnnouncer(username + "'s Game", port);
         startHeartbeatLoop();
+        startPingLoop();
 
-        if (saveFile != null) {
-            try {
-                GameSaveState state = SaveManager.loadGame(saveFile);
-                if (state != null) {
-                    restoreGameState(state);
-                    ui.logMessage("Server started on Port " + port + ". Loaded save: " + saveFile.getName());
-                    ui.logMessage("Waiting for clients to reconnect...");
+        // Clients may already be connecting, so the game is set up on the engine
+        engine.submit("host", () -> {
+            if (saveFile != null) {
+                try {
+                    GameSaveState state = SaveManager.loadGame(saveFile);
+                    if (state != null) {
+                        restoreGameState(state);
+                        ui.logMessage("Server started on Port " + port + ". Loaded save: " + saveFile.getName());
+                        ui.logMessage("Waiting for clients to reconnect...");
+                        return;
+                    }
+                } catch (Exception e) {
+                    e.printStackTrace();
                 }
-            } catch (Exception e) {
-                e.printStackTrace();
+                // The servers are already up: only the game itself starts over
                 ui.showNotification("Failed to load save. Starting new game instead.");
-                startAsHost(username, port, null);
             }
-        } else {
             resetGame();
             ui.showBoard(board.getFields());
 
@@ -229,7 +256,49 @@ public class GameController {
             startNextTurn();
 
             ui.logMessage("Server started on Port " + port + ".");
+        });
+    }
+
+    /**
+     * Starts this controller as an extra room on a shared server: no local player,
+     * no listening socket of its own, GIFs are served by the main game's media server.
+     */
+    public void startAsRoom(GameController mediaHost) {
+        this.isNetworkGame = true;
+        this.mediaHost = mediaHost;
+        resetGame();
+        ui.showBoard(board.getFields());
+        this.currentPlayerIndex = 0;
+        this.gameState = GameState.PLAYER_TURN;
+        startHeartbeatLoop();
+        startPingLoop();
+    }
+
+    /**
+     * Starts a dedicated server (see {@link DedicatedServer}): the main room has no local
+     * player, but owns the listening port, the media server and the LAN announcement.
+     */
+    public void startAsDedicatedServer(String serverName, int port) throws java.io.IOException {
+        engine.submit("start", () -> startAsRoom(this));
+        startHttpServer();
+        roomManager = new RoomManager(this);
+        roomManager.listen(port, localPort -> detectMediaPort(localPort, port));
+        startDiscoveryAnnouncer(serverName, port);
+    }
+
+    public RoomManager getRoomManager() {
+        return roomManager;
+    }
+
+    /** Ends a room: stops its loops and disconnects everyone in it. */
+    public void closeRoom() {
+        broadcastMessage(new NetworkMessage(NetworkMessage.MessageType.GAME_OVER, "This room has been closed by the host."));
+        running = false;
+        for (ClientHandler client : clients) {
+            client.disconnect();
         }
+        clients.clear();
+        spectators.close();
     }
 
     /**
@@ -279,52 +348,31 @@ public class GameController {
      */
     private void startHttpServer() {
         if (mediaServer != null) {
-            mediaServer.stop(0);
+            mediaServer.stop();
         }
 
         try {
-            java.io.File cacheDir = new java.io.File(getCacheDirectory());
-
-            if (!cacheDir.exists()) {
-                if (!cacheDir.mkdirs()) {
-                    throw new java.io.IOException("Failed to create cache directory: " + cacheDir.getAbsolutePath());
-                }
-            }
-
             // Listen on the MEDIA_SERVER_PORT on all interfaces (0.0.0.0)
-            mediaServer = HttpServer.create(new InetSocketAddress(MEDIA_SERVER_PORT), 0);
-
-            mediaServer.createContext("/gifs", exchange -> {
-                String path = exchange.getRequestURI().getPath();
-
-                // Map the request URI /gifs/hash.gif to the absolute cache path.
-                String relativePath = path.substring("/gifs".length());
-                java.io.File file = new java.io.File(cacheDir, relativePath);
-
-                if (file.exists() && file.isFile() && path.toLowerCase().endsWith(".gif")) {
-                    exchange.getResponseHeaders().set("Content-Type", "image/gif");
-                    exchange.sendResponseHeaders(200, file.length());
-                    try (java.io.OutputStream os = exchange.getResponseBody()) {
-                        Files.copy(file.toPath(), os);
-                    }
-                } else {
-                    exchange.sendResponseHeaders(404, -1);
-                }
-                exchange.close();
-            });
-
-            mediaServer.setExecutor(null);
+            mediaServer = new MediaServer(MediaIndex.shared(), MEDIA_SERVER_PORT);
             mediaServer.start();
-
-            // Get the external IP (for non-LAN clients)
-            this.hostPublicIp = game.network.IpUtil.getPublicIp();
-
-            ui.logMessage("Media Server ready to serve GIFs at " + this.hostPublicIp + ":" + MEDIA_SERVER_PORT);
-
         } catch (Exception e) {
             ui.logMessage("FATAL: Could not start Media Server on port " + MEDIA_SERVER_PORT + ": " + e.getMessage());
             mediaServer = null;
+            return;
         }
+
+        // Get the external IP (for non-LAN clients). It is a web request of up to 6 s and
+        // the host starts from the menu, so it runs on a thread of its own.
+        Thread lookup = new Thread(() -> {
+            try {
+                this.hostPublicIp = game.network.IpUtil.getPublicIp();
+                ui.logMessage("Media Server ready to serve GIFs at " + this.hostPublicIp + ":" + MEDIA_SERVER_PORT);
+            } catch (Exception e) {
+                ui.logMessage("Media Server running, but the public IP is unknown (" + e.getMessage() + "). GIFs reach LAN and tunnel players only.");
+            }
+        }, "Public-IP-Lookup");
+        lookup.setDaemon(true);
+        lookup.start();
     }
 
     // OPTIMIZED: Reduced heartbeat frequency
@@ -335,19 +383,26 @@ public class GameController {
                     // CHANGED: Increased from 2000ms to 5000ms (5 seconds)
                     Thread.sleep(5000);
 
-                    if (isNetworkGame && !clients.isEmpty()) {
-                        // Only send board state if there are clients
-                        broadcastMessage(new NetworkMessage(
-                                NetworkMessage.MessageType.SYNC_BOARD_STATE,
-                                board.getFields()
-                        ));
-                    }
+                    // The board is only read on the engine thread, the EDT gets a copy
+                    engine.submit("heartbeat", () -> {
+                        if (isNetworkGame && !clients.isEmpty()) {
+                            // Only fields changed since each client's last ack go out
+                            pushBoardDeltas();
+                        }
+                        if (isNetworkGame) publishBoardToSpectators();
+
+                        long version = board.getVersion();
+                        boolean boardChanged = version != lastLocalBoardVersion;
+                        lastLocalBoardVersion = version;
+                        if (boardChanged) publishBoardSnapshot();
 
-                    javax.swing.SwingUtilities.invokeLater(() -> {
                         if (baseUI instanceof SwingUI) {
-                            ((SwingUI) baseUI).updateBoardState(board.getFields());
+                            List<BoardField> snapshot = boardSnapshot;
+                            javax.swing.SwingUtilities.invokeLater(() -> {
+                                if (boardChanged && snapshot != null) ((SwingUI) baseUI).updateBoardState(snapshot);
+                                refreshPropertiesWindow();
+                            });
                         }
-                        refreshPropertiesWindow();
                     });
                 } catch (InterruptedException e) {
                     break;
@@ -360,17 +415,242 @@ public class GameController {
         heartbeat.start();
     }
 
+    // Liveness and latency only; state sync stays in the heartbeat loop
+    private void startPingLoop() {
+        Thread pinger = new Thread(() -> {
+            while (running) {
+                try {
+                    Thread.sleep(LatencyTracker.PING_INTERVAL_MS);
+                    if (!isNetworkGame) continue;
+
+                    for (ClientHandler client : clients) ping(client);
+                    // Spectators are pinged directly, a delayed feed would make them look dead
+                    for (ClientHandler spectator : spectators.getSpectators()) ping(spectator);
+                    if (!clients.isEmpty()) publishLatencies();
+                } catch (InterruptedException e) {
+                    break;
+                } catch (Exception e) {
+                    System.err.println("Ping error: " + e.getMessage());
+                }
+            }
+        }, "Ping");
+        pinger.setDaemon(true);
+        pinger.start();
+    }
+
+    private void ping(ClientHandler client) {
+        LatencyTracker latency = client.getLatency();
+        if (latency.isUnresponsive()) {
+            String name = client.getPlayer() != null ? client.getPlayer().getName() : client.getRemoteAddress();
+            System.out.println("NETWORK: " + name + " stopped answering pings (" + latency.getStats() + "), disconnecting.");
+            client.disconnect();
+            return;
+        }
+        client.sendMessage(new NetworkMessage(NetworkMessage.MessageType.PING, latency.onPingSent()));
+    }
+
+    /** Shares every client's RTT as {token, rtt ms, jitter ms, ...} so all players can see who is lagging. */
+    private void publishLatencies() {
+        List<Object> data = new ArrayList<>();
+        for (ClientHandler client : clients) {
+            Player p = client.getPlayer();
+            int rtt = client.getLatency().getRttMillis();
+            if (p == null || rtt < 0) continue;
+            data.add(p.getToken());
+            data.add(rtt);
+            data.add(client.getLatency().getJitterMillis());
+        }
+        if (data.isEmpty()) return;
+
+        Object[] payload = data.toArray();
+        broadcastMessage(new NetworkMessage(NetworkMessage.MessageType.PLAYER_LATENCY, payload), null);
+        if (baseUI instanceof SwingUI) {
+            javax.swing.SwingUtilities.invokeLater(() -> ((SwingUI) baseUI).updatePlayerLatencies(payload));
+        }
+    }
+
+    /**
+     * Replaces the published board copy. Runs on the engine thread; the copy goes
+     * through the network codec, so readers see the same thing clients do.
+     */
+    @SuppressWarnings("unchecked")
+    private void publishBoardSnapshot() {
+        try {
+            NetworkMessage copy = MessageCodecs.decode(
+                    new NetworkMessage(NetworkMessage.MessageType.SYNC_BOARD_STATE, board.getFields()).encode(MessageCodecs.getDefault()));
+            boardSnapshot = (List<BoardField>) copy.getPayload();
+        } catch (Exception e) {
+            System.err.println("Board snapshot failed: " + e.getMessage());
+        }
+    }
+
+    /** Read-only copy of the board as of the last heartbeat, safe to use from any thread. */
+    public List<BoardField> getBoardSnapshot() {
+        return boardSnapshot;
+    }
+
+    public GameEngine getEngine() {
+        return engine;
+    }
+
+    /** True where game state may be changed directly: on the engine thread, or in a client without one. */
+    private boolean onEngine() {
+        return engine == null || engine.isEngineThread();
+    }
+
+    /**
+     * Moves a state change onto the engine thread, for callers that are not on it.
+     * @return false if the engine turned it away (mailbox full or stopped). The action
+     *         is then lost, and the host is told so they can try again.
+     */
+    private boolean queueOnEngine(String type, Runnable action) {
+        if (engine.submit(type, action)) return true;
+        showChatEvent(ChatEvent.system("The game is too busy and dropped an action (" + type + "). Please try again."));
+        return false;
+    }
+
+    // GIF jobs are shared by all rooms, and names are free text that repeats across rooms and
+    // changes on reconnect, so a job belongs to a seat: token@room (tokens never contain '@')
+    private String jobOwner(Player player) {
+        return player.getToken() + "@" + jobRoom();
+    }
+
+    private String jobRoom() {
+        return mediaHost == this ? RoomManager.DEFAULT_ROOM : roomName;
+    }
+
+    /** True while any room's engine has a backlog; GIF conversions wait for it to clear. */
+    private boolean isGameBusy() {
+        int depth = roomManager != null ? roomManager.getMaxQueueDepth() : engine.getQueueDepth();
+        return depth >= GAME_BUSY_DEPTH;
+    }
+
+    /** Runs a task on the Swing thread, or right away when there is no desktop UI. */
+    private void runOnUiThread(Runnable task) {
+        if (baseUI instanceof SwingUI && !SwingUtilities.isEventDispatchThread()) SwingUtilities.invokeLater(task);
+        else task.run();
+    }
+
     public void updateBoardState(List<BoardField> newFields) {
         this.board.setFields(newFields);
         ui.updateBoardState(newFields);
         refreshPropertiesWindow();
     }
 
+    /**
+     * Client side: applies a JOIN_SNAPSHOT in one go. Must run on the EDT.
+     */
+    public void applyJoinSnapshot(JoinSnapshot snapshot) {
+        this.self = snapshot.getSelf();
+        this.casinoConfig = snapshot.getCasinoConfig();
+        this.players.clear();
+        this.players.addAll(snapshot.getPlayers());
+        this.board.setFields(snapshot.getFields());
+
+        ui.showBoard(snapshot.getFields());
+        for (Player p : snapshot.getPlayers()) {
+            ui.createPlayerToken(p);
+            ui.updatePlayerStats(p);
+            ui.movePlayerToken(p.getToken(), p.getPosition());
+        }
+        for (BoardField field : snapshot.getFields()) {
+            if (field instanceof PropertyField && ((PropertyField) field).getOwner() != null) {
+                ui.updatePropertyOwner(field.getPosition(), ((PropertyField) field).getOwner());
+            }
+        }
+        if (snapshot.getCurrentPlayer() != null) ui.setPlayerTurn(snapshot.getCurrentPlayer());
+        refreshPropertiesWindow();
+    }
+
+    /**
+     * Client side: merges the changed fields of a SYNC_BOARD_DELTA into the local board.
+     * Returns false if the delta does not fit this board and a full resync is needed.
+     */
+    public boolean applyBoardDelta(List<BoardField> changedFields) {
+        List<BoardField> fields = board.getFields();
+        for (BoardField field : changedFields) {
+            if (field.getPosition() < 0 || field.getPosition() >= fields.size()) {
+                return false;
+            }
+        }
+        for (BoardField field : changedFields) {
+            fields.set(field.getPosition(), field);
+        }
+        ui.updateBoardState(fields);
+        refreshPropertiesWindow();
+        return true;
+    }
+
+    /**
+     * Host side: sends each client the fields that changed since the version it last acknowledged.
+     * Clients that have not acknowledged anything yet (join or resync) get the full board.
+     */
+    private void pushBoardDeltas() {
+        // Clients at the same acked version get the same message, so it is only encoded once
+        Map<Long, NetworkMessage> deltasByAcked = new HashMap<>();
+        long version = board.getVersion();
+        for (ClientHandler client : clients) {
+            if (client.getBoardVersionAcked() >= version) continue;
+            client.sendMessage(boardUpdateFor(client, version, deltasByAcked));
+        }
+    }
+
+    /** Spectators all follow one stream, so they share one delta since the last one it carried. */
+    private void publishBoardToSpectators() {
+        long version = board.getVersion();
+        if (spectatorBoardVersion < 0 || version <= spectatorBoardVersion || !spectators.isActive()) return;
+        NetworkMessage delta = new NetworkMessage(NetworkMessage.MessageType.SYNC_BOARD_DELTA,
+                new Object[]{version, false, board.getFieldsChangedSince(spectatorBoardVersion)});
+        spectators.publish(delta, Protocol.DELTA_SYNC, new NetworkMessage(NetworkMessage.MessageType.SYNC_BOARD_STATE, board.getFields()));
+        spectatorBoardVersion = version;
+    }
+
+    private void syncBoard(ClientHandler client) {
+        long version = board.getVersion();
+        if (client.getBoardVersionAcked() >= version) return;
+        client.sendMessage(boardUpdateFor(client, version, new HashMap<>()));
+    }
+
+    private NetworkMessage boardUpdateFor(ClientHandler client, long version, Map<Long, NetworkMessage> byAcked) {
+        if (!client.supports(Protocol.DELTA_SYNC)) {
+            // Without deltas there is nothing to acknowledge, the client gets the whole board each time
+            client.setBoardVersionAcked(version);
+            return byAcked.computeIfAbsent(Long.MIN_VALUE,
+                    k -> new NetworkMessage(NetworkMessage.MessageType.SYNC_BOARD_STATE, board.getFields()));
+        }
+        return byAcked.computeIfAbsent(client.getBoardVersionAcked(), acked -> buildBoardDelta(acked, version));
+    }
+
+    private NetworkMessage buildBoardDelta(long acked, long version) {
+        boolean full = acked < 0;
+        List<BoardField> payload = full ? board.getFields() : board.getFieldsChangedSince(acked);
+        return new NetworkMessage(NetworkMessage.MessageType.SYNC_BOARD_DELTA, new Object[]{version, full, payload});
+    }
+
     public void startAsHost(String username) {
         startAsHost(username, 10365, null);
         startHeartbeatLoop();
     }
 
+    /**
+     * Picks the media port clients should use, based on which port the game connection arrived on.
+     */
+    private void detectMediaPort(int externalGamePort, int port) {
+        if (externalGamePort != port) {
+            // This happens if traffic arrived via the tunnel (External port != Internal port)
+            int internalGamePort = 10365;
+            int portDifference = MEDIA_SERVER_PORT - internalGamePort; // 10368 - 10365 = 3
+
+            // Overwrite externalMediaPort with the calculated tunnel port for this session
+            this.externalMediaPort = externalGamePort + portDifference;
+            System.out.println("NETWORK: Client connected via WAN tunnel.");
+            System.out.println("NETWORK: External Game Port detected: " + externalGamePort + ". GIF Port set to: " + this.externalMediaPort);
+        } else {
+            this.externalMediaPort = MEDIA_SERVER_PORT;
+            System.out.println("NETWORK: Client connected via LAN/Localhost. GIF Port set to: " + this.externalMediaPort);
+        }
+    }
+
     private void startDiscoveryAnnouncer(String gameName, int port) {
         discoveryAnnouncerThread = new Thread(() -> {
             try (DatagramSocket broadcastSocket = new DatagramSocket()) {
@@ -400,17 +680,12 @@ public class GameController {
 
     public void startNewGame(String username) {
         if (isNetworkGame) return;
-        resetGame();
-        this.gameState = GameState.INITIALIZING;
         ui.showGameWindow();
-        SwingWorker<Void, Void> gameInitializer = new SwingWorker<>() {
-            @Override
-            protected Void doInBackground() throws Exception {
-                initializeGame(username);
-                return null;
-            }
-        };
-        gameInitializer.execute();
+        engine.submit("new-game", () -> {
+            resetGame();
+            this.gameState = GameState.INITIALIZING;
+            initializeGame(username);
+        });
         playLocalSound("start.wav");
     }
 
@@ -489,9 +764,15 @@ public class GameController {
             sendNetworkMessage(new NetworkMessage(NetworkMessage.MessageType.REQUEST_ROLL, null));
             return;
         }
-        ui.setControlsEnabled(false, false, false);
-        Player player = players.get(currentPlayerIndex);
-        executeActualRoll(player);
+        if (!onEngine()) { queueOnEngine("roll", this::doRoll); return; }
+        batcher.begin();
+        try {
+            ui.setControlsEnabled(false, false, false);
+            Player player = players.get(currentPlayerIndex);
+            executeActualRoll(player);
+        } finally {
+            batcher.end();
+        }
     }
 
     private void executeActualRoll(Player player) {
@@ -508,8 +789,14 @@ public class GameController {
             sendNetworkMessage(new NetworkMessage(NetworkMessage.MessageType.REQUEST_IMPROVE, null));
             return;
         }
-        Player player = players.get(currentPlayerIndex);
-        handleImprovement(player);
+        if (!onEngine()) { queueOnEngine("improve", this::doImprove); return; }
+        batcher.begin();
+        try {
+            Player player = players.get(currentPlayerIndex);
+            handleImprovement(player);
+        } finally {
+            batcher.end();
+        }
     }
 
     public void doTrade() {
@@ -517,8 +804,14 @@ public class GameController {
             sendNetworkMessage(new NetworkMessage(NetworkMessage.MessageType.REQUEST_TRADE, null));
             return;
         }
-        Player player = players.get(currentPlayerIndex);
-        handleTrade(player);
+        if (!onEngine()) { queueOnEngine("trade", this::doTrade); return; }
+        batcher.begin();
+        try {
+            Player player = players.get(currentPlayerIndex);
+            handleTrade(player);
+        } finally {
+            batcher.end();
+        }
     }
 
     public void doShowFullLog() {
@@ -573,6 +866,7 @@ public class GameController {
     }
 
     public void toggleMortgage(Player player, PropertyField property) {
+        if (!onEngine()) { queueOnEngine("mortgage", () -> toggleMortgage(player, property)); return; }
         if (property.getOwner() != player) return;
 
         if (property.isMortgaged()) {
@@ -764,7 +1058,7 @@ public class GameController {
             refreshPropertiesWindow();
             if (isNetworkGame) {
                 broadcastMessage(new NetworkMessage(NetworkMessage.MessageType.REMOVE_PLAYER_TOKEN, player));
-                broadcastMessage(new NetworkMessage(NetworkMessage.MessageType.SYNC_BOARD_STATE, board.getFields()));
+                pushBoardDeltas();
             }
         }
     }
@@ -786,8 +1080,8 @@ public class GameController {
             options.add("Use 'Get Out of Jail Free' card");
         }
 
-        ClientHandler handler = getHandlerForPlayer(player);
-        if (handler != null) {
+        // Remote players and the host of a network game answer later, through RESPONSE_JAIL_ACTION
+        if (isNetworkGame) {
             ui.askForSelection("You are in jail. What do you do?", options.toArray(new String[0]));
             return;
         }
@@ -849,10 +1143,10 @@ public class GameController {
             pendingPropertyPurchases.put(player, field);
             ClientHandler handler = getHandlerForPlayer(player);
             if (handler != null) {
-                handler.sendMessage(new NetworkMessage(NetworkMessage.MessageType.SHOW_BOOLEAN_DIALOG, prompt));
+                sendPrompt(handler, NetworkMessage.MessageType.SHOW_BOOLEAN_DIALOG,
+                        NetworkMessage.MessageType.RESPONSE_BUY_PROPERTY, PromptTracker.BUY_ON_TIMEOUT, prompt);
             } else {
-                boolean wantsToBuy = ui.askForBoolean(prompt);
-                completePropertyPurchase(player, wantsToBuy, field);
+                askHost(player, NetworkMessage.MessageType.RESPONSE_BUY_PROPERTY, () -> baseUI.askForBoolean(prompt));
             }
         } else {
             boolean wantsToBuy = ui.askForBoolean(prompt);
@@ -986,24 +1280,6 @@ public class GameController {
         return false;
     }
 
-    private String insertZeroWidthSpace(String text, int maxLength) {
-        if (text == null || text.isEmpty()) return text;
-        StringBuilder result = new StringBuilder();
-        for (String word : text.split("\\s+")) {
-            if (word.length() > maxLength) {
-                result.append('\u200B');
-                for (int i = 0; i < word.length(); i += maxLength) {
-                    result.append(word.substring(i, Math.min(i + maxLength, word.length())));
-                    if (i + maxLength < word.length()) result.append('\u200B');
-                }
-            } else {
-                result.append(word);
-            }
-            result.append(" ");
-        }
-        return result.toString().trim();
-    }
-
     // --- HELPER: Parse Time Strings ---
     private double parseTime(String timeStr) {
         if (timeStr == null) return 0;
@@ -1018,16 +1294,69 @@ public class GameController {
 
     // --- NETWORK HELPER METHODS ---
     public void addClient(ClientHandler client, String username) {
+        if (client.isSpectator()) {
+            joinSpectator(client, username);
+            return;
+        }
+        client.setBatcher(batcher);
+        batcher.begin();
+        try {
+            joinClient(client, username);
+        } finally {
+            batcher.end();
+        }
+    }
+
+    /**
+     * Lets a client watch without taking a seat: the snapshot a player would get, minus
+     * the self, then the spectator feed instead of the players' broadcast.
+     */
+    private void joinSpectator(ClientHandler client, String username) {
+        long version = board.getVersion();
+        // Deltas for spectators start from the oldest snapshot any of them holds
+        if (spectatorBoardVersion < 0 || !spectators.isActive()) spectatorBoardVersion = version;
+        JoinSnapshot snapshot = new JoinSnapshot(version, board.getFields(), new ArrayList<>(players),
+                -1, currentPlayerIndex, casinoConfig);
+        client.setBoardVersionAcked(version);
+        spectators.join(client, List.of(new NetworkMessage(NetworkMessage.MessageType.JOIN_SNAPSHOT, snapshot)));
+        System.out.println("NETWORK: " + username + " is watching (" + spectators.size() + " spectators)");
+    }
+
+    public int getSpectatorCount() {
+        return spectators.size();
+    }
+
+    private void joinClient(ClientHandler client, String username) {
         ui.logMessage("Client connecting: " + username);
         Player playerForClient = null;
         boolean isReconnection = false;
-        for (Player p : players) {
-            if (p != this.self && p.getNetworkHandler() == null) {
-                playerForClient = p;
-                isReconnection = true;
-                p.setName(username);
-                ui.logMessage("Reconnecting " + username + " to existing slot: " + p.getToken());
-                break;
+        PlayerToken resumeSlot = client.getResumeSlot();
+        if (resumeSlot != null) {
+            for (Player p : players) {
+                if (p != this.self && p.getToken() == resumeSlot) {
+                    ClientHandler previous = p.getNetworkHandler();
+                    if (previous != null && previous != client) {
+                        // The old connection has not timed out yet, take over its slot
+                        clients.remove(previous);
+                        previous.detachReplay();
+                        previous.disconnect();
+                    }
+                    playerForClient = p;
+                    isReconnection = true;
+                    p.setName(username);
+                    break;
+                }
+            }
+        }
+        if (playerForClient == null) {
+            for (Player p : players) {
+                if (p != this.self && p.getNetworkHandler() == null) {
+                    playerForClient = p;
+                    isReconnection = true;
+                    p.setName(username);
+                    ui.logMessage("Reconnecting " + username + " to existing slot: " + p.getToken());
+                    break;
+                }
             }
         }
         if (playerForClient == null) {
@@ -1039,75 +1368,158 @@ public class GameController {
         playerForClient.setNetworkHandler(client);
         client.setPlayer(playerForClient);
         this.clients.add(client);
-        client.sendMessage(new NetworkMessage(NetworkMessage.MessageType.SET_CLIENT_PLAYER, playerForClient));
-        client.sendMessage(new NetworkMessage(NetworkMessage.MessageType.INITIALIZE_BOARD, board.getFields()));
-        for (Player p : players) {
-            client.sendMessage(new NetworkMessage(NetworkMessage.MessageType.ADD_PLAYER_TOKEN, p));
-            client.sendMessage(new NetworkMessage(NetworkMessage.MessageType.UPDATE_PLAYER_STATS, p));
-            client.sendMessage(new NetworkMessage(NetworkMessage.MessageType.MOVE_PLAYER_TOKEN, new Object[]{p.getToken(), p.getPosition()}));
-        }
-        for (BoardField field : board.getFields()) {
-            if (field instanceof PropertyField) {
-                PropertyField prop = (PropertyField) field;
-                if (prop.getOwner() != null) {
-                    client.sendMessage(new NetworkMessage(NetworkMessage.MessageType.UPDATE_PROPERTY_OWNER, new Object[]{prop.getPosition(), prop.getOwner()}));
-                }
+
+        ReplayBuffer replay = replayBuffers.computeIfAbsent(playerForClient.getToken(), t -> new ReplayBuffer());
+        if (resumeSlot == playerForClient.getToken() && client.getResumeEpoch() == replay.getEpoch()) {
+            int replayed = client.resume(replay, client.getResumeSequence());
+            if (replayed >= 0) {
+                client.sendMessage(new NetworkMessage(NetworkMessage.MessageType.SESSION_INFO,
+                        new Object[]{playerForClient.getToken(), replay.getEpoch(), true}));
+                System.out.println("NETWORK: " + username + " resumed after #" + client.getResumeSequence() + ", replayed " + replayed + " messages");
+                ui.logMessage(username + " reconnected.");
+                return;
             }
         }
+
+        // Fresh stream: the snapshot replaces whatever an older connection missed
+        replay.takeUnsent();
+        client.attachReplay(replay);
+        client.sendMessage(new NetworkMessage(NetworkMessage.MessageType.SESSION_INFO,
+                new Object[]{playerForClient.getToken(), replay.getEpoch(), false}));
+        sendJoinSnapshot(client, playerForClient);
         if (!isReconnection) ui.createPlayerToken(playerForClient);
         else {
             ui.updatePlayerStats(playerForClient);
             broadcastMessage(new NetworkMessage(NetworkMessage.MessageType.UPDATE_PLAYER_STATS, playerForClient));
         }
-        Player currentPlayer = players.get(currentPlayerIndex);
-        client.sendMessage(new NetworkMessage(NetworkMessage.MessageType.SET_PLAYER_TURN, currentPlayer));
-        ui.displayChatMessage("*** " + username + " has joined the game. ***");
+        postChat(ChatEvent.notice("*** " + username + " has joined the game. ***"), null);
+
+        // A room without a local player starts once somebody sits down
+        if (self == null && players.size() == 1 && !isReconnection) startNextTurn();
+    }
+
+    /**
+     * Sends the whole game (board, players, ownership, turn, casino) as one JOIN_SNAPSHOT.
+     * The join is timed until the client acknowledges the snapshot's board version.
+     */
+    private void sendJoinSnapshot(ClientHandler client, Player playerForClient) {
+        long version = board.getVersion();
+        List<Player> snapshotPlayers = new ArrayList<>(players);
+        JoinSnapshot snapshot = new JoinSnapshot(version, board.getFields(), snapshotPlayers,
+                snapshotPlayers.indexOf(playerForClient), currentPlayerIndex, casinoConfig);
+        NetworkMessage msg = new NetworkMessage(NetworkMessage.MessageType.JOIN_SNAPSHOT, snapshot);
+        // Not encoded here just to log its size: it goes out inside a BATCH, encoded with the client's codec
+        System.out.println("NETWORK: Join snapshot for " + playerForClient.getName() + ": " + board.getFields().size()
+                + " fields, " + snapshotPlayers.size() + " players, board v" + version);
+
+        // Deltas after this version are valid on top of the snapshot
+        client.setBoardVersionAcked(version);
+        client.markJoinStarted();
+        client.sendMessage(msg);
     }
 
     public void removeClient(ClientHandler client) {
+        if (client.isSpectator()) {
+            spectators.leave(client);
+            return;
+        }
         clients.remove(client);
+        client.abortMedia();
+        client.detachReplay(); // Keeps unsent messages for a quick resume
         Player player = client.getPlayer();
-        if (player != null) {
+        if (player != null && player.getNetworkHandler() == client) {
             player.setNetworkHandler(null);
             ui.logMessage("Player " + player.getName() + " disconnected.");
-            ui.displayChatMessage("*** " + player.getName() + " has disconnected. ***");
+            postChat(ChatEvent.notice("*** " + player.getName() + " has disconnected. ***"), null);
         }
     }
 
-    private static final Map<PlayerToken, String> PLAYER_COLORS = Map.of(
-            PlayerToken.VAULT_BOY, "#88B1D8",
-            PlayerToken.NUKA_GIRL, "#D88888",
-            PlayerToken.DOGMEAT, "#D8B188",
-            PlayerToken.GHOUL, "#88D888"
-    );
-    private static final String DEFAULT_COLOR = "#AAAAAA";
-
     /**
-     * Handles receiving raw chat data (Name + Token + Message).
-     * Generates the HTML using LOCAL resources.
+     * Shows a chat line that arrived as raw data (PLAYER_CHAT from a host that does
+     * not send chat events). Rendered here with this machine's resources.
      */
-    // REFACTORED: Chat message handling with limit
     public void handleIncomingChat(String senderName, PlayerToken token, String message) {
         Player p = getPlayerByName(senderName);
+        if (p != null) showChatEvent(ChatEvent.publicMessage(p.getName(), p.getToken(), message));
+        else showChatEvent(ChatEvent.publicMessage(senderName, token != null ? token : PlayerToken.VAULT_BOY, message));
+    }
+
+    /** Renders a chat event into this machine's chat only. */
+    public void showChatEvent(ChatEvent event) {
+        String html = ChatRenderer.shared().render(event);
+        runOnUiThread(() -> {
+            baseUI.displayChatMessage(html);
+
+            // Chat message limit to prevent memory issues
+            chatMessageCount++;
+            if (chatMessageCount > MAX_CHAT_MESSAGES) {
+                chatMessageCount = 0;
+                baseUI.clearLog();
+                baseUI.displayChatMessage("<p class=\"system\">--- Chat history cleared (message limit reached) ---</p>");
+            }
+        });
+    }
 
-        if (p == null) {
-            p = new Player(senderName, token != null ? token : PlayerToken.VAULT_BOY);
+    /**
+     * Shows a chat event to one player, or to everyone when to is null. Clients that
+     * agreed to {@link Protocol#CHAT_EVENTS} get the event and render it themselves;
+     * older clients get PLAYER_CHAT or HTML rendered here, once per event.
+     */
+    private void postChat(ChatEvent event, Player to) {
+        boolean local = !isNetworkGame || to == null || to.equals(self);
+        if (local) showChatEvent(event);
+        if (!isNetworkGame || (to != null && to.equals(self))) return;
+
+        List<ClientHandler> recipients = clients;
+        if (to != null) {
+            ClientHandler handler = getHandlerForPlayer(to);
+            if (handler == null) {
+                showChatEvent(event);
+                return;
+            }
+            recipients = List.of(handler);
+        }
+        // Both forms are built at most once, so their encoding is shared by every recipient
+        NetworkMessage structured = null;
+        NetworkMessage legacy = null;
+        for (ClientHandler client : recipients) {
+            if (client.supports(Protocol.CHAT_EVENTS)) {
+                if (structured == null) structured = new NetworkMessage(NetworkMessage.MessageType.CHAT_EVENT, event);
+                client.sendMessage(structured);
+            } else {
+                if (legacy == null) legacy = legacyChatMessage(event);
+                client.sendMessage(legacy);
+            }
         }
+        if (to == null && spectators.isActive()) {
+            spectators.publish(structured != null ? structured : new NetworkMessage(NetworkMessage.MessageType.CHAT_EVENT, event),
+                    Protocol.CHAT_EVENTS, legacy != null ? legacy : legacyChatMessage(event));
+        }
+    }
 
-        String html = formatPublicMessage(p, message);
-        baseUI.displayChatMessage(html);
-
-        // ADDED: Chat message limit to prevent memory issues
-        chatMessageCount++;
-        if (chatMessageCount > MAX_CHAT_MESSAGES) {
-            chatMessageCount = 0;
-            baseUI.clearLog();
-            baseUI.displayChatMessage("<p class=\"system\">--- Chat history cleared (message limit reached) ---</p>");
+    private static NetworkMessage legacyChatMessage(ChatEvent event) {
+        if (event.getKind() == ChatEvent.Kind.PUBLIC) {
+            return new NetworkMessage(NetworkMessage.MessageType.PLAYER_CHAT,
+                    new Object[]{event.getSender(), event.getSenderToken(), event.getText()});
         }
+        return new NetworkMessage(NetworkMessage.MessageType.CHAT_MESSAGE, ChatRenderer.shared().render(event));
+    }
+
+    /** Commands that only open something on this machine, never sent to the host. */
+    private static boolean isLocalCommand(String command) {
+        return command.equals("/radio") || command.equals("/music") || command.equals("/log")
+                || command.equals("/history") || command.equals("/help");
     }
 
     public void sendChatMessage(String message) {
         if (message == null || message.isBlank()) return;
+        if (networkOut == null && !onEngine()) { queueOnEngine("chat", () -> sendChatMessage(message)); return; }
+
+        boolean localCommand = isLocalCommand(message.split(" ")[0].toLowerCase());
+        if (watchOnly && !localCommand) {
+            showChatEvent(ChatEvent.system("You are watching this game. Spectators cannot chat or play."));
+            return;
+        }
 
         if (message.trim().equalsIgnoreCase("/casino")) {
             doCasino();
@@ -1119,9 +1531,12 @@ public class GameController {
         if (message.startsWith("/")) {
             String command = message.split(" ")[0].toLowerCase();
 
-            if (command.equals("/radio") || command.equals("/music") ||
-                    command.equals("/log") || command.equals("/history") ||
-                    command.equals("/help")) {
+            if (command.equals("/img")) {
+                shareLocalImage(player, message.substring(command.length()).trim());
+                return;
+            }
+
+            if (localCommand) {
                 handleChatCommand(player, message);
                 return;
             }
@@ -1139,119 +1554,12 @@ public class GameController {
         if (isNetworkGame && networkOut != null) {
             sendNetworkMessage(new NetworkMessage(NetworkMessage.MessageType.REQUEST_CHAT_MESSAGE, message));
         } else {
-            if (isNetworkGame) {
-                handleIncomingChat(player.getName(), player.getToken(), message);
-                Object[] payload = { player.getName(), player.getToken(), message };
-                broadcastMessage(new NetworkMessage(NetworkMessage.MessageType.PLAYER_CHAT, payload));
-            } else {
-                handleIncomingChat(player.getName(), player.getToken(), message);
-            }
+            postChat(ChatEvent.publicMessage(player.getName(), player.getToken(), message), null);
         }
     }
 
     private String getTimestamp() { return new SimpleDateFormat("HH:mm").format(new Date()); }
-    private String getPlayerColor(Player player) { return (player == null || player.getToken() == null) ? DEFAULT_COLOR : PLAYER_COLORS.getOrDefault(player.getToken(), DEFAULT_COLOR); }
     private Player getPlayerByName(String name) { if (name == null) return null; for (Player p : players) if (p.getName().equalsIgnoreCase(name)) return p; return null; }
-    // --- FIX: Player Token Pathing for Chat ---
-    /**
-     * Generates an HTML image tag for the player's token icon.
-     */
-    private String getPlayerIconTag(Player player) {
-        if (player == null || player.getToken() == null) return "";
-
-        // Construct path: e.g., /tokens/vault_boy.png
-        String path = "/tokens/" + player.getToken().name().toLowerCase() + ".png";
-
-        // This now runs on the CLIENT's machine, so it finds the image inside the Client's JAR/Resource folder
-        java.net.URL url = getClass().getResource(path);
-
-        if (url != null) {
-            return "<img src='" + url.toString() + "' width='24' height='24' align='middle'> ";
-        }
-        return "";
-    }
-    private String escapeHtml(String text) { return text.replace("&", "&amp;").replace("<", "&lt;").replace(">", "&gt;"); }
-
-    private String formatPublicMessage(Player player, String message) {
-        String color = getPlayerColor(player);
-        String name = escapeHtml(player.getName());
-        String processedMessage = insertZeroWidthSpace(message, 20);
-        String msg = escapeHtml(processedMessage);
-        String iconHtml = getPlayerIconTag(player);
-        return String.format("<div class=\"bubble-container\"><p class=\"chat-bubble\"><span class=\"timestamp\">%s</span>%s<span class=\"name\" style=\"color: %s;\">%s:</span> <span class=\"message\">%s</span></p></div>", getTimestamp(), iconHtml, color, name, msg);
-    }
-
-    private String formatMeMessage(Player player, String message) {
-        String color = getPlayerColor(player);
-        String name = escapeHtml(player.getName());
-        String processedMessage = insertZeroWidthSpace(message, 20);
-        String msg = escapeHtml(processedMessage);
-        return String.format("<p class=\"system log\">* <font color='%s'>%s</font> %s *</p>", color, name, msg);
-    }
-
-    private String formatGifMessage(Player player, String url) {
-        // This method is now used by both the conversion process (to create the URL)
-        // AND the chat message handler (to display the final result).
-        String color = getPlayerColor(player);
-        String name = escapeHtml(player.getName());
-        String finalUrl = url;
-        if (isUnsupportedFormat(finalUrl)) ui.logMessage("NOTE: Image format (e.g., .webp) is NOT supported by the game client and may not display: " + finalUrl);
-        return String.format("<div class=\"bubble-container\"><p class=\"chat-bubble\"><span class=\"timestamp\">%s</span><span class=\"name\" style=\"color: %s;\">%s:</span> <span class=\"message\"><img src='%s' width='150'></span></p></div>", getTimestamp(), color, name, finalUrl);
-    }
-
-    private String formatPrivateMessage(String fromName, String toName, String message, String fromColor, String toColor, boolean isSender) {
-        String processedMessage = insertZeroWidthSpace(message, 20);
-        String msg = escapeHtml(processedMessage);
-        if (isSender) return String.format("<p class=\"system private\">%s [To <font color='%s'>%s</font>]: %s</p>", getTimestamp(), toColor, escapeHtml(toName), msg);
-        else return String.format("<p class=\"system private\">%s [From <font color='%s'>%s</font>]: %s</p>", getTimestamp(), fromColor, escapeHtml(fromName), msg);
-    }
-
-    private void sendPrivateMessage(Player player, String htmlMessage) {
-        if (isNetworkGame) {
-            ClientHandler handler = getHandlerForPlayer(player);
-            if (handler != null) handler.sendMessage(new NetworkMessage(NetworkMessage.MessageType.CHAT_MESSAGE, htmlMessage));
-            else baseUI.displayChatMessage(htmlMessage);
-        } else {
-            baseUI.displayChatMessage(htmlMessage);
-        }
-    }
-
-    private boolean showGifConfirmationDialog(String username, String url, long fileSizeBytes, double durationSeconds) {
-        String sourceSize = "Unknown";
-        if (fileSizeBytes > 0) {
-            double mb = fileSizeBytes / (1024.0 * 1024.0);
-            sourceSize = String.format("%.2f MB", mb);
-        }
-
-        // ESTIMATION: 320p @ 10fps usually averages 0.3-0.5 MB/s depending on complexity/dithering.
-        // We use 0.35 MB/s as a reasonable heuristic to warn the host.
-        double estMb = durationSeconds * 0.35;
-        String estSize = String.format("~%.2f MB", estMb);
-
-        JEditorPane linkPane = new JEditorPane("text/html",
-                "<html><body style='font-family: Sans-Serif;'>" +
-                        "Request from: <b>" + username + "</b><br>" +
-                        "File: " + (url.length() > 50 ? url.substring(0, 47) + "..." : url) + "<br>" +
-                        "Video Size: <b>" + sourceSize + "</b><br>" +
-                        "Est. GIF Size: <b>" + estSize + "</b><br><br>" +
-                        "<b><a href='" + url + "' style='color: #55ff55;'>Open in Browser</a></b><br><br>" +
-                        "Do you want to download and convert this file?</body></html>");
-        linkPane.setEditable(false);
-        linkPane.setOpaque(false);
-        linkPane.putClientProperty(JEditorPane.HONOR_DISPLAY_PROPERTIES, Boolean.TRUE);
-        linkPane.addHyperlinkListener(e -> {
-            if (HyperlinkEvent.EventType.ACTIVATED.equals(e.getEventType())) {
-                try {
-                    Desktop.getDesktop().browse(e.getURL().toURI());
-                } catch (Exception ex) { ex.printStackTrace(); }
-            }
-        });
-
-        java.awt.Component parent = (baseUI instanceof SwingUI) ? ((SwingUI) baseUI).getGameWindow() : null;
-        int ret = JOptionPane.showConfirmDialog(parent, linkPane, "Security Warning: External Media", JOptionPane.YES_NO_OPTION, JOptionPane.WARNING_MESSAGE);
-        return ret == JOptionPane.YES_OPTION;
-    }
-
     private void handleChatCommand(Player player, String message) {
         String[] parts = message.split(" ");
         String command = parts[0].toLowerCase();
@@ -1265,10 +1573,10 @@ public class GameController {
                 return;
             }
         }
-        List<String> debugCmds = Arrays.asList("/setcaps", "/setowner", "/setres", "/setscraps", "/teleport", "/tp", "/addcaps");
+        List<String> debugCmds = Arrays.asList("/setcaps", "/setowner", "/setres", "/setscraps", "/teleport", "/tp", "/addcaps", "/netstats", "/rooms", "/room", "/engine");
         if (debugCmds.contains(command)) {
             if (isNetworkGame && !player.equals(this.self)) {
-                sendPrivateMessage(player, "<p class=\"log\">" + getTimestamp() + " <i>[System] Access Denied: Host Only.</i></p>");
+                postChat(ChatEvent.system("Access Denied: Host Only."), player);
                 return;
             }
             handleDebugCommand(player, command, parts);
@@ -1278,35 +1586,46 @@ public class GameController {
             case "/roll":
                 if (player == players.get(currentPlayerIndex) && gameState == GameState.PLAYER_TURN && !player.isInJail()) {
                     ui.logMessage("*** " + player.getName() + " used /roll command! ***"); doRoll();
-                } else { sendPrivateMessage(player, "<p class=\"log\">"+getTimestamp()+" <i>[System] You can't use /roll right now.</i></p>"); }
+                } else { postChat(ChatEvent.system("You can't use /roll right now."), player); }
                 break;
             case "/casino":
                 if (player == players.get(currentPlayerIndex) && gameState == GameState.PLAYER_TURN && !player.isInJail()) {
                     ClientHandler client = getHandlerForPlayer(player);
                     if (client != null) client.sendMessage(new NetworkMessage(NetworkMessage.MessageType.SHOW_CASINO_DIALOG, this.currentCasinoConfig));
-                } else { sendPrivateMessage(player, "<p class=\"log\">"+getTimestamp()+" <i>[System] You can't use /casino right now.</i></p>"); }
+                } else { postChat(ChatEvent.system("You can't use /casino right now."), player); }
                 break;
             case "/help":
-                String helpMsg = "<p class=\"log\">" + getTimestamp() + " <i>[System] Commands:<br>&nbsp; /roll, /casino, /w [name] [msg], /me [action], /gif [url]<br>&nbsp; (Host Only): /setcaps, /setowner, /setres, /teleport</i></p>";
-                sendPrivateMessage(player, helpMsg);
+                postChat(ChatEvent.system("Commands:\n/roll, /casino, /w [name] [msg], /me [action], /gif [url], /gif cancel, /img [path]"
+                        + "\n(Host Only): /setcaps, /setowner, /setres, /teleport, /netstats, /engine, /rooms, /room open|close [name]"), player);
                 break;
             case "/w": case "/msg":
-                if (parts.length < 3) { sendPrivateMessage(player, "<p class=\"log\">"+getTimestamp()+" <i>[System] Usage: /w [name] [message]</i></p>"); return; }
+                if (parts.length < 3) { postChat(ChatEvent.system("Usage: /w [name] [message]"), player); return; }
                 Player target = getPlayerByName(parts[1]);
-                if (target == null) { sendPrivateMessage(player, "<p class=\"log\">"+getTimestamp()+" <i>[System] Player not found.</i></p>"); return; }
+                if (target == null) { postChat(ChatEvent.system("Player not found."), player); return; }
                 String pm = String.join(" ", Arrays.copyOfRange(parts, 2, parts.length));
-                String fromColor = getPlayerColor(player); String toColor = getPlayerColor(target);
-                sendPrivateMessage(player, formatPrivateMessage(player.getName(), target.getName(), pm, fromColor, toColor, true));
-                sendPrivateMessage(target, formatPrivateMessage(player.getName(), target.getName(), pm, fromColor, toColor, false));
+                ChatEvent[] whisper = ChatEvent.whisper(player.getName(), player.getToken(), target.getName(), target.getToken(), pm);
+                postChat(whisper[0], player);
+                postChat(whisper[1], target);
                 break;
             case "/me":
                 if (parts.length < 2) return;
                 String action = String.join(" ", Arrays.copyOfRange(parts, 1, parts.length));
-                ui.displayChatMessage(formatMeMessage(player, action));
+                postChat(ChatEvent.emote(player.getName(), player.getToken(), action), null);
                 break;
             case "/gif":
                 if (parts.length < 2) return;
 
+                if (parts[1].equalsIgnoreCase("cancel")) {
+                    // The host may clear this table's queue, everyone else only their own jobs
+                    boolean all = parts.length > 2 && parts[2].equalsIgnoreCase("all") && player.equals(self);
+                    String room = jobRoom();
+                    int cancelled = all
+                            ? mediaHost.conversions.cancelAll(owner -> owner.substring(owner.indexOf('@') + 1).equals(room))
+                            : mediaHost.conversions.cancel(jobOwner(player));
+                    postChat(ChatEvent.system(cancelled == 0 ? "No GIFs to cancel." : "Cancelled " + cancelled + " GIF(s)."), player);
+                    return;
+                }
+
                 String rawUrl = parts[1];
                 rawUrl = rawUrl.replace("\u200B", "");
                 boolean cleanFlag = (parts.length > 2 && parts[2].equalsIgnoreCase("-c"));
@@ -1332,7 +1651,7 @@ public class GameController {
                         double d = Double.parseDouble(parts[argIdx + 1]);
                         if (d > maxDurationSeconds) {
                             d = maxDurationSeconds;
-                            sendPrivateMessage(player, String.format("Duration clamped to max allowed: %.0fs.", maxDurationSeconds));
+                            postChat(ChatEvent.system(String.format("Duration clamped to max allowed: %.0fs.", maxDurationSeconds)), player);
                         }
                         durationVal = d;
                         duration = String.valueOf(d);
@@ -1350,9 +1669,8 @@ public class GameController {
 
                     // Check if file exists in cache to bypass confirmation
                     String cacheKey = generateHash(url + "_" + start + "_" + duration);
-                    java.io.File cacheDir = new java.io.File(getCacheDirectory());
-                    java.io.File cachedFile = new java.io.File(cacheDir, cacheKey + ".gif");
-                    boolean isCached = cachedFile.exists();
+                    // A clip the host already approved and is converting needs no second approval
+                    boolean isCached = MediaIndex.shared().contains(cacheKey) || MediaIndex.shared().isConverting(cacheKey);
 
                     // --- NEW: HOST CONFIRMATION (Only if NOT cached) ---
                     if (isNetworkGame && !player.equals(this.self) && !isCached) {
@@ -1363,7 +1681,7 @@ public class GameController {
                         final long fLimit = calcLimit;
 
                         // Fetch size asynchronously before showing dialog
-                        new Thread(() -> {
+                        mediaHost.conversions.probe(() -> {
                             long size = -1;
                             try {
                                 java.net.HttpURLConnection conn = (java.net.HttpURLConnection) new java.net.URL(fUrl).openConnection();
@@ -1377,237 +1695,305 @@ public class GameController {
                             } catch (Exception e) { /* ignore */ }
 
                             final long fSize = size;
-                            SwingUtilities.invokeLater(() -> {
-                                if (showGifConfirmationDialog(player.getName(), fUrl, fSize, fDurationVal)) {
-                                    processVideoToGif(fUrl, fStart, fDuration, fLimit);
-                                } else {
-                                    sendPrivateMessage(player, "<p class=\"system\">Host denied your GIF request.</p>");
-                                }
+                            runOnUiThread(() -> {
+                                // A dedicated server has nobody to ask, so it only serves cached GIFs
+                                boolean approved = baseUI instanceof SwingUI
+                                        && ((SwingUI) baseUI).confirmGifRequest(player.getName(), fUrl, fSize, fDurationVal);
+                                // The answer goes back to the engine, which owns chat and the queue
+                                queueOnEngine("gif-approval", () -> {
+                                    if (approved) {
+                                        processVideoToGif(player, fUrl, fStart, fDuration, fLimit);
+                                    } else {
+                                        postChat(ChatEvent.notice("Host denied your GIF request."), player);
+                                    }
+                                });
                             });
-                        }).start();
+                        });
                         return;
                     }
                     // ------------------------------
 
-                    processVideoToGif(url, start, duration, calcLimit);
+                    processVideoToGif(player, url, start, duration, calcLimit);
                     return;
                 }
                 if (util.ImageConverter.isWebP(url)) {
                     ui.logMessage("Converting WebP image...");
                     ui.showProgress("Converting WebP...", -1);
-                    new SwingWorker<String, Void>() {
-                        @Override protected String doInBackground() { return util.ImageConverter.convertWebPtoPng(url); }
-                        @Override protected void done() {
+                    // Off the engine and without Swing, which a dedicated server never loads
+                    mediaHost.conversions.probe(() -> {
+                        // Falls back to the original URL if the image cannot be converted
+                        String localPngUrl = util.ImageConverter.convertWebPtoPng(url);
+                        queueOnEngine("webp", () -> {
                             ui.hideProgress();
-                            try {
-                                String localPngUrl = get();
-                                ui.displayChatMessage(formatGifMessage(player, localPngUrl));
-                            } catch (Exception e) { ui.logMessage("Failed to load image."); }
-                        }
-                    }.execute();
+                            handleGifUrlMessage(player, localPngUrl);
+                        });
+                    });
                     return;
                 }
-                ui.displayChatMessage(formatGifMessage(player, url));
+                handleGifUrlMessage(player, url);
                 break;
 
             case "/radio":
             case "/music":
                 ui.showRadioWindow();
-                sendPrivateMessage(player, "<p class=\"log\">" + getTimestamp() + " <i>[System] Opening Radio Tuner...</i></p>");
+                postChat(ChatEvent.system("Opening Radio Tuner..."), player);
                 break;
 
             case "/log":
             case "/history":
                 ui.showFullLog();
-                sendPrivateMessage(player, "<p class=\"log\">" + getTimestamp() + " <i>[System] Opening Full Log window...</i></p>");
+                postChat(ChatEvent.system("Opening Full Log window..."), player);
                 break;
 
             case "/flush":
                 ui.clearLog();
                 chatMessageCount = 0; // Reset counter
-                sendPrivateMessage(player, "<p class=\"log\">" + getTimestamp() + " <i>[System] Chat history cleared.</i></p>");
+                postChat(ChatEvent.system("Chat history cleared."), player);
                 break;
 
             default:
-                sendPrivateMessage(player, "<p class=\"log\">"+getTimestamp()+" <i>[System] Unknown command.</i></p>");
+                postChat(ChatEvent.system("Unknown command."), player);
                 break;
         }
     }
 
     /**
-     * Final stage of video conversion: Handles caching and constructing the public URL.
+     * Final stage of video conversion: shares a cached clip right away, otherwise
+     * queues the download and conversion and shares the GIF once it is done.
      */
-    private void processVideoToGif(String videoUrl, String startTime, String duration, long maxDownloadBytes) {
-        ui.logMessage("Converting Video (" + startTime + "s, len " + duration + "s)...");
-        ui.showProgress("Connecting...", -1);
+    private void processVideoToGif(Player requester, String videoUrl, String startTime, String duration, long maxDownloadBytes) {
+        // --- 1. CACHE SETUP & CHECK ---
+        String cacheKey = generateHash(videoUrl + "_" + startTime + "_" + duration);
+        MediaIndex gifCache = MediaIndex.shared();
+
+        java.io.File cachedGif = gifCache.lookup(cacheKey);
+        if (cachedGif != null) {
+            ui.logMessage("GIF Cache Hit. Reusing " + cachedGif.getName());
+            shareConvertedGif(cacheKey, cachedGif);
+            return;
+        }
 
-        new Thread(() -> {
+        String label = "GIF " + cacheKey.substring(0, Math.min(8, cacheKey.length()));
+        ConversionScheduler.Job queued = mediaHost.conversions.submit(jobOwner(requester), label, job -> {
+            ui.logMessage("Converting Video (" + startTime + "s, len " + duration + "s)...");
             try {
-                // --- 1. CACHE SETUP & CHECK ---
-                String cacheKey = generateHash(videoUrl + "_" + startTime + "_" + duration);
-                java.io.File cacheDir = new java.io.File(getCacheDirectory());
+                // Another request for the same clip shares the running conversion instead of starting its own
+                if (gifCache.isConverting(cacheKey)) ui.logMessage("Same clip is already being converted, waiting for it...");
+                java.io.File finalGif = gifCache.convert(cacheKey, videoUrl,
+                        partGif -> downloadAndConvert(job, videoUrl, startTime, duration, maxDownloadBytes, partGif));
+                // A failed conversion already said what went wrong
+                if (finalGif != null) shareConvertedGif(cacheKey, finalGif);
+            } catch (InterruptedException e) {
+                ui.logMessage("GIF conversion cancelled.");
+                throw e;
+            } catch (Exception e) {
+                e.printStackTrace();
+                ui.logMessage("Error: " + e.getMessage());
+            } finally {
+                ui.hideProgress();
+            }
+        }, position -> showConversionPosition(requester, position));
 
-                if (!cacheDir.exists()) cacheDir.mkdirs();
+        if (queued == null) {
+            notifyRequester(requester, ChatEvent.error("You already have " + ConversionScheduler.DEFAULT_MAX_QUEUED
+                    + " GIFs waiting. Wait for one to finish, or use /gif cancel."));
+        }
+    }
 
-                java.io.File finalGif = new java.io.File(cacheDir, cacheKey + ".gif");
+    // Where a GIF request stands: the local progress bar for our own, a chat line for other players
+    private void showConversionPosition(Player requester, int position) {
+        boolean remote = isNetworkGame && networkOut == null && !requester.equals(self);
+        if (position == 0) {
+            ui.showProgress("Connecting...", -1);
+            if (remote) notifyRequester(requester, ChatEvent.system("Converting your GIF now..."));
+        } else if (remote) {
+            notifyRequester(requester, ChatEvent.system("Your GIF is number " + position + " in the queue. /gif cancel drops it."));
+        } else {
+            ui.showProgress("GIF queued (#" + position + ")", -1);
+        }
+    }
 
-                boolean cacheHit = finalGif.exists();
+    // Chat to one player from a worker thread
+    private void notifyRequester(Player requester, ChatEvent event) {
+        if (onEngine()) postChat(event, requester);
+        else queueOnEngine("gif-queue", () -> postChat(event, requester));
+    }
 
-                if (cacheHit) {
-                    ui.logMessage("GIF Cache Hit. Reusing " + finalGif.getName());
-                    ui.hideProgress();
-                } else {
-                    // --- 2. DOWNLOAD (Only if Cache Miss) ---
-
-                    java.net.URL url = new java.net.URL(videoUrl);
-                    java.net.HttpURLConnection conn = (java.net.HttpURLConnection) url.openConnection();
-                    String hostUrl = url.getProtocol() + "://" + url.getHost();
-                    conn.setRequestProperty("User-Agent", "Mozilla/5.0 (Windows NT 10.0; Win64; x64) AppleWebKit/537.36 (KHTML, like Gecko) Chrome/91.0.4472.124 Safari/537.36");
-                    conn.setRequestProperty("Accept", "video/webm,video/ogg,video/*;q=0.9,application/ogg;q=0.7,audio/*;q=0.6,*/*;q=0.5");
-                    conn.setRequestProperty("Accept-Language", "en-US,en;q=0.5");
-                    conn.setRequestProperty("Referer", hostUrl);
-                    conn.setConnectTimeout(5000);
-                    conn.setReadTimeout(10000);
-
-                    if (conn.getResponseCode() != 200) {
-                        ui.logMessage("Download Failed: HTTP " + conn.getResponseCode());
-                        ui.hideProgress();
-                        return;
-                    }
+    /**
+     * Posts a converted GIF to the chat: the host links it on its media server,
+     * a client sends the link to the host.
+     */
+    private void shareConvertedGif(String cacheKey, java.io.File finalGif) {
+        // --- 3. URL CONSTRUCTION AND BROADCAST ---
+        String finalUrl;
 
-                    long totalSize = conn.getContentLengthLong();
-                    ui.showProgress("Downloading...", 0);
+        if (isNetworkGame && networkOut == null) { // Host
 
-                    String path = url.getPath();
-                    String ext = ".mp4";
-                    if (path.contains(".")) ext = path.substring(path.lastIndexOf('.'));
+            // FIX: Use manual tunnel details if provided
+            GameController media = this.mediaHost;
+            if (media.externalTunnelIp != null && media.externalTunnelGamePort != 0) {
+                // USE TUNNEL IP + CALCULATED EXTERNAL PORT
+                String broadcastIp = media.externalTunnelIp;
+                int broadcastPort = media.externalTunnelGamePort + (MEDIA_SERVER_PORT - 10365); // external port + 3
 
-                    java.io.File tempVideo = java.io.File.createTempFile("vop_raw_", ext);
-                    tempVideo.deleteOnExit();
+                finalUrl = String.format("http://%s:%d/gifs/%s.gif", broadcastIp, broadcastPort, cacheKey);
 
-                    long maxBytes = maxDownloadBytes;
-                    long totalBytes = 0;
+            } else if (media.mediaServer == null || media.hostPublicIp == null) {
+                ui.logMessage("Error: Media server not running or public IP unknown. Cannot share GIF.");
+                finalUrl = finalGif.toURI().toString();
+            } else {
+                // Fallback to Public IP / Dynamic Tunnel Port calculation (Less reliable than manual input)
+                String broadcastIp = media.hostPublicIp;
+                finalUrl = String.format("http://%s:%d/gifs/%s.gif", broadcastIp, media.externalMediaPort, cacheKey);
+            }
+        } else { // Client or Local Only
+            finalUrl = finalGif.toURI().toString();
+        }
 
-                    // FIX: Tracking thresholds for accurate updates
-                    long reportInterval = 1024 * 50; // 50KB
-                    long nextReportThreshold = reportInterval;
+        // Construct the dedicated command to carry the public/local URL
+        String urlMessage = "/gif " + finalUrl;
 
-                    try (java.io.InputStream in = conn.getInputStream();
-                         java.io.OutputStream out = new java.io.FileOutputStream(tempVideo)) {
+        // 2. Network Relay: Send this new command through the chat pipeline
+        if (isNetworkGame) {
+            if (networkOut != null) { // Client -> send to Host
+                sendNetworkMessage(new NetworkMessage(NetworkMessage.MessageType.REQUEST_CHAT_MESSAGE, urlMessage));
+            } else { // Host -> process this command and broadcast the formatted result
+                engine.submit("gif", () -> handleChatCommand(self, urlMessage));
+            }
+        }
+    }
 
-                        byte[] buffer = new byte[8192];
-                        int bytesRead;
-                        while ((bytesRead = in.read(buffer)) != -1) {
-                            out.write(buffer, 0, bytesRead);
-                            totalBytes += bytesRead;
+    /**
+     * Downloads the start of a video and converts the requested clip into partGif.
+     * Stops when the job is cancelled and steps aside while the game is busy.
+     * @return false if it failed; the reason has been logged.
+     */
+    private boolean downloadAndConvert(ConversionScheduler.Job job, String videoUrl, String startTime, String duration,
+                                       long maxDownloadBytes, java.io.File partGif) throws Exception {
+        // --- 2. DOWNLOAD ---
+        java.net.URL url = new java.net.URL(videoUrl);
+        java.net.HttpURLConnection conn = (java.net.HttpURLConnection) url.openConnection();
+        String hostUrl = url.getProtocol() + "://" + url.getHost();
+        conn.setRequestProperty("User-Agent", "Mozilla/5.0 (Windows NT 10.0; Win64; x64) AppleWebKit/537.36 (KHTML, like Gecko) Chrome/91.0.4472.124 Safari/537.36");
+        conn.setRequestProperty("Accept", "video/webm,video/ogg,video/*;q=0.9,application/ogg;q=0.7,audio/*;q=0.6,*/*;q=0.5");
+        conn.setRequestProperty("Accept-Language", "en-US,en;q=0.5");
+        conn.setRequestProperty("Referer", hostUrl);
+        conn.setConnectTimeout(5000);
+        conn.setReadTimeout(10000);
+
+        if (conn.getResponseCode() != 200) {
+            ui.logMessage("Download Failed: HTTP " + conn.getResponseCode());
+            ui.hideProgress();
+            return false;
+        }
+
+        long totalSize = conn.getContentLengthLong();
+        ui.showProgress("Downloading...", 0);
+
+        String path = url.getPath();
+        String ext = ".mp4";
+        if (path.contains(".")) ext = path.substring(path.lastIndexOf('.'));
+
+        java.io.File tempVideo = java.io.File.createTempFile("vop_raw_", ext);
+        tempVideo.deleteOnExit();
+        // Gone however this ends, a cancel during the download included
+        try {
 
-                            // FIX: Check if totalBytes has crossed the next reporting threshold
-                            if (totalBytes >= nextReportThreshold) {
-                                if (totalSize > 0) {
-                                    int percent = (int) ((totalBytes * 100) / totalSize);
-                                    ui.showProgress("Downloading... " + (totalBytes / 1024) + "KB", percent);
-                                } else {
-                                    ui.showProgress("Downloading... " + (totalBytes / 1024) + "KB", -1);
-                                }
-                                nextReportThreshold = totalBytes + reportInterval; // Advance the threshold
-                            }
-                            if (totalBytes > maxBytes) break;
+            long maxBytes = maxDownloadBytes;
+            long totalBytes = 0;
+
+            // FIX: Tracking thresholds for accurate updates
+            long reportInterval = 1024 * 50; // 50KB
+            long nextReportThreshold = reportInterval;
+
+            try (java.io.InputStream in = conn.getInputStream();
+                 java.io.OutputStream out = new java.io.FileOutputStream(tempVideo)) {
+
+                byte[] buffer = new byte[8192];
+                int bytesRead;
+                while ((bytesRead = in.read(buffer)) != -1) {
+                    out.write(buffer, 0, bytesRead);
+                    totalBytes += bytesRead;
+                    job.checkpoint();
+
+                    // FIX: Check if totalBytes has crossed the next reporting threshold
+                    if (totalBytes >= nextReportThreshold) {
+                        if (totalSize > 0) {
+                            int percent = (int) ((totalBytes * 100) / totalSize);
+                            ui.showProgress("Downloading... " + (totalBytes / 1024) + "KB", percent);
+                        } else {
+                            ui.showProgress("Downloading... " + (totalBytes / 1024) + "KB", -1);
                         }
+                        nextReportThreshold = totalBytes + reportInterval; // Advance the threshold
                     }
-
-                    // FIX: Final update to guarantee 100% is shown for small files
-                    if (totalSize > 0) {
-                        ui.showProgress("Downloading... " + (totalBytes / 1024) + "KB", 100);
-                    } else {
-                        ui.showProgress("Downloading... " + (totalBytes / 1024) + "KB", -1);
-                    }
-
-                    // --- 3. RUN CONVERSION (Conversion Code Omitted) ---
-                    java.io.File toolsDir = new java.io.File("tools");
-                    java.io.File ffmpegExe = new java.io.File(toolsDir, "ffmpeg.exe");
-
-                    if (!ffmpegExe.exists()) {
-                        ui.logMessage("Error: FFmpeg converter tool is missing.");
-                        ui.logMessage("Please ensure 'tools/ffmpeg.exe' is installed.");
-                        ui.hideProgress();
-                        return;
-                    }
-
-                    ui.showProgress("Converting (FFmpeg)...", -1);
-
-                    ProcessBuilder pb = new ProcessBuilder(
-                            ffmpegExe.getAbsolutePath(),
-                            "-y",
-                            "-ss", startTime,
-                            "-t", duration,
-                            "-i", tempVideo.getAbsolutePath(),
-                            "-vf", "fps=10,scale=320:-1:flags=lanczos,split[s0][s1];[s0]palettegen[p];[s1][p]paletteuse",
-                            finalGif.getAbsolutePath()
-                    );
-
-                    pb.redirectErrorStream(true);
-                    Process process = pb.start();
-                    process.getInputStream().transferTo(System.out);
-
-                    ui.hideProgress();
-
-                    if (process.waitFor() != 0) {
-                        ui.logMessage("Conversion failed (Check if start time is within downloaded range).");
-                        return;
-                    }
+                    if (totalBytes > maxBytes) break;
                 }
+            }
 
-                // --- 3. URL CONSTRUCTION AND BROADCAST ---
-                String finalUrl;
-
-                if (isNetworkGame && networkOut == null) { // Host
+            // FIX: Final update to guarantee 100% is shown for small files
+            if (totalSize > 0) {
+                ui.showProgress("Downloading... " + (totalBytes / 1024) + "KB", 100);
+            } else {
+                ui.showProgress("Downloading... " + (totalBytes / 1024) + "KB", -1);
+            }
 
-                    // FIX: Use manual tunnel details if provided
-                    if (this.externalTunnelIp != null && this.externalTunnelGamePort != 0) {
-                        // USE TUNNEL IP + CALCULATED EXTERNAL PORT
-                        String broadcastIp = this.externalTunnelIp;
-                        int broadcastPort = this.externalTunnelGamePort + (MEDIA_SERVER_PORT - 10365); // external port + 3
+            // --- 3. RUN CONVERSION (Conversion Code Omitted) ---
+            java.io.File toolsDir = new java.io.File("tools");
+            java.io.File ffmpegExe = new java.io.File(toolsDir, "ffmpeg.exe");
 
-                        finalUrl = String.format("http://%s:%d/gifs/%s.gif", broadcastIp, broadcastPort, cacheKey);
+            if (!ffmpegExe.exists()) {
+                ui.logMessage("Error: FFmpeg converter tool is missing.");
+                ui.logMessage("Please ensure 'tools/ffmpeg.exe' is installed.");
+                ui.hideProgress();
+                return false;
+            }
 
-                    } else if (mediaServer == null || hostPublicIp == null) {
-                        ui.logMessage("Error: Media server not running or public IP unknown. Cannot share GIF.");
-                        finalUrl = finalGif.toURI().toString();
-                    } else {
-                        // Fallback to Public IP / Dynamic Tunnel Port calculation (Less reliable than manual input)
-                        String broadcastIp = hostPublicIp;
-                        finalUrl = String.format("http://%s:%d/gifs/%s.gif", broadcastIp, this.externalMediaPort, cacheKey);
-                    }
-                } else { // Client or Local Only
-                    finalUrl = finalGif.toURI().toString();
-                }
+            job.checkpoint();
+            ui.showProgress("Converting (FFmpeg)...", -1);
+
+            ProcessBuilder pb = new ProcessBuilder(
+                    ffmpegExe.getAbsolutePath(),
+                    "-y",
+                    "-ss", startTime,
+                    "-t", duration,
+                    "-i", tempVideo.getAbsolutePath(),
+                    "-vf", "fps=10,scale=320:-1:flags=lanczos,split[s0][s1];[s0]palettegen[p];[s1][p]paletteuse",
+                    "-threads", String.valueOf(ConversionScheduler.FFMPEG_THREADS),
+                    "-f", "gif",
+                    partGif.getAbsolutePath()
+            );
 
-                // Construct the dedicated command to carry the public/local URL
-                String urlMessage = "/gif " + finalUrl;
+            pb.redirectErrorStream(true);
+            // Straight to our console, so waiting for FFmpeg can be interrupted by a cancel
+            pb.redirectOutput(ProcessBuilder.Redirect.INHERIT);
+            Process process = pb.start();
+            int exitCode;
+            try {
+                exitCode = process.waitFor();
+            } catch (InterruptedException e) {
+                // Whoever takes over the conversion reuses partGif, so FFmpeg must have let go of it
+                process.destroyForcibly().waitFor();
+                throw e;
+            }
 
-                // 2. Network Relay: Send this new command through the chat pipeline
-                if (isNetworkGame) {
-                    if (networkOut != null) { // Client -> send to Host
-                        sendNetworkMessage(new NetworkMessage(NetworkMessage.MessageType.REQUEST_CHAT_MESSAGE, urlMessage));
-                    } else { // Host -> process this command and broadcast the formatted result
-                        handleChatCommand(self, urlMessage);
-                    }
-                }
+            ui.hideProgress();
 
-            } catch (Exception e) {
-                e.printStackTrace();
-                ui.logMessage("Error: " + e.getMessage());
-                ui.hideProgress();
+            if (exitCode != 0) {
+                ui.logMessage("Conversion failed (Check if start time is within downloaded range).");
+                return false;
             }
-        }).start();
+            return true;
+        } finally {
+            tempVideo.delete();
+        }
     }
 
     /**
-     * Handles the final step: Client receives a public GIF URL and displays it.
+     * Handles the final step: shows a GIF or image URL as the player's chat line, for everyone.
      */
     public void handleGifUrlMessage(Player player, String url) {
-        // This is where the client receives the public URL (via the normal chat message path)
-        ui.displayChatMessage(formatGifMessage(player, url));
+        if (isUnsupportedFormat(url)) ui.logMessage("NOTE: Image format (e.g., .webp) is NOT supported by the game client and may not display: " + url);
+        postChat(ChatEvent.image(player.getName(), player.getToken(), url), null);
     }
 
     private void handleDebugCommand(Player admin, String command, String[] parts) {
@@ -1668,20 +2054,73 @@ public class GameController {
                     ui.movePlayerToken(tPort.getToken(), newPos);
                     ui.logMessage("[Admin] Teleported " + tPort.getName() + " to " + newPos);
                     break;
+                case "/netstats":
+                    StringBuilder stats = new StringBuilder("Connections:");
+                    if (clients.isEmpty()) stats.append("\nNo clients connected.");
+                    for (ClientHandler client : clients) {
+                        String name = client.getPlayer() != null ? client.getPlayer().getName() : client.getRemoteAddress();
+                        stats.append("\n").append(name).append(" (protocol v").append(client.getProtocolVersion())
+                                .append(", ").append(Protocol.describe(client.getFeatures())).append("): ").append(client.getOutboundStats())
+                                .append("; ").append(client.getLatency().getStats())
+                                .append("\n\u00A0 Lanes: ").append(client.getLaneStats())
+                                .append("\n\u00A0 ").append(client.getCompressionStats());
+                    }
+                    stats.append("\nSpectators: ").append(spectators.getStats());
+                    if (mediaHost.mediaServer != null) stats.append("\nMedia server: ").append(mediaHost.mediaServer.getStats());
+                    else stats.append("\nGIF cache: ").append(MediaIndex.shared().getStats());
+                    stats.append("\nPrompts: ").append(prompts.getStats());
+                    stats.append("\nGIF jobs: ").append(mediaHost.conversions.getStats());
+                    postChat(ChatEvent.system(stats.toString()), admin);
+                    break;
+                case "/engine":
+                    StringBuilder engineStats = new StringBuilder("Engine:");
+                    List<String> lines = roomManager != null ? roomManager.describeEngines() : engine.describeStats();
+                    for (String line : lines) engineStats.append("\n").append(line);
+                    postChat(ChatEvent.system(engineStats.toString()), admin);
+                    break;
+                case "/rooms":
+                    if (roomManager == null) {
+                        postChat(ChatEvent.system("Not hosting."), admin);
+                        break;
+                    }
+                    StringBuilder roomList = new StringBuilder("Rooms:");
+                    for (String line : roomManager.describeRooms()) roomList.append("\n").append(line);
+                    postChat(ChatEvent.system(roomList.toString()), admin);
+                    break;
+                case "/room":
+                    if (roomManager == null || parts.length < 3) {
+                        postChat(ChatEvent.system("Usage: /room open|close [name]"), admin);
+                        break;
+                    }
+                    String roomId = parts[2];
+                    String result;
+                    if (parts[1].equalsIgnoreCase("open")) {
+                        result = roomManager.createRoom(roomId) != null ? "opened, join with room name '" + roomId + "'." : "already exists.";
+                    } else if (parts[1].equalsIgnoreCase("close")) {
+                        result = roomManager.closeRoom(roomId) ? "closed." : "no such room (the main room cannot be closed).";
+                    } else {
+                        result = "unknown action " + parts[1] + ".";
+                    }
+                    postChat(ChatEvent.system("Room '" + roomId + "' " + result), admin);
+                    break;
             }
         } catch (Exception e) {
-            sendPrivateMessage(admin, "<p class=\"log\">" + getTimestamp() + " <i>[Error] " + e.getMessage() + "</i></p>");
+            postChat(ChatEvent.error(String.valueOf(e.getMessage())), admin);
         }
     }
 
     // --- UPDATED: Broadcast with Exclude ---
     public void broadcastMessage(NetworkMessage msg, ClientHandler exclude) {
         if (!isNetworkGame) return;
+        // Each client encodes the message as it is queued, on this thread, so the bytes are a
+        // snapshot of the payload; clients with the same codec share them. Inside a batch it is
+        // encoded as part of the BATCH frame when the batch is flushed, still on this thread.
         for (ClientHandler client : clients) {
             if (client != exclude) {
                 client.sendMessage(msg);
             }
         }
+        spectators.publish(msg);
     }
 
     public void broadcastMessage(NetworkMessage msg) {
@@ -1691,17 +2130,82 @@ public class GameController {
     private synchronized void sendNetworkMessage(NetworkMessage msg) {
         try {
             if (networkOut != null) {
-                networkOut.writeObject(msg);
-                networkOut.flush();
-                networkOut.reset();
+                networkOut.send(msg);
             }
         } catch (Exception e) { e.printStackTrace(); }
     }
 
     // CRITICAL FIX: handleNetworkMessage with proper threading
     public void handleNetworkMessage(NetworkMessage msg, ClientHandler sender) {
-        Player player = (sender != null) ? sender.getPlayer() : null;
+        if (sender != null && sender.isSpectator()) return; // Spectators only watch
+        if (prompts != null && PromptTracker.isPromptResponse(msg.getType())) {
+            NetworkMessage answer = prompts.accept(msg, sender);
+            if (answer == null) {
+                if (sender != null) sender.sendMessage(new NetworkMessage(NetworkMessage.MessageType.LOG_MESSAGE, "That answer came too late and was ignored."));
+                return;
+            }
+            msg = answer;
+        }
+        // Everything this action sends goes out as one batch per client
+        batcher.begin();
+        try {
+            processNetworkMessage(msg, sender);
+        } finally {
+            batcher.end();
+        }
+    }
+
+    /**
+     * Sends a prompt that expects an answer. The payload is the prompt's content
+     * followed by its request id and the milliseconds the player has to answer.
+     */
+    private void sendPrompt(ClientHandler client, NetworkMessage.MessageType type, NetworkMessage.MessageType responseType,
+                            Object defaultAnswer, Object... content) {
+        long id = prompts.open(client, responseType, defaultAnswer);
+        Object[] payload = Arrays.copyOf(content, content.length + 2);
+        payload[content.length] = id;
+        payload[content.length + 1] = PromptTracker.TIMEOUT_MS;
+        client.sendMessage(new NetworkMessage(type, payload));
+    }
+
+    /** Continues the game with a prompt's default answer after its player ran out of time. */
+    private void applyPromptTimeout(ClientHandler client, NetworkMessage defaultResponse) {
+        batcher.begin();
+        try {
+            Player player = client.getPlayer();
+            ui.logMessage((player != null ? player.getName() : "A player") + " did not answer in time.");
+            processNetworkMessage(defaultResponse, client);
+        } finally {
+            batcher.end();
+        }
+    }
 
+    /**
+     * Asks the host one of the game's questions during a network game. The dialog opens on
+     * the Swing thread and the answer comes back through the engine like a client's RESPONSE_*,
+     * so the engine goes on serving the other players while the host makes up their mind.
+     */
+    private <T> void askHost(Player player, NetworkMessage.MessageType responseType, Supplier<T> dialog) {
+        batcher.flush();
+        runOnUiThread(() -> {
+            T answer = dialog.get();
+            engine.submit(responseType.name(), () -> {
+                batcher.begin();
+                try {
+                    processNetworkMessage(new NetworkMessage(responseType, answer), null, player);
+                } finally {
+                    batcher.end();
+                }
+            });
+        });
+    }
+
+    private void processNetworkMessage(NetworkMessage msg, ClientHandler sender) {
+        processNetworkMessage(msg, sender, (sender != null) ? sender.getPlayer() : null);
+    }
+
+    /** @param player the player the message is from: the sender's, or the host's own for its answers. */
+    private void processNetworkMessage(NetworkMessage msg, ClientHandler sender, Player player) {
         // Validation
         if (player != null && !players.isEmpty() && player != players.get(currentPlayerIndex)) {
             switch (msg.getType()) {
@@ -1709,7 +2213,8 @@ public class GameController {
                 case REQUEST_IMPROVE:
                 case RESPONSE_BUY_PROPERTY:
                 case RESPONSE_IMPROVE_SELECTION:
-                    sender.sendMessage(new NetworkMessage(NetworkMessage.MessageType.LOG_MESSAGE, "It's not your turn."));
+                case RESPONSE_JAIL_ACTION:
+                    if (sender != null) sender.sendMessage(new NetworkMessage(NetworkMessage.MessageType.LOG_MESSAGE, "It's not your turn."));
                     return;
             }
         }
@@ -1736,6 +2241,10 @@ public class GameController {
                 completeImprovement(player, (String) msg.getPayload());
                 break;
 
+            case RESPONSE_JAIL_ACTION:
+                if (player != null && player.isInJail()) completeJailAction(player, (String) msg.getPayload());
+                break;
+
             case RESPONSE_TRADE_SELECTION:
                 startTrade(player, (String) msg.getPayload());
                 break;
@@ -1755,6 +2264,24 @@ public class GameController {
                 }
                 break;
 
+            case ACK_BOARD_VERSION:
+                if (sender != null) {
+                    long ackedVersion = (Long) msg.getPayload();
+                    if (ackedVersion > sender.getBoardVersionAcked()) sender.setBoardVersionAcked(ackedVersion);
+                    long joinMillis = sender.finishJoin();
+                    if (joinMillis >= 0) {
+                        System.out.println("NETWORK: " + (player != null ? player.getName() : "Client") + " joined in " + joinMillis + " ms");
+                    }
+                }
+                break;
+
+            case REQUEST_BOARD_RESYNC:
+                if (sender != null) {
+                    sender.setBoardVersionAcked(-1);
+                    syncBoard(sender);
+                }
+                break;
+
             case RESPONSE_CASINO_RESULT:
                 if (player != null) applyCasinoResult(player, (mechanics.CasinoResult) msg.getPayload());
                 break;
@@ -1765,17 +2292,12 @@ public class GameController {
                 SwingUtilities.invokeLater(() -> ui.showCasinoDialog(this.self, this, config));
                 break;
 
+            // Prompts are {content..., request id, timeout}; answers echo the id as {id, answer}
             case SHOW_BOOLEAN_DIALOG:
-                String boolPrompt = (String) msg.getPayload();
+                Object[] boolData = (Object[]) msg.getPayload();
                 SwingUtilities.invokeLater(() -> {
-                    boolean result = ui.askForBoolean(boolPrompt);
-                    if (networkOut != null) {
-                        try {
-                            networkOut.writeObject(new NetworkMessage(NetworkMessage.MessageType.RESPONSE_BUY_PROPERTY, result));
-                            networkOut.flush();
-                            networkOut.reset();
-                        } catch(Exception e) { e.printStackTrace(); }
-                    }
+                    boolean result = ui.askForBoolean((String) boolData[0]);
+                    sendNetworkMessage(new NetworkMessage(NetworkMessage.MessageType.RESPONSE_BUY_PROPERTY, new Object[]{boolData[1], result}));
                 });
                 break;
 
@@ -1785,46 +2307,23 @@ public class GameController {
                 String[] selOptions = (String[]) selData[1];
                 SwingUtilities.invokeLater(() -> {
                     String choice = ui.askForSelection(selPrompt, selOptions);
-                    NetworkMessage.MessageType type = NetworkMessage.MessageType.LOG_MESSAGE;
-                    if (selPrompt.contains("jail")) type = NetworkMessage.MessageType.RESPONSE_JAIL_ACTION;
-                    else if (selPrompt.contains("improve")) type = NetworkMessage.MessageType.RESPONSE_IMPROVE_SELECTION;
-                    else if (selPrompt.contains("trade")) type = NetworkMessage.MessageType.RESPONSE_TRADE_SELECTION;
-
-                    if (networkOut != null) {
-                        try {
-                            networkOut.writeObject(new NetworkMessage(type, choice));
-                            networkOut.flush();
-                            networkOut.reset();
-                        } catch(Exception e) { e.printStackTrace(); }
-                    }
+                    sendNetworkMessage(new NetworkMessage(NetworkMessage.selectionResponseType(selPrompt), new Object[]{selData[2], choice}));
                 });
                 break;
 
             case REQUEST_BUILD_OFFER:
-                String buildPrompt = (String) msg.getPayload();
+                Object[] buildData = (Object[]) msg.getPayload();
                 SwingUtilities.invokeLater(() -> {
-                    TradeOffer offer = ui.askForTradeOffer(this.self, buildPrompt);
-                    if (networkOut != null) {
-                        try {
-                            networkOut.writeObject(new NetworkMessage(NetworkMessage.MessageType.RESPONSE_BUILD_OFFER, offer));
-                            networkOut.flush();
-                            networkOut.reset();
-                        } catch(Exception e) { e.printStackTrace(); }
-                    }
+                    TradeOffer offer = ui.askForTradeOffer(this.self, (String) buildData[0]);
+                    sendNetworkMessage(new NetworkMessage(NetworkMessage.MessageType.RESPONSE_BUILD_OFFER, new Object[]{buildData[1], offer}));
                 });
                 break;
 
             case REQUEST_ACCEPT_TRADE:
-                String tradeSummary = (String) msg.getPayload();
+                Object[] tradeData = (Object[]) msg.getPayload();
                 SwingUtilities.invokeLater(() -> {
-                    boolean accepted = ui.askForBoolean(tradeSummary);
-                    if (networkOut != null) {
-                        try {
-                            networkOut.writeObject(new NetworkMessage(NetworkMessage.MessageType.RESPONSE_ACCEPT_TRADE, accepted));
-                            networkOut.flush();
-                            networkOut.reset();
-                        } catch(Exception e) { e.printStackTrace(); }
-                    }
+                    boolean accepted = ui.askForBoolean((String) tradeData[0]);
+                    sendNetworkMessage(new NetworkMessage(NetworkMessage.MessageType.RESPONSE_ACCEPT_TRADE, new Object[]{tradeData[1], accepted}));
                 });
                 break;
 
@@ -1838,10 +2337,19 @@ public class GameController {
                     }
 
                     // Standard chat message
-                    handleIncomingChat(player.getName(), player.getToken(), message);
-                    Object[] payload = { player.getName(), player.getToken(), message };
-                    broadcastMessage(new NetworkMessage(NetworkMessage.MessageType.PLAYER_CHAT, payload));
+                    postChat(ChatEvent.publicMessage(player.getName(), player.getToken(), message), null);
+                }
+                break;
+
+            case MEDIA_END:
+                // The client's handler verified and stored the upload before passing this on
+                MediaReceiver.Received upload = sender != null ? sender.takeReceivedMedia((Long) ((Object[]) msg.getPayload())[0]) : null;
+                if (upload == null) break;
+                if (player == null) {
+                    upload.getFile().delete();
+                    break;
                 }
+                shareImage(player, upload.getFile(), sender);
                 break;
 
             case PLAYER_CHAT:
@@ -1854,48 +2362,67 @@ public class GameController {
         }
     }
 
-    // --- FIX: Security & File Integrity Check ---
-    private void saveAndDisplayReceivedImage(String senderName, byte[] imageData) {
-        try {
-            // 1. Magic Byte Check (Security)
-            if (imageData.length < 8) return; // Too small
-
-            boolean isGif = (imageData[0] == 'G' && imageData[1] == 'I' && imageData[2] == 'F') &&
-                    (imageData[3] == '8' && (imageData[4] == '7' || imageData[4] == '9') && imageData[5] == 'a');
-
-            boolean isPng = (imageData[0] == (byte)0x89 && imageData[1] == 'P' && imageData[2] == 'N' && imageData[3] == 'G');
-
-            if (!isGif && !isPng) {
-                ui.logMessage("Security Warning: Received invalid image file from " + senderName + ". Discarded.");
-                return;
-            }
-
-            // 2. Save to Temp File
-            java.io.File tempFile = java.io.File.createTempFile("vop_p2p_", isGif ? ".gif" : ".png");
-            tempFile.deleteOnExit();
-            java.nio.file.Files.write(tempFile.toPath(), imageData);
+    // --- Images shared with /img, streamed in chunks (see MediaSender) ---
 
-            // 3. Display
-            Player sender = getPlayerByName(senderName);
-            if (sender == null) sender = new Player(senderName, PlayerToken.VAULT_BOY);
+    /** Shows a finished image from another player in this client's chat only. */
+    public void showReceivedImage(String senderName, java.io.File image) {
+        Player sender = getPlayerByName(senderName);
+        if (sender == null) sender = new Player(senderName, PlayerToken.VAULT_BOY);
+        ChatEvent event = ChatEvent.image(sender.getName(), sender.getToken(), image.toURI().toString());
+        runOnUiThread(() -> showChatEvent(event));
+    }
 
-            ui.displayChatMessage(formatGifMessage(sender, tempFile.toURI().toString()));
+    /**
+     * Shows an image on the host and streams it to every client except the one it came from.
+     * Each client gets its own file URL, so this must not go through the broadcasting ui.
+     */
+    private void shareImage(Player from, java.io.File image, ClientHandler uploader) {
+        showReceivedImage(from.getName(), image);
+        if (!isNetworkGame) return;
+        List<ClientHandler> recipients = new ArrayList<>(clients);
+        recipients.remove(uploader);
+        MediaSender.shared().send(image, from.getName(), recipients);
+    }
 
-        } catch (Exception e) {
-            e.printStackTrace();
-            ui.logMessage("Error displaying streamed image from " + senderName);
+    /** /img [path]: checks the file here, then uploads it to the host or shares it directly. */
+    private void shareLocalImage(Player player, String path) {
+        java.io.File image = new java.io.File(path);
+        if (!image.isFile() || image.length() > MediaReceiver.MAX_BYTES || !MediaReceiver.isImage(image)) {
+            runOnUiThread(() -> baseUI.logMessage("Usage: /img [path to a GIF or PNG up to " + MediaReceiver.MAX_BYTES / (1024 * 1024) + " MB]"));
+            return;
         }
+        if (isNetworkGame && networkOut != null) {
+            Connection connection = networkOut;
+            Thread upload = new Thread(() -> {
+                try {
+                    MediaSender.upload(connection, image, player.getName());
+                } catch (java.io.IOException e) {
+                    runOnUiThread(() -> baseUI.logMessage("Image upload failed: " + e.getMessage()));
+                }
+            }, "Media-Upload");
+            upload.setDaemon(true);
+            upload.start();
+            showReceivedImage(player.getName(), image);
+            return;
+        }
+        shareImage(player, image, null);
     }
 
     public void doCasino() {
         if (isNetworkGame && networkOut != null) { sendNetworkMessage(new NetworkMessage(NetworkMessage.MessageType.REQUEST_CASINO, null)); return; }
-        Player player = players.get(currentPlayerIndex);
-        handleCasino(player);
+        if (!onEngine()) { queueOnEngine("casino", this::doCasino); return; }
+        // The dialog runs on the Swing thread and answers through sendCasinoResult, so the engine never waits on it
+        casinoPlayer = players.get(currentPlayerIndex);
+        ui.showCasinoDialog(casinoPlayer, this, this.casinoConfig);
     }
 
     public void sendCasinoResult(mechanics.CasinoResult result) {
-        if (isNetworkGame && networkOut != null) sendNetworkMessage(new NetworkMessage(NetworkMessage.MessageType.RESPONSE_CASINO_RESULT, result));
-        else if (!isNetworkGame) { Player player = players.get(currentPlayerIndex); applyCasinoResult(player, result); }
+        if (isNetworkGame && networkOut != null) { sendNetworkMessage(new NetworkMessage(NetworkMessage.MessageType.RESPONSE_CASINO_RESULT, result)); return; }
+        if (!onEngine()) { queueOnEngine("casino-result", () -> sendCasinoResult(result)); return; }
+        // The host's own dialog, in a local game or a network one
+        Player player = casinoPlayer;
+        casinoPlayer = null;
+        if (player != null) applyCasinoResult(player, result);
     }
 
     private void applyCasinoResult(Player player, mechanics.CasinoResult result) {
@@ -1910,22 +2437,8 @@ public class GameController {
         ui.updatePlayerStats(player);
     }
 
-    private void handleCasino(Player player) {
-        // CHANGED: Use persistent casino config
-        if (baseUI instanceof SwingUI) {
-            mechanics.CasinoDialog dialog = new mechanics.CasinoDialog(
-                    ((SwingUI) baseUI).getGameWindow(),
-                    player,
-                    this.casinoConfig
-            );
-            dialog.setVisible(true);
-            mechanics.CasinoResult result = dialog.getResult();
-            applyCasinoResult(player, result);
-        }
-    }
-
     public void trySaveGame() {
-        java.io.File file = SaveManager.chooseFileToSave(baseUI instanceof SwingUI ? ((SwingUI)baseUI).getGameWindow() : null);
+        java.io.File file = baseUI instanceof SwingUI ? ((SwingUI) baseUI).chooseSaveFile() : null;
         if (file == null) return;
         try {
             SaveManager.saveGame(this, file);
@@ -1934,7 +2447,7 @@ public class GameController {
     }
 
     public void tryLoadGame() {
-        java.io.File file = SaveManager.chooseFileToLoad(baseUI instanceof SwingUI ? ((SwingUI)baseUI).getMainMenuWindow() : null);
+        java.io.File file = baseUI instanceof SwingUI ? ((SwingUI) baseUI).chooseLoadFile() : null;
         if (file == null) return;
         try {
             ui.showGameWindow();
@@ -1988,6 +2501,12 @@ public class GameController {
     }
 
     // SIMPLIFIED NetworkSafeUI - Remove unnecessary wrapping
+    /**
+     * Sends UI updates to the clients and shows them here. The game calls it on the engine
+     * thread, so everything that touches Swing is handed to the EDT: updates with invokeLater,
+     * in order. The host's answers in a network game come back through the engine (see
+     * askHost); only a local game still waits on the EDT for its dialogs.
+     */
     class NetworkSafeUI implements UIInterface {
         private GameController controller;
         private UIInterface localUI;
@@ -1997,45 +2516,72 @@ public class GameController {
             this.localUI = localUI;
         }
 
+        private void onUi(Runnable task) {
+            if (localUI instanceof SwingUI && !SwingUtilities.isEventDispatchThread()) SwingUtilities.invokeLater(task);
+            else task.run();
+        }
+
+        // A local game cannot go on without the answer, and has no clients waiting meanwhile
+        private <T> T askOnUi(Supplier<T> dialog) {
+            if (!(localUI instanceof SwingUI) || SwingUtilities.isEventDispatchThread()) return dialog.get();
+            AtomicReference<T> answer = new AtomicReference<>();
+            try {
+                SwingUtilities.invokeAndWait(() -> answer.set(dialog.get()));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (InvocationTargetException e) {
+                e.getCause().printStackTrace();
+            }
+            return answer.get();
+        }
+
         public void updateBoardState(List<BoardField> fields) {
-            if (localUI instanceof SwingUI) ((SwingUI) localUI).updateBoardState(fields);
+            if (localUI instanceof SwingUI) onUi(() -> ((SwingUI) localUI).updateBoardState(fields));
         }
 
         @Override public void showNotification(String message) {
-            if (controller.isNetworkGame) controller.broadcastMessage(new NetworkMessage(NetworkMessage.MessageType.SHOW_NOTIFICATION, message));
-            localUI.showNotification(message);
+            if (controller.isNetworkGame) {
+                controller.broadcastMessage(new NetworkMessage(NetworkMessage.MessageType.SHOW_NOTIFICATION, message));
+                onUi(() -> localUI.showNotification(message));
+            } else {
+                // Modal, and a local game reads it before it goes on
+                askOnUi(() -> {
+                    localUI.showNotification(message);
+                    return null;
+                });
+            }
         }
 
         @Override public void logMessage(String message) {
             String timedMessage = getTimestamp() + " " + message;
             if (controller.isNetworkGame) controller.broadcastMessage(new NetworkMessage(NetworkMessage.MessageType.LOG_MESSAGE, timedMessage));
-            localUI.logMessage(timedMessage);
+            onUi(() -> localUI.logMessage(timedMessage));
         }
 
         @Override public void displayChatMessage(String message) {
             if (controller.isNetworkGame) controller.broadcastMessage(new NetworkMessage(NetworkMessage.MessageType.CHAT_MESSAGE, message));
-            localUI.displayChatMessage(message);
+            onUi(() -> localUI.displayChatMessage(message));
         }
 
         @Override public void clearLog() {
             if (controller.isNetworkGame) controller.broadcastMessage(new NetworkMessage(NetworkMessage.MessageType.CLEAR_LOG, null));
-            localUI.clearLog();
+            onUi(localUI::clearLog);
         }
 
         // SIMPLIFIED: These don't need network wrapping
-        @Override public void resetFullLog() { localUI.resetFullLog(); }
-        @Override public void showFullLog() { localUI.showFullLog(); }
-        @Override public void showMainMenu() { localUI.showMainMenu(); }
-        @Override public void showGameWindow() { localUI.showGameWindow(); }
-        @Override public void hideGameWindow() { localUI.hideGameWindow(); }
+        @Override public void resetFullLog() { onUi(localUI::resetFullLog); }
+        @Override public void showFullLog() { onUi(localUI::showFullLog); }
+        @Override public void showMainMenu() { onUi(localUI::showMainMenu); }
+        @Override public void showGameWindow() { onUi(localUI::showGameWindow); }
+        @Override public void hideGameWindow() { onUi(localUI::hideGameWindow); }
         @Override public void setGameController(GameController controller) { localUI.setGameController(controller); }
-        @Override public void show() { localUI.show(); }
+        @Override public void show() { onUi(localUI::show); }
 
-        @Override public void showBoard(List<BoardField> fields) { localUI.showBoard(fields); }
+        @Override public void showBoard(List<BoardField> fields) { onUi(() -> localUI.showBoard(fields)); }
 
         @Override public void createPlayerToken(Player player) {
             if (controller.isNetworkGame) controller.broadcastMessage(new NetworkMessage(NetworkMessage.MessageType.ADD_PLAYER_TOKEN, player));
-            localUI.createPlayerToken(player);
+            onUi(() -> localUI.createPlayerToken(player));
         }
 
         @Override public void removePlayerToken(PlayerToken token) {
@@ -2043,17 +2589,17 @@ public class GameController {
                 Player playerToRemove = controller.getPlayers().stream().filter(p -> p.getToken() == token).findFirst().orElse(null);
                 if (playerToRemove != null) controller.broadcastMessage(new NetworkMessage(NetworkMessage.MessageType.REMOVE_PLAYER_TOKEN, playerToRemove));
             }
-            localUI.removePlayerToken(token);
+            onUi(() -> localUI.removePlayerToken(token));
         }
 
         @Override public void movePlayerToken(PlayerToken token, int newPosition) {
             if (controller.isNetworkGame) controller.broadcastMessage(new NetworkMessage(NetworkMessage.MessageType.MOVE_PLAYER_TOKEN, new Object[]{token, newPosition}));
-            localUI.movePlayerToken(token, newPosition);
+            onUi(() -> localUI.movePlayerToken(token, newPosition));
         }
 
         @Override public void updatePlayerStats(Player player) {
             if (controller.isNetworkGame) controller.broadcastMessage(new NetworkMessage(NetworkMessage.MessageType.UPDATE_PLAYER_STATS, player));
-            localUI.updatePlayerStats(player);
+            onUi(() -> localUI.updatePlayerStats(player));
         }
 
         @Override public void updatePropertyOwner(int position, Player owner) {
@@ -2061,19 +2607,19 @@ public class GameController {
                 PlayerToken token = (owner != null) ? owner.getToken() : null;
                 controller.broadcastMessage(new NetworkMessage(NetworkMessage.MessageType.UPDATE_PROPERTY_OWNER, new Object[]{position, token}));
             }
-            localUI.updatePropertyOwner(position, owner);
+            onUi(() -> localUI.updatePropertyOwner(position, owner));
         }
 
         @Override public void resetBoard() {
             if (controller.isNetworkGame) controller.broadcastMessage(new NetworkMessage(NetworkMessage.MessageType.RESET_UI, null));
-            localUI.resetBoard();
+            onUi(localUI::resetBoard);
         }
 
-        @Override public void resetStats() { localUI.resetStats(); }
+        @Override public void resetStats() { onUi(localUI::resetStats); }
 
         @Override public void setPlayerTurn(Player player) {
             if (controller.isNetworkGame) controller.broadcastMessage(new NetworkMessage(NetworkMessage.MessageType.SET_PLAYER_TURN, player));
-            localUI.setPlayerTurn(player);
+            onUi(() -> localUI.setPlayerTurn(player));
         }
 
         @Override public void setControlsEnabled(boolean roll, boolean improve, boolean trade) {
@@ -2082,63 +2628,74 @@ public class GameController {
                 Player p = players.get(currentPlayerIndex);
                 ClientHandler h = getHandlerForPlayer(p);
                 if (h != null) h.sendMessage(new NetworkMessage(NetworkMessage.MessageType.SET_CONTROLS, new boolean[]{roll, improve, trade}));
-                else localUI.setControlsEnabled(roll, improve, trade);
-            } else localUI.setControlsEnabled(roll, improve, trade);
+                else onUi(() -> localUI.setControlsEnabled(roll, improve, trade));
+            } else onUi(() -> localUI.setControlsEnabled(roll, improve, trade));
         }
 
         // SIMPLIFIED: These are local-only operations
-        @Override public String askForString(String prompt) { return localUI.askForString(prompt); }
-        @Override public int askForInt(String prompt, int min, int max) { return localUI.askForInt(prompt, min, max); }
-        @Override public boolean askForBoolean(String prompt) { return localUI.askForBoolean(prompt); }
+        // Local dialogs block this thread, so send whatever the clients are waiting for first
+        @Override public String askForString(String prompt) { batcher.flush(); return askOnUi(() -> localUI.askForString(prompt)); }
+        @Override public int askForInt(String prompt, int min, int max) { batcher.flush(); return askOnUi(() -> localUI.askForInt(prompt, min, max)); }
+        @Override public boolean askForBoolean(String prompt) { batcher.flush(); return askOnUi(() -> localUI.askForBoolean(prompt)); }
 
         @Override public boolean askForBoolean(Player player, String prompt) {
             if (isNetworkGame) {
                 ClientHandler h = getHandlerForPlayer(player);
                 if (h != null) {
-                    h.sendMessage(new NetworkMessage(NetworkMessage.MessageType.REQUEST_ACCEPT_TRADE, prompt));
-                    return false;
+                    sendPrompt(h, NetworkMessage.MessageType.REQUEST_ACCEPT_TRADE,
+                            NetworkMessage.MessageType.RESPONSE_ACCEPT_TRADE, false, prompt);
+                } else {
+                    askHost(player, NetworkMessage.MessageType.RESPONSE_ACCEPT_TRADE, () -> localUI.askForBoolean(prompt));
                 }
+                return false;
             }
-            boolean response = localUI.askForBoolean(prompt);
-            if (isNetworkGame) completeTradeAcceptance(player, response);
-            return response;
+            batcher.flush();
+            return askOnUi(() -> localUI.askForBoolean(prompt));
         }
 
         @Override public String askForSelection(String prompt, String[] options) {
-            if (players.isEmpty()) return localUI.askForSelection(prompt, options);
+            if (players.isEmpty()) return askOnUi(() -> localUI.askForSelection(prompt, options));
             Player p = players.get(currentPlayerIndex);
             if (isNetworkGame) {
                 ClientHandler h = getHandlerForPlayer(p);
                 if (h != null) {
-                    h.sendMessage(new NetworkMessage(NetworkMessage.MessageType.SHOW_SELECTION_DIALOG, new Object[]{prompt, options}));
-                    return null;
+                    sendPrompt(h, NetworkMessage.MessageType.SHOW_SELECTION_DIALOG,
+                            NetworkMessage.selectionResponseType(prompt), null, prompt, options);
+                } else {
+                    askHost(p, NetworkMessage.selectionResponseType(prompt), () -> localUI.askForSelection(prompt, options));
                 }
+                return null;
             }
-            return localUI.askForSelection(prompt, options);
+            batcher.flush();
+            return askOnUi(() -> localUI.askForSelection(prompt, options));
         }
 
         @Override public TradeOffer askForTradeOffer(Player player, String prompt) {
             if (isNetworkGame) {
                 ClientHandler h = getHandlerForPlayer(player);
                 if (h != null) {
-                    h.sendMessage(new NetworkMessage(NetworkMessage.MessageType.REQUEST_BUILD_OFFER, prompt));
-                    return null;
+                    sendPrompt(h, NetworkMessage.MessageType.REQUEST_BUILD_OFFER,
+                            NetworkMessage.MessageType.RESPONSE_BUILD_OFFER, null, prompt);
+                } else {
+                    askHost(player, NetworkMessage.MessageType.RESPONSE_BUILD_OFFER, () -> localUI.askForTradeOffer(player, prompt));
                 }
+                return null;
             }
-            TradeOffer offer = localUI.askForTradeOffer(player, prompt);
-            if (isNetworkGame) completeBuildOffer(player, offer);
-            return offer;
+            batcher.flush();
+            return askOnUi(() -> localUI.askForTradeOffer(player, prompt));
         }
 
         // SIMPLIFIED: These don't need network wrapping
         @Override public void showFullImage(String imageUrl) { localUI.showFullImage(imageUrl); }
         @Override public void showCasinoDialog(Player player, GameController controller, mechanics.CasinoConfiguration config) {
-            localUI.showCasinoDialog(player, controller, config);
-        }
-        @Override public void showRadioWindow() { localUI.showRadioWindow(); }
-        @Override public void stopRadio() { localUI.stopRadio(); }
-        @Override public void showProgress(String s, int p) { localUI.showProgress(s, p); }
-        @Override public void hideProgress() { localUI.hideProgress(); }
-        @Override public String[] askForTunnelDetails(String prompt) { return localUI.askForTunnelDetails(prompt); }
+            // The dialog hands its result to sendCasinoResult, which queues it on the engine
+            batcher.flush();
+            onUi(() -> localUI.showCasinoDialog(player, controller, config));
+        }
+        @Override public void showRadioWindow() { onUi(localUI::showRadioWindow); }
+        @Override public void stopRadio() { onUi(localUI::stopRadio); }
+        @Override public void showProgress(String s, int p) { onUi(() -> localUI.showProgress(s, p)); }
+        @Override public void hideProgress() { onUi(localUI::hideProgress); }
+        @Override public String[] askForTunnelDetails(String prompt) { return askOnUi(() -> localUI.askForTunnelDetails(prompt)); }
     }
 }
\ No newline at end of file
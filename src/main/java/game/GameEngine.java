@@ -0,0 +1,178 @@
+package game;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The one thread that changes a game's state.
+ *
+ * Network threads, timers, conversion threads and the Swing EDT never touch the
+ * board or the players directly; they submit commands to this mailbox and the
+ * engine runs them one at a time, in order. That replaces ad-hoc locking with a
+ * single owner, and gives us the time each kind of command spends waiting.
+ *
+ * The mailbox is bounded (-Dvop.engine.queue, default 4096 commands). Submitting
+ * to a full mailbox waits briefly and then fails, so a stuck game pushes back on
+ * its clients instead of growing without limit. Threads that serve many others
+ * (NIO selectors, the prompt timer) use {@link #trySubmit}, which never waits.
+ */
+public class GameEngine {
+
+    public static final int DEFAULT_CAPACITY = Integer.getInteger("vop.engine.queue", 4096);
+
+    // How long a producer may wait for room in a full mailbox
+    private static final long SUBMIT_TIMEOUT_MS = 1000;
+
+    private static final class Command {
+        final String type;
+        final Runnable action;
+        final long enqueuedNanos = System.nanoTime();
+
+        Command(String type, Runnable action) {
+            this.type = type;
+            this.action = action;
+        }
+    }
+
+    /** Wait and run times of one command type. */
+    private static final class CommandStats {
+        long count;
+        long totalWaitNanos;
+        long maxWaitNanos;
+        long totalRunNanos;
+        long maxRunNanos;
+    }
+
+    private static final Command STOP = new Command("stop", () -> {});
+
+    private final BlockingQueue<Command> mailbox;
+    private final Thread thread;
+    private final Map<String, CommandStats> stats = new ConcurrentHashMap<>();
+    private volatile boolean running = true;
+    private long rejected;
+
+    public GameEngine(String name) {
+        this(name, DEFAULT_CAPACITY);
+    }
+
+    public GameEngine(String name, int capacity) {
+        this.mailbox = new ArrayBlockingQueue<>(Math.max(1, capacity));
+        this.thread = new Thread(this::run, name);
+        this.thread.setDaemon(true);
+        this.thread.start();
+    }
+
+    /**
+     * Queues a command.
+     * @param type label for the latency stats, e.g. the network message type.
+     * @return false if the engine is stopped or the mailbox stayed full.
+     */
+    public boolean submit(String type, Runnable action) {
+        if (!running) return false;
+        try {
+            if (mailbox.offer(new Command(type, action), SUBMIT_TIMEOUT_MS, TimeUnit.MILLISECONDS)) return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        reject(type);
+        return false;
+    }
+
+    /**
+     * Queues a command without waiting, for threads that must never block: a selector
+     * thread stalled here would stall every connection on its loop.
+     * @return false if the engine is stopped or the mailbox is full.
+     */
+    public boolean trySubmit(String type, Runnable action) {
+        if (!running) return false;
+        if (mailbox.offer(new Command(type, action))) return true;
+        reject(type);
+        return false;
+    }
+
+    private void reject(String type) {
+        synchronized (this) {
+            rejected++;
+        }
+        System.err.println("[Engine] " + thread.getName() + " mailbox full, dropped " + type);
+    }
+
+    /** False once {@link #shutdown()} was called. */
+    public boolean isRunning() {
+        return running;
+    }
+
+    /** True when called from the engine thread itself, where state may be changed directly. */
+    public boolean isEngineThread() {
+        return Thread.currentThread() == thread;
+    }
+
+    /** Stops after the commands already queued have run. */
+    public void shutdown() {
+        if (!running) return;
+        running = false;
+        mailbox.offer(STOP);
+    }
+
+    public int getQueueDepth() {
+        return mailbox.size();
+    }
+
+    private void run() {
+        while (true) {
+            Command command;
+            try {
+                command = mailbox.take();
+            } catch (InterruptedException e) {
+                return;
+            }
+            if (command == STOP) return;
+
+            long started = System.nanoTime();
+            try {
+                command.action.run();
+            } catch (Exception e) {
+                System.err.println("[Engine] " + command.type + " failed: " + e);
+                e.printStackTrace();
+            }
+            record(command, started, System.nanoTime());
+        }
+    }
+
+    private void record(Command command, long started, long finished) {
+        CommandStats s = stats.computeIfAbsent(command.type, t -> new CommandStats());
+        long wait = started - command.enqueuedNanos;
+        long run = finished - started;
+        synchronized (s) {
+            s.count++;
+            s.totalWaitNanos += wait;
+            s.maxWaitNanos = Math.max(s.maxWaitNanos, wait);
+            s.totalRunNanos += run;
+            s.maxRunNanos = Math.max(s.maxRunNanos, run);
+        }
+    }
+
+    /** One line per command type: count, average/max queue wait and run time in ms. */
+    public List<String> describeStats() {
+        List<String> lines = new ArrayList<>();
+        synchronized (this) {
+            lines.add(String.format("%s: queue %d/%d, %d rejected", thread.getName(), mailbox.size(),
+                    mailbox.size() + mailbox.remainingCapacity(), rejected));
+        }
+        stats.entrySet().stream().sorted(Map.Entry.comparingByKey()).forEach(entry -> {
+            CommandStats s = entry.getValue();
+            synchronized (s) {
+                lines.add(String.format("%s x%d: wait avg %.2f / max %.2f ms, run avg %.2f / max %.2f ms",
+                        entry.getKey(), s.count,
+                        s.totalWaitNanos / 1e6 / s.count, s.maxWaitNanos / 1e6,
+                        s.totalRunNanos / 1e6 / s.count, s.maxRunNanos / 1e6));
+            }
+        });
+        return lines;
+    }
+}
@@ -0,0 +1,18 @@
+package game;
+
+/**
+ * Jar entry point. Picks the dedicated server for --headless, the desktop game otherwise,
+ * without loading any Swing classes before that decision.
+ */
+public class Launcher {
+
+    public static void main(String[] args) throws Exception {
+        for (String arg : args) {
+            if ("--headless".equals(arg)) {
+                DedicatedServer.main(args);
+                return;
+            }
+        }
+        ui.MainMenuWindow.main(args);
+    }
+}
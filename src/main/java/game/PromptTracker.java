@@ -0,0 +1,147 @@
+package game;
+
+import game.network.ClientHandler;
+import game.network.NetworkMessage;
+import players.Player;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiConsumer;
+
+/**
+ * Questions the host is waiting for remote players to answer.
+ *
+ * Every prompt sent to a client (buy, jail, improve, trade) carries a request id
+ * and the time the player has to answer. The client echoes the id in its
+ * response; an answer for an id that is no longer open (a duplicate, or one that
+ * arrives after the deadline) is dropped. When the deadline passes the game
+ * continues with the prompt's default answer, so one silent client cannot freeze
+ * the table. Deadlines live on one shared {@link TimerWheel}.
+ *
+ * Configure with -Dvop.prompt.timeout (ms, default 60000) and
+ * -Dvop.prompt.buyOnTimeout=true to buy instead of decline when the time runs out.
+ * Other prompts time out to "no" / cancel, and to rolling for doubles in jail.
+ */
+public class PromptTracker {
+
+    public static final long TIMEOUT_MS = Long.getLong("vop.prompt.timeout", 60_000);
+    public static final boolean BUY_ON_TIMEOUT = Boolean.getBoolean("vop.prompt.buyOnTimeout");
+
+    // 100 ms resolution, one revolution covers the default timeout
+    private static final TimerWheel TIMERS = new TimerWheel("Prompt-Timers", 100, 1024);
+    // When the engine's mailbox was full at the deadline
+    private static final long EXPIRY_RETRY_MS = 200;
+
+    private static final class Pending {
+        final ClientHandler client;
+        final NetworkMessage.MessageType responseType;
+        final Object defaultAnswer;
+        TimerWheel.Timeout timeout;
+
+        Pending(ClientHandler client, NetworkMessage.MessageType responseType, Object defaultAnswer) {
+            this.client = client;
+            this.responseType = responseType;
+            this.defaultAnswer = defaultAnswer;
+        }
+    }
+
+    private final Map<Long, Pending> pending = new ConcurrentHashMap<>();
+    private final AtomicLong nextId = new AtomicLong(1);
+    private final GameEngine engine;
+    private final BiConsumer<ClientHandler, NetworkMessage> onTimeout;
+
+    private long answered;
+    private long timedOut;
+    private long dropped;
+
+    /**
+     * @param onTimeout called on the engine with the client and its default response.
+     */
+    public PromptTracker(GameEngine engine, BiConsumer<ClientHandler, NetworkMessage> onTimeout) {
+        this.engine = engine;
+        this.onTimeout = onTimeout;
+    }
+
+    /** True for the responses that answer a prompt and must carry its id. */
+    public static boolean isPromptResponse(NetworkMessage.MessageType type) {
+        switch (type) {
+            case RESPONSE_BUY_PROPERTY:
+            case RESPONSE_JAIL_ACTION:
+            case RESPONSE_IMPROVE_SELECTION:
+            case RESPONSE_TRADE_SELECTION:
+            case RESPONSE_BUILD_OFFER:
+            case RESPONSE_ACCEPT_TRADE:
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * Starts the clock on a prompt.
+     * @param responseType  the response the client will send.
+     * @param defaultAnswer the response payload to use if the client does not answer in time.
+     * @return the request id to send with the prompt.
+     */
+    public long open(ClientHandler client, NetworkMessage.MessageType responseType, Object defaultAnswer) {
+        long id = nextId.getAndIncrement();
+        Pending prompt = new Pending(client, responseType, defaultAnswer);
+        pending.put(id, prompt);
+        prompt.timeout = TIMERS.schedule(TIMEOUT_MS, () -> submitExpiry(id));
+        return id;
+    }
+
+    // Runs on the timer thread shared by every game, which must not wait for one busy engine
+    private void submitExpiry(long id) {
+        if (!engine.trySubmit("prompt-timeout", () -> expire(id)) && engine.isRunning() && pending.containsKey(id)) {
+            TIMERS.schedule(EXPIRY_RETRY_MS, () -> submitExpiry(id));
+        }
+    }
+
+    /**
+     * Matches a response to its prompt and closes it.
+     * @return the response with the bare answer as payload, or null if it must be dropped.
+     */
+    public NetworkMessage accept(NetworkMessage response, ClientHandler sender) {
+        Object[] data = response.getPayload() instanceof Object[] ? (Object[]) response.getPayload() : null;
+        Long id = data != null && data.length == 2 && data[0] instanceof Long ? (Long) data[0] : null;
+        Pending prompt = id != null ? pending.get(id) : null;
+        // A reconnected player answers from a new connection, so compare the player, not the handler
+        if (prompt == null || prompt.responseType != response.getType() || !samePlayer(prompt.client, sender)
+                || !pending.remove(id, prompt)) {
+            synchronized (this) {
+                dropped++;
+            }
+            return null;
+        }
+        prompt.timeout.cancel();
+        synchronized (this) {
+            answered++;
+        }
+        return new NetworkMessage(response.getType(), data[1]);
+    }
+
+    private static boolean samePlayer(ClientHandler a, ClientHandler b) {
+        if (a == b) return true;
+        Player player = a.getPlayer();
+        return player != null && b != null && player == b.getPlayer();
+    }
+
+    private void expire(long id) {
+        Pending prompt = pending.remove(id);
+        if (prompt == null) return; // Answered in the meantime
+        synchronized (this) {
+            timedOut++;
+        }
+        // Answer through whichever connection the player has now
+        Player player = prompt.client.getPlayer();
+        ClientHandler client = player != null && player.getNetworkHandler() != null ? player.getNetworkHandler() : prompt.client;
+        onTimeout.accept(client, new NetworkMessage(prompt.responseType, prompt.defaultAnswer));
+    }
+
+    public synchronized String getStats() {
+        return String.format("%d open, %d answered, %d timed out, %d dropped (timeout %d s)",
+                pending.size(), answered, timedOut, dropped, TIMEOUT_MS / 1000);
+    }
+}
@@ -0,0 +1,215 @@
+package game;
+
+import game.network.ClientHandler;
+import game.network.ClientListener;
+import game.network.NetworkMessage;
+import game.network.NioGameServer;
+import game.network.SocketClientHandler;
+import ui.ConsoleUI;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.IntConsumer;
+
+/**
+ * Runs several games behind one listening port.
+ *
+ * Clients name a room in their hello (no name = the default room). Every room is
+ * its own GameController with its own board, players and {@link GameEngine}, so
+ * a slow table never holds up another. The transport's I/O threads and the host's
+ * GIF media server are shared by all rooms.
+ */
+public class RoomManager implements ClientListener {
+
+    public static final String DEFAULT_ROOM = "main";
+
+    /** Spectators one room serves itself; more have to watch through a tools.SpectatorRelay. */
+    public static final int MAX_SPECTATORS = Integer.getInteger("vop.spectator.max", 32);
+
+    // How soon a leave is submitted again when the room's mailbox was full
+    private static final long LEAVE_RETRY_MS = 100;
+
+    private static class Room {
+        final String id;
+        final GameController controller;
+
+        Room(String id, GameController controller) {
+            this.id = id;
+            this.controller = controller;
+        }
+
+        GameEngine engine() {
+            return controller.getEngine();
+        }
+    }
+
+    private final Map<String, Room> rooms = new ConcurrentHashMap<>();
+    private final Map<ClientHandler, Room> clientRooms = new ConcurrentHashMap<>();
+    private final GameController mediaHost;
+    private final ScheduledExecutorService janitor = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "Room-Janitor");
+        t.setDaemon(true);
+        return t;
+    });
+    private NioGameServer nioServer;
+    private ServerSocket serverSocket;
+
+    /**
+     * @param mainController the default room; it also owns the media server the other rooms use.
+     */
+    public RoomManager(GameController mainController) {
+        this.mediaHost = mainController;
+        rooms.put(DEFAULT_ROOM, new Room(DEFAULT_ROOM, mainController));
+    }
+
+    /**
+     * Binds the game port and starts accepting clients for all rooms.
+     * Uses the NIO server with -Dvop.server=nio, one thread per client otherwise.
+     * @param acceptListener called with the local port of every accepted connection.
+     */
+    public void listen(int port, IntConsumer acceptListener) throws IOException {
+        if ("nio".equalsIgnoreCase(System.getProperty("vop.server"))) {
+            nioServer = new NioGameServer(port, this);
+            nioServer.setAcceptListener(acceptListener);
+            nioServer.start();
+            return;
+        }
+
+        serverSocket = new ServerSocket(port);
+        System.out.println("Server started on port " + port + ". Waiting for clients...");
+        Thread acceptor = new Thread(() -> {
+            while (!serverSocket.isClosed()) {
+                try {
+                    Socket clientSocket = serverSocket.accept();
+                    acceptListener.accept(clientSocket.getLocalPort());
+                    new SocketClientHandler(clientSocket, this).start();
+                } catch (IOException e) {
+                    if (!serverSocket.isClosed()) e.printStackTrace();
+                }
+            }
+        }, "Game-Acceptor");
+        acceptor.setDaemon(true);
+        acceptor.start();
+    }
+
+    /** Stops accepting clients. Rooms keep running until their players are gone. */
+    public void stop() {
+        if (nioServer != null) nioServer.stop();
+        try {
+            if (serverSocket != null) serverSocket.close();
+        } catch (IOException e) {
+            // Already closed
+        }
+        janitor.shutdown();
+    }
+
+    /**
+     * Opens a new table without a local player.
+     * @return the room's controller, or null if the name is taken.
+     */
+    public GameController createRoom(String id) {
+        if (rooms.containsKey(id)) return null;
+        GameController controller = new GameController(new ConsoleUI(id), id);
+        Room room = new Room(id, controller);
+        if (rooms.putIfAbsent(id, room) != null) {
+            room.engine().shutdown();
+            return null;
+        }
+        room.engine().submit("start", () -> controller.startAsRoom(mediaHost));
+        System.out.println("Room '" + id + "' opened.");
+        return controller;
+    }
+
+    /** Ends a room and disconnects its players. The default room cannot be closed. */
+    public boolean closeRoom(String id) {
+        if (DEFAULT_ROOM.equals(id)) return false;
+        Room room = rooms.remove(id);
+        if (room == null) return false;
+        room.engine().submit("close", room.controller::closeRoom);
+        room.engine().shutdown();
+        System.out.println("Room '" + id + "' closed.");
+        return true;
+    }
+
+    /** One line per room: name, players and connected clients. */
+    public List<String> describeRooms() {
+        List<String> lines = new ArrayList<>();
+        for (Room room : rooms.values()) {
+            long connected = clientRooms.values().stream().filter(r -> r == room).count();
+            lines.add(room.id + ": " + room.controller.getPlayers().size() + " players, " + connected + " connected, "
+                    + room.controller.getSpectatorCount() + " watching");
+        }
+        return lines;
+    }
+
+    /** The longest engine backlog of all rooms. */
+    public int getMaxQueueDepth() {
+        int max = 0;
+        for (Room room : rooms.values()) max = Math.max(max, room.engine().getQueueDepth());
+        return max;
+    }
+
+    /** Command latency of every room's engine. */
+    public List<String> describeEngines() {
+        List<String> lines = new ArrayList<>();
+        for (Room room : rooms.values()) lines.addAll(room.engine().describeStats());
+        return lines;
+    }
+
+    @Override
+    public void addClient(ClientHandler client, String username) {
+        String id = client.getRoomId() != null && !client.getRoomId().isBlank() ? client.getRoomId() : DEFAULT_ROOM;
+        Room room = rooms.get(id);
+        if (room == null) {
+            System.out.println("NETWORK: " + username + " asked for unknown room '" + id + "'.");
+            refuse(client, "There is no room called '" + id + "' on this server.");
+            return;
+        }
+        if (client.isSpectator() && room.controller.getSpectatorCount() >= MAX_SPECTATORS) {
+            System.out.println("NETWORK: " + username + " wanted to watch '" + id + "', but it already has " + MAX_SPECTATORS + " spectators.");
+            refuse(client, "This table already has " + MAX_SPECTATORS + " spectators. Ask the host for a spectator relay.");
+            return;
+        }
+        clientRooms.put(client, room);
+        // Called on I/O threads, so never wait for room in the mailbox
+        if (!room.engine().trySubmit("join", () -> room.controller.addClient(client, username))) client.disconnect();
+    }
+
+    private void refuse(ClientHandler client, String notice) {
+        client.sendMessage(new NetworkMessage(NetworkMessage.MessageType.SHOW_NOTIFICATION, notice));
+        // Give the writer a moment to deliver the notice
+        janitor.schedule(client::disconnect, 500, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public void handleNetworkMessage(NetworkMessage msg, ClientHandler sender) {
+        if (sender.isSpectator()) return; // Spectators only watch, no need to wake the engine
+        Room room = clientRooms.get(sender);
+        if (room != null && !room.engine().trySubmit(msg.getType().name(), () -> room.controller.handleNetworkMessage(msg, sender))) {
+            // The game cannot keep up with this client, drop it rather than lose its input
+            sender.disconnect();
+        }
+    }
+
+    @Override
+    public void removeClient(ClientHandler client) {
+        Room room = clientRooms.remove(client);
+        if (room != null) submitLeave(room, client);
+    }
+
+    // A lost leave would keep the seat taken, so a full mailbox is retried shortly instead
+    private void submitLeave(Room room, ClientHandler client) {
+        if (room.engine().trySubmit("leave", () -> room.controller.removeClient(client))) return;
+        if (room.engine().isRunning() && !janitor.isShutdown()) {
+            janitor.schedule(() -> submitLeave(room, client), LEAVE_RETRY_MS, TimeUnit.MILLISECONDS);
+        }
+    }
+}
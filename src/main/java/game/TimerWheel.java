@@ -0,0 +1,112 @@
+package game;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+
+/**
+ * Hashed timer wheel: many coarse deadlines on one thread.
+ *
+ * Deadlines are rounded up to the next tick and hashed into a ring of slots by
+ * their tick number. Each tick only looks at one slot, so scheduling and
+ * cancelling cost the same no matter how many timers are pending; timers further
+ * away than one revolution simply stay in their slot until their tick comes round.
+ * Tasks run on the wheel thread and must be short, e.g. hand work to an engine.
+ */
+public class TimerWheel {
+
+    /** A scheduled task. Cancelling after it ran has no effect. */
+    public static final class Timeout {
+        private final Runnable task;
+        private final long deadlineTick;
+        private volatile boolean cancelled;
+
+        private Timeout(Runnable task, long deadlineTick) {
+            this.task = task;
+            this.deadlineTick = deadlineTick;
+        }
+
+        public void cancel() {
+            cancelled = true;
+        }
+    }
+
+    private final long tickMillis;
+    private final List<LinkedList<Timeout>> slots;
+    private final long startNanos = System.nanoTime();
+    private long tick; // Last tick processed
+    private int pending;
+    private final Thread thread;
+    private volatile boolean running = true;
+
+    /**
+     * @param tickMillis resolution; deadlines fire up to one tick late.
+     * @param slotCount  slots in the ring, ideally covering the usual delay.
+     */
+    public TimerWheel(String name, long tickMillis, int slotCount) {
+        this.tickMillis = Math.max(1, tickMillis);
+        this.slots = new ArrayList<>(slotCount);
+        for (int i = 0; i < slotCount; i++) slots.add(new LinkedList<>());
+        this.thread = new Thread(this::run, name);
+        this.thread.setDaemon(true);
+        this.thread.start();
+    }
+
+    /** Runs the task once, roughly delayMillis from now. */
+    public synchronized Timeout schedule(long delayMillis, Runnable task) {
+        long elapsedTicks = (System.nanoTime() - startNanos) / 1_000_000 / tickMillis;
+        long deadline = Math.max(tick + 1, elapsedTicks + (delayMillis + tickMillis - 1) / tickMillis);
+        Timeout timeout = new Timeout(task, deadline);
+        slots.get((int) (deadline % slots.size())).add(timeout);
+        pending++;
+        return timeout;
+    }
+
+    public synchronized int getPending() {
+        return pending;
+    }
+
+    public void stop() {
+        running = false;
+        thread.interrupt();
+    }
+
+    private void run() {
+        while (running) {
+            long nextTickMillis = (tick + 1) * tickMillis;
+            long sleep = nextTickMillis - (System.nanoTime() - startNanos) / 1_000_000;
+            try {
+                if (sleep > 0) Thread.sleep(sleep);
+            } catch (InterruptedException e) {
+                return;
+            }
+            for (Timeout timeout : advance()) {
+                try {
+                    timeout.task.run();
+                } catch (Exception e) {
+                    System.err.println("[Timer] Task failed: " + e);
+                }
+            }
+        }
+    }
+
+    /** Moves to the next tick and takes out everything due in it. */
+    private synchronized List<Timeout> advance() {
+        tick++;
+        List<Timeout> due = new ArrayList<>();
+        Iterator<Timeout> it = slots.get((int) (tick % slots.size())).iterator();
+        while (it.hasNext()) {
+            Timeout timeout = it.next();
+            if (timeout.cancelled) {
+                it.remove();
+                pending--;
+            } else if (timeout.deadlineTick <= tick) {
+                it.remove();
+                pending--;
+                due.add(timeout);
+            }
+        }
+        return due;
+    }
+}
@@ -0,0 +1,626 @@
+package game.network;
+
+import board.fields.BoardField;
+import board.fields.PropertyField;
+import board.fields.ResourceField;
+import board.fields.SpecialField;
+import board.fields.StartField;
+import mechanics.CasinoConfiguration;
+import mechanics.CasinoResult;
+import mechanics.TradeOffer;
+import players.Player;
+import players.SpecialStats;
+import resources.ResourceType;
+import util.FieldType;
+import util.PlayerToken;
+import util.PropertyType;
+import util.SpecialEffect;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Compact tagged binary format for NetworkMessage.
+ *
+ * Layout: [codec id][MessageType ordinal][tagged payload value].
+ * Every payload shape the game actually sends (tokens, positions, controls,
+ * players, board fields, casino/trade DTOs, join snapshots, chat events, batched messages)
+ * has a hand-written encoder.
+ * Anything unknown falls back to an embedded Java-serialized blob, so the
+ * codec never refuses a message.
+ */
+public class BinaryMessageCodec implements MessageCodec {
+
+    public static final byte ID = 2;
+
+    // --- Value Tags ---
+    private static final int T_NULL = 0;
+    private static final int T_STRING = 1;
+    private static final int T_BOOLEAN = 2;
+    private static final int T_INT = 3;
+    private static final int T_LONG = 4;
+    private static final int T_BOOLEAN_ARRAY = 5;
+    private static final int T_STRING_ARRAY = 6;
+    private static final int T_OBJECT_ARRAY = 7;
+    private static final int T_TOKEN = 8;
+    private static final int T_PLAYER = 9;
+    private static final int T_FIELD_LIST = 10;
+    private static final int T_CASINO_CONFIG = 11;
+    private static final int T_CASINO_RESULT = 12;
+    private static final int T_TRADE_OFFER = 13;
+    private static final int T_BYTES = 14;
+    private static final int T_MESSAGE = 15;
+    private static final int T_JOIN_SNAPSHOT = 16;
+    private static final int T_CHAT_EVENT = 17;
+    private static final int T_SERIALIZED = 127;
+
+    private static final NetworkMessage.MessageType[] MESSAGE_TYPES = NetworkMessage.MessageType.values();
+    private static final PlayerToken[] TOKENS = PlayerToken.values();
+    private static final ResourceType[] RESOURCE_TYPES = ResourceType.values();
+    private static final FieldType[] FIELD_TYPES = FieldType.values();
+    private static final PropertyType[] PROPERTY_TYPES = PropertyType.values();
+    private static final SpecialEffect[] EFFECTS = SpecialEffect.values();
+    private static final ChatEvent.Kind[] CHAT_KINDS = ChatEvent.Kind.values();
+
+    @Override
+    public byte getId() {
+        return ID;
+    }
+
+    @Override
+    public String getName() {
+        return "binary";
+    }
+
+    @Override
+    public byte[] encode(NetworkMessage msg) throws IOException {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream(64);
+        DataOutputStream out = new DataOutputStream(bos);
+        out.writeByte(ID);
+        out.writeByte(msg.getType().ordinal());
+        writeValue(out, msg.getPayload());
+        out.flush();
+        return bos.toByteArray();
+    }
+
+    @Override
+    public NetworkMessage decode(byte[] data) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(data, 1, data.length - 1));
+        int typeIndex = in.readUnsignedByte();
+        if (typeIndex >= MESSAGE_TYPES.length) {
+            throw new IOException("Unknown message type: " + typeIndex);
+        }
+        return new NetworkMessage(MESSAGE_TYPES[typeIndex], readValue(in));
+    }
+
+    // --- Generic Values ---
+
+    private void writeValue(DataOutputStream out, Object value) throws IOException {
+        if (value == null) {
+            out.writeByte(T_NULL);
+        } else if (value instanceof String) {
+            out.writeByte(T_STRING);
+            writeString(out, (String) value);
+        } else if (value instanceof Boolean) {
+            out.writeByte(T_BOOLEAN);
+            out.writeBoolean((Boolean) value);
+        } else if (value instanceof Integer) {
+            out.writeByte(T_INT);
+            writeSignedVarInt(out, (Integer) value);
+        } else if (value instanceof Long) {
+            out.writeByte(T_LONG);
+            out.writeLong((Long) value);
+        } else if (value instanceof boolean[]) {
+            boolean[] flags = (boolean[]) value;
+            out.writeByte(T_BOOLEAN_ARRAY);
+            writeVarInt(out, flags.length);
+            for (boolean b : flags) out.writeBoolean(b);
+        } else if (value instanceof String[]) {
+            String[] strings = (String[]) value;
+            out.writeByte(T_STRING_ARRAY);
+            writeVarInt(out, strings.length);
+            for (String s : strings) writeString(out, s);
+        } else if (value instanceof Object[]) {
+            Object[] values = (Object[]) value;
+            out.writeByte(T_OBJECT_ARRAY);
+            writeVarInt(out, values.length);
+            for (Object v : values) writeValue(out, v);
+        } else if (value instanceof PlayerToken) {
+            out.writeByte(T_TOKEN);
+            writeEnum(out, (PlayerToken) value);
+        } else if (value instanceof Player) {
+            out.writeByte(T_PLAYER);
+            writePlayer(out, (Player) value);
+        } else if (isFieldList(value)) {
+            out.writeByte(T_FIELD_LIST);
+            writeFieldList(out, (List<?>) value);
+        } else if (value instanceof CasinoConfiguration) {
+            CasinoConfiguration config = (CasinoConfiguration) value;
+            out.writeByte(T_CASINO_CONFIG);
+            writeEnum(out, config.coinflipCurrency);
+            writeEnum(out, config.blackjackCurrency);
+            writeEnum(out, config.baccaratCurrency);
+            writeEnum(out, config.diceCurrency);
+        } else if (value instanceof CasinoResult) {
+            CasinoResult result = (CasinoResult) value;
+            out.writeByte(T_CASINO_RESULT);
+            writeResourceMap(out, result.getDeltas());
+            writeVarInt(out, result.getGamesPlayed());
+        } else if (value instanceof TradeOffer) {
+            TradeOffer offer = (TradeOffer) value;
+            out.writeByte(T_TRADE_OFFER);
+            writeSignedVarInt(out, offer.caps);
+            writeResourceMap(out, offer.resources);
+            writeVarInt(out, offer.properties.size());
+            for (PropertyField prop : offer.properties) writeField(out, prop, -1);
+        } else if (value instanceof JoinSnapshot) {
+            out.writeByte(T_JOIN_SNAPSHOT);
+            writeJoinSnapshot(out, (JoinSnapshot) value);
+        } else if (value instanceof ChatEvent) {
+            ChatEvent event = (ChatEvent) value;
+            out.writeByte(T_CHAT_EVENT);
+            writeEnum(out, event.getKind());
+            writeString(out, event.getSender());
+            writeEnum(out, event.getSenderToken());
+            writeString(out, event.getPeer());
+            writeEnum(out, event.getPeerToken());
+            writeString(out, event.getText());
+            writeString(out, event.getMedia());
+            out.writeLong(event.getTimestamp());
+        } else if (value instanceof NetworkMessage) {
+            NetworkMessage nested = (NetworkMessage) value;
+            out.writeByte(T_MESSAGE);
+            out.writeByte(nested.getType().ordinal());
+            writeValue(out, nested.getPayload());
+        } else if (value instanceof byte[]) {
+            byte[] bytes = (byte[]) value;
+            out.writeByte(T_BYTES);
+            writeVarInt(out, bytes.length);
+            out.write(bytes);
+        } else if (value instanceof Serializable) {
+            out.writeByte(T_SERIALIZED);
+            ByteArrayOutputStream bos = new ByteArrayOutputStream();
+            try (ObjectOutputStream oos = new ObjectOutputStream(bos)) {
+                oos.writeObject(value);
+            }
+            byte[] bytes = bos.toByteArray();
+            writeVarInt(out, bytes.length);
+            out.write(bytes);
+        } else {
+            throw new IOException("Cannot encode payload of type " + value.getClass().getName());
+        }
+    }
+
+    private Object readValue(DataInputStream in) throws IOException {
+        int tag = in.readUnsignedByte();
+        switch (tag) {
+            case T_NULL:
+                return null;
+            case T_STRING:
+                return readString(in);
+            case T_BOOLEAN:
+                return in.readBoolean();
+            case T_INT:
+                return readSignedVarInt(in);
+            case T_LONG:
+                return in.readLong();
+            case T_BOOLEAN_ARRAY: {
+                boolean[] flags = new boolean[readVarInt(in)];
+                for (int i = 0; i < flags.length; i++) flags[i] = in.readBoolean();
+                return flags;
+            }
+            case T_STRING_ARRAY: {
+                String[] strings = new String[readVarInt(in)];
+                for (int i = 0; i < strings.length; i++) strings[i] = readString(in);
+                return strings;
+            }
+            case T_OBJECT_ARRAY: {
+                Object[] values = new Object[readVarInt(in)];
+                for (int i = 0; i < values.length; i++) values[i] = readValue(in);
+                return values;
+            }
+            case T_TOKEN:
+                return readEnum(in, TOKENS);
+            case T_PLAYER:
+                return readPlayer(in);
+            case T_FIELD_LIST:
+                return readFieldList(in);
+            case T_CASINO_CONFIG:
+                return new CasinoConfiguration(readEnum(in, RESOURCE_TYPES), readEnum(in, RESOURCE_TYPES),
+                        readEnum(in, RESOURCE_TYPES), readEnum(in, RESOURCE_TYPES));
+            case T_CASINO_RESULT: {
+                CasinoResult result = new CasinoResult();
+                result.getDeltas().putAll(readResourceMap(in));
+                result.setGamesPlayed(readVarInt(in));
+                return result;
+            }
+            case T_TRADE_OFFER: {
+                TradeOffer offer = new TradeOffer();
+                offer.caps = readSignedVarInt(in);
+                offer.resources.putAll(readResourceMap(in));
+                int count = readVarInt(in);
+                for (int i = 0; i < count; i++) offer.properties.add((PropertyField) readField(in, null));
+                return offer;
+            }
+            case T_JOIN_SNAPSHOT:
+                return readJoinSnapshot(in);
+            case T_CHAT_EVENT: {
+                ChatEvent.Kind kind = readEnum(in, CHAT_KINDS);
+                if (kind == null) throw new IOException("Chat event without a kind");
+                return new ChatEvent(kind, readString(in), readEnum(in, TOKENS), readString(in),
+                        readEnum(in, TOKENS), readString(in), readString(in), in.readLong());
+            }
+            case T_MESSAGE: {
+                int typeIndex = in.readUnsignedByte();
+                if (typeIndex >= MESSAGE_TYPES.length) {
+                    throw new IOException("Unknown message type: " + typeIndex);
+                }
+                return new NetworkMessage(MESSAGE_TYPES[typeIndex], readValue(in));
+            }
+            case T_BYTES: {
+                byte[] bytes = new byte[readVarInt(in)];
+                in.readFully(bytes);
+                return bytes;
+            }
+            case T_SERIALIZED: {
+                byte[] bytes = new byte[readVarInt(in)];
+                in.readFully(bytes);
+                try (ObjectInputStream ois = new ObjectInputStream(new ByteArrayInputStream(bytes))) {
+                    return ois.readObject();
+                } catch (ClassNotFoundException e) {
+                    throw new IOException("Unknown class in payload: " + e.getMessage(), e);
+                }
+            }
+            default:
+                throw new IOException("Unknown value tag: " + tag);
+        }
+    }
+
+    // --- Players ---
+
+    /**
+     * Writes a player including the properties they own. The owner of each
+     * property is implied (the player itself), which breaks the cycle that
+     * Java serialization has to walk.
+     */
+    private void writePlayer(DataOutputStream out, Player player) throws IOException {
+        writePlayerCore(out, player);
+        List<PropertyField> owned = player.getOwnedProperties();
+        writeVarInt(out, owned.size());
+        for (PropertyField prop : owned) writeField(out, prop, -1);
+    }
+
+    private Player readPlayer(DataInputStream in) throws IOException {
+        Player player = readPlayerCore(in);
+        int count = readVarInt(in);
+        for (int i = 0; i < count; i++) {
+            PropertyField prop = (PropertyField) readField(in, null);
+            prop.setOwner(player);
+            player.addProperty(prop);
+        }
+        return player;
+    }
+
+    private void writePlayerCore(DataOutputStream out, Player player) throws IOException {
+        writeString(out, player.getName());
+        writeEnum(out, player.getToken());
+        writeSignedVarInt(out, player.getBottleCaps());
+        writeVarInt(out, player.getPosition());
+        int flags = (player.isInGame() ? 1 : 0)
+                | (player.hasGetOutOfJailCard() ? 2 : 0)
+                | (player.isInJail() ? 4 : 0);
+        out.writeByte(flags);
+        writeVarInt(out, player.getJailTurns());
+
+        SpecialStats special = player.getSpecial();
+        out.writeByte(special.getStrength());
+        out.writeByte(special.getPerception());
+        out.writeByte(special.getEndurance());
+        out.writeByte(special.getCharisma());
+        out.writeByte(special.getIntelligence());
+        out.writeByte(special.getAgility());
+        out.writeByte(special.getLuck());
+
+        writeResourceMap(out, player.getResources());
+    }
+
+    private Player readPlayerCore(DataInputStream in) throws IOException {
+        String name = readString(in);
+        PlayerToken token = readEnum(in, TOKENS);
+        Player player = new Player(name, token);
+
+        int caps = readSignedVarInt(in);
+        player.payCaps(player.getBottleCaps());
+        player.addCaps(caps);
+
+        int position = readVarInt(in);
+        int flags = in.readUnsignedByte();
+        player.setInGame((flags & 1) != 0);
+        player.setHasGetOutOfJailCard((flags & 2) != 0);
+        player.setInJail((flags & 4) != 0); // May move the token to jail, so position is applied afterwards
+        player.setPosition(position);
+        player.setJailTurns(readVarInt(in));
+
+        player.setSpecial(new SpecialStats(in.readByte(), in.readByte(), in.readByte(), in.readByte(),
+                in.readByte(), in.readByte(), in.readByte()));
+
+        player.getResources().clear();
+        player.getResources().putAll(readResourceMap(in));
+        return player;
+    }
+
+    // --- Board Fields ---
+
+    private boolean isFieldList(Object value) {
+        if (!(value instanceof List)) return false;
+        for (Object o : (List<?>) value) {
+            if (!(o instanceof BoardField)) return false;
+        }
+        return true;
+    }
+
+    /**
+     * Writes a board field list. Distinct owners are written once up front and
+     * referenced by index from each property.
+     */
+    private void writeFieldList(DataOutputStream out, List<?> fields) throws IOException {
+        Map<Player, Integer> ownerIndex = new IdentityHashMap<>();
+        List<Player> owners = new ArrayList<>();
+        collectOwners(fields, ownerIndex, owners);
+
+        writeVarInt(out, owners.size());
+        for (Player owner : owners) writePlayerCore(out, owner);
+        writeFields(out, fields, ownerIndex);
+    }
+
+    private List<BoardField> readFieldList(DataInputStream in) throws IOException {
+        int ownerCount = readVarInt(in);
+        Player[] owners = new Player[ownerCount];
+        for (int i = 0; i < ownerCount; i++) owners[i] = readPlayerCore(in);
+        return readFields(in, owners);
+    }
+
+    /** Adds every property owner not yet in ownerIndex to owners. */
+    private void collectOwners(List<?> fields, Map<Player, Integer> ownerIndex, List<Player> owners) {
+        for (Object o : fields) {
+            if (o instanceof PropertyField) {
+                Player owner = ((PropertyField) o).getOwner();
+                if (owner != null && !ownerIndex.containsKey(owner)) {
+                    ownerIndex.put(owner, owners.size());
+                    owners.add(owner);
+                }
+            }
+        }
+    }
+
+    private void writeFields(DataOutputStream out, List<?> fields, Map<Player, Integer> ownerIndex) throws IOException {
+        writeVarInt(out, fields.size());
+        for (Object o : fields) {
+            int index = -1;
+            if (o instanceof PropertyField && ((PropertyField) o).getOwner() != null) {
+                index = ownerIndex.get(((PropertyField) o).getOwner());
+            }
+            writeField(out, (BoardField) o, index);
+        }
+    }
+
+    private List<BoardField> readFields(DataInputStream in, Player[] owners) throws IOException {
+        int count = readVarInt(in);
+        List<BoardField> fields = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            BoardField field = readField(in, owners);
+            if (field instanceof PropertyField && ((PropertyField) field).getOwner() != null) {
+                ((PropertyField) field).getOwner().addProperty((PropertyField) field);
+            }
+            fields.add(field);
+        }
+        return fields;
+    }
+
+    // --- Join Snapshot ---
+
+    /**
+     * Players are written once, followed by any owner that is no longer in the
+     * player list. Fields then refer to them by index, as in a field list.
+     */
+    private void writeJoinSnapshot(DataOutputStream out, JoinSnapshot snapshot) throws IOException {
+        out.writeByte(JoinSnapshot.FORMAT_VERSION);
+        out.writeLong(snapshot.getBoardVersion());
+
+        Map<Player, Integer> ownerIndex = new IdentityHashMap<>();
+        List<Player> people = new ArrayList<>();
+        for (Player p : snapshot.getPlayers()) {
+            ownerIndex.put(p, people.size());
+            people.add(p);
+        }
+        collectOwners(snapshot.getFields(), ownerIndex, people);
+
+        writeVarInt(out, snapshot.getPlayers().size());
+        writeVarInt(out, people.size());
+        for (Player p : people) writePlayerCore(out, p);
+
+        writeSignedVarInt(out, snapshot.getSelfIndex());
+        writeSignedVarInt(out, snapshot.getCurrentPlayerIndex());
+        writeValue(out, snapshot.getCasinoConfig());
+        writeFields(out, snapshot.getFields(), ownerIndex);
+    }
+
+    private JoinSnapshot readJoinSnapshot(DataInputStream in) throws IOException {
+        int format = in.readUnsignedByte();
+        if (format != JoinSnapshot.FORMAT_VERSION) {
+            throw new IOException("Unsupported join snapshot format: " + format);
+        }
+        long boardVersion = in.readLong();
+
+        int playerCount = readVarInt(in);
+        Player[] people = new Player[readVarInt(in)];
+        for (int i = 0; i < people.length; i++) people[i] = readPlayerCore(in);
+
+        int selfIndex = readSignedVarInt(in);
+        int currentPlayerIndex = readSignedVarInt(in);
+        CasinoConfiguration casinoConfig = (CasinoConfiguration) readValue(in);
+        List<BoardField> fields = readFields(in, people);
+
+        List<Player> players = new ArrayList<>(playerCount);
+        for (int i = 0; i < playerCount; i++) players.add(people[i]);
+        return new JoinSnapshot(boardVersion, fields, players, selfIndex, currentPlayerIndex, casinoConfig);
+    }
+
+    private void writeField(DataOutputStream out, BoardField field, int ownerIndex) throws IOException {
+        writeEnum(out, field.getType());
+        writeString(out, field.getName());
+        writeString(out, field.getDescription());
+        writeVarInt(out, field.getPosition());
+
+        if (field instanceof StartField) {
+            writeSignedVarInt(out, ((StartField) field).getPassReward());
+        } else if (field instanceof PropertyField) {
+            PropertyField prop = (PropertyField) field;
+            writeVarInt(out, prop.getPurchaseCost());
+            int[] rents = prop.getRentCosts();
+            writeVarInt(out, rents == null ? 0 : rents.length);
+            if (rents != null) for (int rent : rents) writeSignedVarInt(out, rent);
+            writeVarInt(out, prop.getImprovementCost());
+            writeEnum(out, prop.getPropertyType());
+            writeString(out, prop.getGroupId());
+            writeString(out, prop.getImageUrl());
+            writeVarInt(out, prop.getCurrentImprovementLevel());
+            out.writeBoolean(prop.isMortgaged());
+            writeSignedVarInt(out, ownerIndex);
+        } else if (field instanceof ResourceField) {
+            ResourceField res = (ResourceField) field;
+            writeEnum(out, res.getResourceType());
+            writeSignedVarInt(out, res.getProductionRate());
+        } else if (field instanceof SpecialField) {
+            SpecialField special = (SpecialField) field;
+            writeEnum(out, special.getEffect());
+            writeSignedVarInt(out, special.getEffectValue());
+        }
+    }
+
+    private BoardField readField(DataInputStream in, Player[] owners) throws IOException {
+        FieldType type = readEnum(in, FIELD_TYPES);
+        String name = readString(in);
+        String description = readString(in);
+        int position = readVarInt(in);
+
+        if (type == null) throw new IOException("Board field without type at position " + position);
+        switch (type) {
+            case START:
+                return new StartField(name, description, position, readSignedVarInt(in));
+            case PROPERTY: {
+                int purchaseCost = readVarInt(in);
+                int[] rents = new int[readVarInt(in)];
+                for (int i = 0; i < rents.length; i++) rents[i] = readSignedVarInt(in);
+                int improvementCost = readVarInt(in);
+                PropertyType propertyType = readEnum(in, PROPERTY_TYPES);
+                String groupId = readString(in);
+                String imageUrl = readString(in);
+                PropertyField prop = new PropertyField(name, description, position, purchaseCost, rents,
+                        improvementCost, propertyType, groupId, imageUrl);
+                prop.setCurrentImprovementLevel(readVarInt(in));
+                prop.setMortgaged(in.readBoolean());
+                int ownerIndex = readSignedVarInt(in);
+                if (owners != null && ownerIndex >= 0 && ownerIndex < owners.length) {
+                    prop.setOwner(owners[ownerIndex]);
+                }
+                return prop;
+            }
+            case RESOURCE:
+                return new ResourceField(name, description, position, readEnum(in, RESOURCE_TYPES), readSignedVarInt(in));
+            case SPECIAL:
+                return new SpecialField(name, description, position, readEnum(in, EFFECTS), readSignedVarInt(in));
+            default:
+                throw new IOException("Unknown field type: " + type);
+        }
+    }
+
+    // --- Primitives ---
+
+    private void writeResourceMap(DataOutputStream out, Map<ResourceType, Integer> map) throws IOException {
+        writeVarInt(out, map.size());
+        for (Map.Entry<ResourceType, Integer> entry : map.entrySet()) {
+            writeEnum(out, entry.getKey());
+            writeSignedVarInt(out, entry.getValue() == null ? 0 : entry.getValue());
+        }
+    }
+
+    private Map<ResourceType, Integer> readResourceMap(DataInputStream in) throws IOException {
+        Map<ResourceType, Integer> map = new java.util.EnumMap<>(ResourceType.class);
+        int count = readVarInt(in);
+        for (int i = 0; i < count; i++) {
+            ResourceType type = readEnum(in, RESOURCE_TYPES);
+            int amount = readSignedVarInt(in);
+            if (type != null) map.put(type, amount);
+        }
+        return map;
+    }
+
+    private void writeString(DataOutputStream out, String s) throws IOException {
+        if (s == null) {
+            writeVarInt(out, 0);
+            return;
+        }
+        byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+        writeVarInt(out, bytes.length + 1);
+        out.write(bytes);
+    }
+
+    private String readString(DataInputStream in) throws IOException {
+        int length = readVarInt(in);
+        if (length == 0) return null;
+        byte[] bytes = new byte[length - 1];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /** Enums are written as ordinal + 1 so that 0 can stand for null. */
+    private void writeEnum(DataOutputStream out, Enum<?> value) throws IOException {
+        writeVarInt(out, value == null ? 0 : value.ordinal() + 1);
+    }
+
+    private <T extends Enum<T>> T readEnum(DataInputStream in, T[] values) throws IOException {
+        int index = readVarInt(in);
+        if (index == 0) return null;
+        if (index > values.length) throw new IOException("Enum ordinal out of range: " + (index - 1));
+        return values[index - 1];
+    }
+
+    private void writeVarInt(DataOutputStream out, int value) throws IOException {
+        while ((value & ~0x7F) != 0) {
+            out.writeByte((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.writeByte(value);
+    }
+
+    private int readVarInt(DataInputStream in) throws IOException {
+        int result = 0;
+        for (int shift = 0; shift < 35; shift += 7) {
+            int b = in.readUnsignedByte();
+            result |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) return result;
+        }
+        throw new IOException("Malformed varint");
+    }
+
+    private void writeSignedVarInt(DataOutputStream out, int value) throws IOException {
+        writeVarInt(out, (value << 1) ^ (value >> 31));
+    }
+
+    private int readSignedVarInt(DataInputStream in) throws IOException {
+        int raw = readVarInt(in);
+        return (raw >>> 1) ^ -(raw & 1);
+    }
+}
@@ -0,0 +1,128 @@
+package game.network;
+
+import util.PlayerToken;
+
+import java.io.Serializable;
+
+/**
+ * One line of chat as data, sent as CHAT_EVENT to clients that agreed to
+ * {@link Protocol#CHAT_EVENTS}. Each client turns it into HTML itself (see
+ * ui.ChatRenderer), so the host no longer formats and sends markup, colors and
+ * timestamps for every recipient.
+ *
+ * Players are identified by their token, which is also what picks their color and
+ * icon. The timestamp is the host's clock when the event was created; clients show
+ * it in their own time zone.
+ */
+public final class ChatEvent implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    public enum Kind {
+        /** Normal chat line from sender. */
+        PUBLIC,
+        /** /me action by sender. */
+        EMOTE,
+        /** Whisper as the sender sees it, addressed to peer. */
+        WHISPER_TO,
+        /** Whisper as the recipient sees it, from sender. */
+        WHISPER_FROM,
+        /** Image or GIF from sender, media is its URL. */
+        IMAGE,
+        /** Reply to a command, only shown to whoever typed it. */
+        SYSTEM,
+        /** A command failed. */
+        ERROR,
+        /** Joins, leaves and other notices for the whole table. */
+        NOTICE
+    }
+
+    private final Kind kind;
+    private final String sender;
+    private final PlayerToken senderToken;
+    private final String peer;
+    private final PlayerToken peerToken;
+    private final String text;
+    private final String media;
+    private final long timestamp;
+
+    public ChatEvent(Kind kind, String sender, PlayerToken senderToken, String peer, PlayerToken peerToken,
+                     String text, String media, long timestamp) {
+        this.kind = kind;
+        this.sender = sender;
+        this.senderToken = senderToken;
+        this.peer = peer;
+        this.peerToken = peerToken;
+        this.text = text;
+        this.media = media;
+        this.timestamp = timestamp;
+    }
+
+    public static ChatEvent publicMessage(String sender, PlayerToken token, String text) {
+        return new ChatEvent(Kind.PUBLIC, sender, token, null, null, text, null, System.currentTimeMillis());
+    }
+
+    public static ChatEvent emote(String sender, PlayerToken token, String action) {
+        return new ChatEvent(Kind.EMOTE, sender, token, null, null, action, null, System.currentTimeMillis());
+    }
+
+    /** The two sides of one whisper: [0] for the sender, [1] for the recipient. */
+    public static ChatEvent[] whisper(String sender, PlayerToken senderToken, String to, PlayerToken toToken, String text) {
+        long now = System.currentTimeMillis();
+        return new ChatEvent[]{
+                new ChatEvent(Kind.WHISPER_TO, sender, senderToken, to, toToken, text, null, now),
+                new ChatEvent(Kind.WHISPER_FROM, sender, senderToken, to, toToken, text, null, now)
+        };
+    }
+
+    public static ChatEvent image(String sender, PlayerToken token, String url) {
+        return new ChatEvent(Kind.IMAGE, sender, token, null, null, null, url, System.currentTimeMillis());
+    }
+
+    /** Plain text; lines are separated by '\n'. */
+    public static ChatEvent system(String text) {
+        return new ChatEvent(Kind.SYSTEM, null, null, null, null, text, null, System.currentTimeMillis());
+    }
+
+    public static ChatEvent error(String text) {
+        return new ChatEvent(Kind.ERROR, null, null, null, null, text, null, System.currentTimeMillis());
+    }
+
+    public static ChatEvent notice(String text) {
+        return new ChatEvent(Kind.NOTICE, null, null, null, null, text, null, System.currentTimeMillis());
+    }
+
+    public Kind getKind() {
+        return kind;
+    }
+
+    public String getSender() {
+        return sender;
+    }
+
+    public PlayerToken getSenderToken() {
+        return senderToken;
+    }
+
+    /** The other side of a whisper, otherwise null. */
+    public String getPeer() {
+        return peer;
+    }
+
+    public PlayerToken getPeerToken() {
+        return peerToken;
+    }
+
+    public String getText() {
+        return text;
+    }
+
+    /** URL of the image for {@link Kind#IMAGE}, otherwise null. */
+    public String getMedia() {
+        return media;
+    }
+
+    /** Host time in milliseconds since the epoch. */
+    public long getTimestamp() {
+        return timestamp;
+    }
+}
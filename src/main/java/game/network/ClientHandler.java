@@ -1,78 +1,94 @@
 package game.network;
 
-import game.GameController;
 import players.Player;
+import util.PlayerToken;
 
-import java.io.ObjectInputStream;
-import java.io.ObjectOutputStream;
-import java.net.Socket;
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
- * A thread on the server that handles communication with a single client.
+ * The server's view of one connected client, independent of the transport behind it.
+ * GameController only talks to clients through this class (addClient, removeClient,
+ * handleNetworkMessage, sendMessage).
  */
-public class ClientHandler extends Thread {
-    private Socket socket;
-    private GameController controller;
-    private ObjectOutputStream out;
-    private ObjectInputStream in;
+public abstract class ClientHandler {
     private Player player;
 
-    public ClientHandler(Socket socket, GameController controller) {
-        this.socket = socket;
-        this.controller = controller;
-    }
+    // Last board version this client confirmed, -1 = needs a full snapshot
+    private volatile long boardVersionAcked = -1;
 
-    public void run() {
-        try {
-            // Server waits for client's header
-            in = new ObjectInputStream(socket.getInputStream());
+    // Set when the join snapshot is sent, cleared when the client acknowledges it
+    private volatile long joinStartedNanos;
 
-            // Server creates its output stream, sending its own header
-            out = new ObjectOutputStream(socket.getOutputStream());
+    // Numbers and remembers what is written to this player's slot
+    private final Object replayLock = new Object();
+    private ReplayBuffer replay;
 
-            // Force the header out of the buffer and over the network NOW.
-            out.flush();
+    // What the client told us about its previous connection (CLIENT_INFO)
+    private PlayerToken resumeSlot;
+    private long resumeEpoch;
+    private long resumeSequence;
+    private String roomId;
+    private boolean spectator;
 
-            // Now, we can safely wait for the client's first message
-            NetworkMessage helloMsg = (NetworkMessage) in.readObject();
-            String username = "Wanderer"; // Default
-            if (helloMsg.getType() == NetworkMessage.MessageType.CLIENT_INFO) {
-                username = (String) helloMsg.getPayload();
-            }
+    // Agreed in the hello, see Protocol. Nothing is written before that.
+    private volatile int protocolVersion = Protocol.LEGACY_VERSION;
+    private volatile int features;
+    private volatile MessageCodec codec = Protocol.codecFor(0);
+    private final FrameCompressor compressor = new FrameCompressor();
 
-            // Add this client to the controller
-            controller.addClient(this, username);
+    // Messages waiting for this client's writer
+    protected final OutboundQueue outbound = new OutboundQueue();
 
-            // Listen for all future messages
-            while (true) {
-                NetworkMessage msg = (NetworkMessage) in.readObject();
-                controller.handleNetworkMessage(msg, this);
-            }
-        } catch (Exception e) {
-            // Client disconnected
-            System.out.println("Client disconnected: " + socket.getInetAddress());
-            controller.removeClient(this);
-        }
-    }
+    // Groups messages produced by one server action, null = send each message on its own
+    private MessageBatcher batcher;
+
+    // Round trip times from PING/PONG
+    private final LatencyTracker latency = new LatencyTracker();
+
+    // Images this client is uploading, and finished ones waiting for the controller
+    private final MediaReceiver media = new MediaReceiver();
+    private final Map<Long, MediaReceiver.Received> receivedMedia = new ConcurrentHashMap<>();
 
     /**
-     * Sends a message from the server to this specific client.
-     * SYNCHRONIZED: Prevents "stream active" errors when Heartbeat and GIF Upload
-     * try to write to the same client simultaneously.
+     * Queues a message from the server to this specific client. Never blocks on
+     * the network, so it is safe to call from the game thread and from broadcasts.
+     * While a batch is open on the calling thread the message joins that batch instead.
      */
-    public synchronized void sendMessage(NetworkMessage msg) {
+    public void sendMessage(NetworkMessage msg) {
+        if (batcher != null && batcher.add(this, msg)) return;
+        enqueue(msg);
+    }
+
+    void enqueue(NetworkMessage msg) {
+        // Encoded now, on the sending thread, because the game goes on changing the players
+        // and fields in the payload. The writer only looks the bytes up (see encodeFrame).
         try {
-            if (socket != null && socket.isConnected() && out != null) {
-                out.writeObject(msg);
-                out.flush();
-                out.reset(); // Prevent memory leaks by clearing object cache
-            }
-        } catch (Exception e) {
-            // e.printStackTrace(); // Suppress noise on disconnect
-            System.out.println("Error sending to " + (player != null ? player.getName() : "Unknown") + ": " + e.getMessage());
+            msg.encode(codec);
+        } catch (IOException e) {
+            System.out.println("Could not encode " + msg.getType() + " for " + getDisplayName() + ": " + e.getMessage() + ", disconnecting.");
+            disconnect();
+            return;
         }
+        if (!outbound.offer(msg)) {
+            System.out.println("Outbound queue overflow for " + getDisplayName() + " (" + outbound.getStats() + "), disconnecting.");
+            disconnect();
+            return;
+        }
+        onMessageQueued();
     }
 
+    /** Tells the transport that the outbound queue has work. */
+    protected abstract void onMessageQueued();
+
+    /** Closes the connection. The transport reports the removal to the controller. */
+    public abstract void disconnect();
+
+    /** Human readable remote address for logs. */
+    public abstract String getRemoteAddress();
+
     public Player getPlayer() {
         return player;
     }
@@ -81,7 +97,252 @@ public class ClientHandler extends Thread {
         this.player = player;
     }
 
-    public ObjectOutputStream getNetworkOut() {
-        return out;
+    public void setBatcher(MessageBatcher batcher) {
+        this.batcher = batcher;
+    }
+
+    /** True once the connection is going away and queued messages will not be written. */
+    public boolean isClosed() {
+        return outbound.isClosed();
+    }
+
+    public int getOutboundDepth() {
+        return outbound.size();
+    }
+
+    public int getOutboundDepth(OutboundQueue.Lane lane) {
+        return outbound.size(lane);
+    }
+
+    public String getOutboundStats() {
+        return outbound.getStats();
+    }
+
+    /** How long game state and chat/media each waited for the writer. */
+    public String getLaneStats() {
+        return outbound.getLaneStats();
+    }
+
+    public LatencyTracker getLatency() {
+        return latency;
+    }
+
+    /**
+     * Handles connection-level messages on the transport's own thread, so a busy
+     * game thread does not show up as network latency.
+     * @return true if the message was consumed and must not reach the controller.
+     */
+    protected boolean handleControlMessage(NetworkMessage msg) {
+        if (MediaReceiver.isMediaMessage(msg.getType())) {
+            // Chunks are written to disk here; only a verified MEDIA_END reaches the controller
+            MediaReceiver.Received image = media.handle(msg);
+            if (image == null) return true;
+            receivedMedia.put(image.getId(), image);
+            return false;
+        }
+        if (msg.getType() != NetworkMessage.MessageType.PONG) return false;
+        if (msg.getPayload() instanceof Long) latency.onPong((Long) msg.getPayload());
+        return true;
+    }
+
+    /** Hands over an upload completed by a MEDIA_END with this id, or null. */
+    public MediaReceiver.Received takeReceivedMedia(long id) {
+        return receivedMedia.remove(id);
+    }
+
+    /** Deletes uploads that will never finish because the client left. */
+    public void abortMedia() {
+        media.abortAll();
+        receivedMedia.clear();
+    }
+
+    protected String getDisplayName() {
+        return player != null ? player.getName() : getRemoteAddress();
+    }
+
+    public long getBoardVersionAcked() {
+        return boardVersionAcked;
+    }
+
+    public void setBoardVersionAcked(long version) {
+        this.boardVersionAcked = version;
+    }
+
+    public void markJoinStarted() {
+        this.joinStartedNanos = System.nanoTime();
+    }
+
+    /**
+     * Completes a pending join.
+     * @return milliseconds since {@link #markJoinStarted()}, or -1 if no join was pending.
+     */
+    public long finishJoin() {
+        long started = joinStartedNanos;
+        if (started == 0) return -1;
+        joinStartedNanos = 0;
+        return (System.nanoTime() - started) / 1_000_000;
+    }
+
+    // --- Sequencing & Replay ---
+
+    /**
+     * Called by the transport right before writing a message.
+     * @return the sequence number to put in the frame header, 0 if not sequenced.
+     */
+    protected long nextSequence(NetworkMessage msg) {
+        if (msg instanceof ReplayBuffer.Replayed) {
+            return ((ReplayBuffer.Replayed) msg).getSequence();
+        }
+        if (msg.getType() == NetworkMessage.MessageType.PING || msg.getType() == NetworkMessage.MessageType.PLAYER_LATENCY) {
+            return 0; // Periodic and stale after a reconnect, not worth a replay slot
+        }
+        if (MediaReceiver.isMediaMessage(msg.getType())) {
+            return 0; // A transfer cut off by a reconnect cannot be finished anyway
+        }
+        synchronized (replayLock) {
+            return replay != null ? replay.record(msg) : 0;
+        }
+    }
+
+    /** Starts numbering everything sent to this client in the given slot buffer. */
+    public void attachReplay(ReplayBuffer buffer) {
+        synchronized (replayLock) {
+            this.replay = buffer;
+        }
+    }
+
+    /**
+     * Releases the slot buffer, keeping anything this connection never got to write.
+     * @return the buffer, or null if it was already detached.
+     */
+    public ReplayBuffer detachReplay() {
+        ReplayBuffer buffer;
+        synchronized (replayLock) {
+            buffer = replay;
+            replay = null;
+        }
+        if (buffer != null) {
+            List<NetworkMessage> unsent = outbound.drain();
+            unsent.removeIf(msg -> MediaReceiver.isMediaMessage(msg.getType()));
+            buffer.stash(unsent, getBoardVersionAcked());
+        }
+        return buffer;
+    }
+
+    /**
+     * Continues a previous connection: queues the messages after lastSeen plus the
+     * ones the old connection never wrote, then numbers new messages after them.
+     * @return the number of messages replayed, or -1 if the gap is no longer in the
+     *         buffer and a full snapshot is needed.
+     */
+    public int resume(ReplayBuffer buffer, long lastSeen) {
+        List<NetworkMessage> tail = buffer.since(lastSeen);
+        if (tail == null) return -1;
+        setBoardVersionAcked(buffer.getStashedBoardVersion());
+        attachReplay(buffer);
+        List<NetworkMessage> unsent = buffer.takeUnsent();
+        for (NetworkMessage msg : tail) enqueue(msg);
+        for (NetworkMessage msg : unsent) enqueue(msg);
+        return tail.size() + unsent.size();
+    }
+
+    /** Slot the client held before reconnecting, or null for a fresh join. */
+    public PlayerToken getResumeSlot() {
+        return resumeSlot;
+    }
+
+    public long getResumeEpoch() {
+        return resumeEpoch;
+    }
+
+    public long getResumeSequence() {
+        return resumeSequence;
+    }
+
+    public int getProtocolVersion() {
+        return protocolVersion;
+    }
+
+    /** The Protocol feature bits agreed with this client. */
+    public int getFeatures() {
+        return features;
+    }
+
+    public boolean supports(int feature) {
+        return Protocol.has(features, feature);
+    }
+
+    /** The codec the transport must encode this client's messages with. */
+    public MessageCodec getCodec() {
+        return codec;
+    }
+
+    /**
+     * The bytes to write for a message: encoded with the agreed codec and compressed if agreed.
+     * The encoding was cached when the message was queued, so writers never read the payload.
+     */
+    protected byte[] encodeFrame(NetworkMessage msg) throws IOException {
+        return supports(Protocol.COMPRESSION) ? msg.encode(codec, compressor) : msg.encode(codec);
+    }
+
+    /** Decodes a frame from this client, inflating it first if it arrived compressed. */
+    protected NetworkMessage decodeFrame(byte[] frame) throws IOException {
+        return MessageCodecs.decode(compressor.decompress(frame));
+    }
+
+    /** This connection's compressor, for transports that read through a MessageChannel. */
+    protected FrameCompressor getCompressor() {
+        return compressor;
+    }
+
+    public String getCompressionStats() {
+        return compressor.getStats();
+    }
+
+    /** True if the client only watches (see SpectatorFeed); it never gets a player. */
+    public boolean isSpectator() {
+        return spectator;
+    }
+
+    /** Room the client asked for in its hello, or null for the default room. */
+    public String getRoomId() {
+        return roomId;
+    }
+
+    /**
+     * Reads the client's first message. The payload is either just the username or
+     * {username, slot token, replay epoch, last sequence, room id, protocol version,
+     * features, spectator}; the slot is null unless the client is reconnecting, and
+     * older clients stop after the room id or the features. A client that sent a version is answered
+     * with SERVER_HELLO before anything else.
+     * @return the username.
+     */
+    protected String readHello(NetworkMessage helloMsg) {
+        String username = "Wanderer"; // Default
+        if (helloMsg.getType() != NetworkMessage.MessageType.CLIENT_INFO) return username;
+
+        Object payload = helloMsg.getPayload();
+        if (payload instanceof String) {
+            username = (String) payload;
+        } else if (payload instanceof Object[]) {
+            Object[] data = (Object[]) payload;
+            if (data.length > 0 && data[0] instanceof String) username = (String) data[0];
+            if (data.length > 3 && data[1] instanceof PlayerToken) {
+                resumeSlot = (PlayerToken) data[1];
+                resumeEpoch = data[2] instanceof Long ? (Long) data[2] : 0;
+                resumeSequence = data[3] instanceof Long ? (Long) data[3] : 0;
+            }
+            if (data.length > 4 && data[4] instanceof String) roomId = (String) data[4];
+            if (data.length > 6 && data[5] instanceof Integer && data[6] instanceof Integer) {
+                protocolVersion = Math.max(Protocol.LEGACY_VERSION, Math.min((Integer) data[5], Protocol.VERSION));
+                features = Protocol.negotiate((Integer) data[6]);
+            }
+            if (data.length > 7 && data[7] instanceof Boolean) spectator = (Boolean) data[7];
+        }
+        codec = Protocol.codecFor(features);
+        if (protocolVersion > Protocol.LEGACY_VERSION) {
+            enqueue(new NetworkMessage(NetworkMessage.MessageType.SERVER_HELLO, new Object[]{protocolVersion, features}));
+        }
+        return username;
     }
-}
\ No newline at end of file
+}
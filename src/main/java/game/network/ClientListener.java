@@ -0,0 +1,18 @@
+package game.network;
+
+/**
+ * Receives connection events from a server transport.
+ *
+ * Transports call these from their own I/O threads, so implementations must
+ * hand real work off instead of blocking (see game.RoomManager).
+ */
+public interface ClientListener {
+
+    /** A client finished its hello and wants to join. */
+    void addClient(ClientHandler client, String username);
+
+    void handleNetworkMessage(NetworkMessage msg, ClientHandler sender);
+
+    /** The connection is gone, whether the client left or was dropped. */
+    void removeClient(ClientHandler client);
+}
@@ -0,0 +1,29 @@
+package game.network;
+
+import java.io.IOException;
+
+/**
+ * A client's link to a game server, independent of how the messages travel.
+ * Implemented by {@link MessageChannel} for TCP and by {@link LoopbackTransport}
+ * for games where host and clients share one JVM.
+ */
+public interface Connection {
+
+    /** Sends a message to the server. Safe to call from any thread. */
+    void send(NetworkMessage msg) throws IOException;
+
+    /** Blocks until the next message from the server arrives. */
+    NetworkMessage receive() throws IOException;
+
+    /** Applies the Protocol features agreed in SERVER_HELLO to what this side sends. */
+    void setFeatures(int features);
+
+    /** Sequence number of the last numbered message received, 0 if none. */
+    long getLastReceivedSequence();
+
+    boolean isOpen();
+
+    void close();
+
+    String getStats();
+}
@@ -0,0 +1,155 @@
+package game.network;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.zip.Adler32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Per-connection frame compression, used once both sides agreed to
+ * {@link Protocol#COMPRESSION}.
+ *
+ * Frames below the threshold go out as they are. Larger ones are deflated on
+ * their own and marked with {@link #ID} in place of the codec id. Each frame is
+ * compressed separately, so the Deflater starts from a fixed dictionary of chat
+ * HTML and board vocabulary instead of an empty window. One Deflater and one
+ * Inflater per connection are reset and reused, never reallocated. A frame that
+ * would not get smaller is sent uncompressed.
+ *
+ * Configure with -Dvop.compress.threshold (bytes, default 512) and
+ * -Dvop.compress.level (0-9, default 1, fastest).
+ */
+public class FrameCompressor {
+
+    /** First byte of a compressed frame. Must not clash with a codec id. */
+    public static final byte ID = 3;
+
+    public static final int THRESHOLD = Integer.getInteger("vop.compress.threshold", 512);
+    public static final int LEVEL = Integer.getInteger("vop.compress.level", Deflater.BEST_SPEED);
+
+    // Both sides must use the same bytes; the zlib header names it by checksum, so a
+    // different dictionary fails loudly instead of producing garbage. Most common last.
+    private static final byte[] DICTIONARY = String.join("",
+            "java.util.ArrayList", "java.lang.Integer", "java.lang.String", "board.fields.", "BoardField",
+            "PropertyField", "SpecialField", "StartField", "players.Player", "util.PlayerToken",
+            "VAULT_BOY", "NUKA_GIRL", "DOGMEAT", "GHOUL", "SETTLEMENT", "PROPERTY", "SPECIAL", "LOSE_CAPS",
+            "https://images.fallout.wiki/", ".png", "Vault", "Wasteland", "Commonwealth", "Nuka-Cola",
+            "Raiders", "Brotherhood of Steel", "Super Mutant", " Pay 200 Caps.", " Collect ", " Caps",
+            "It's not your turn.", "[System] ", "<br>&nbsp; ", "<img src='", "' width='150'>",
+            "<p class=\"system\">", "<p class=\"log\">", "</i></p>", " <i>",
+            "<span class=\"message\">", "</span></p></div>", "<span class=\"name\" style=\"color: #",
+            "<span class=\"timestamp\">", "<div class=\"bubble-container\"><p class=\"chat-bubble\">",
+            " the ", " of ", " and ", " to ", " The ", " is ", " in ", " a ", ". ")
+            .getBytes(StandardCharsets.UTF_8);
+    private static final int DICTIONARY_ADLER = adler(DICTIONARY);
+
+    private final Deflater deflater = new Deflater(LEVEL);
+    private final Inflater inflater = new Inflater();
+    private byte[] deflateBuffer = new byte[16 * 1024];
+    private byte[] inflateBuffer = new byte[16 * 1024];
+    private boolean closed;
+
+    // Metrics
+    private long framesCompressed;
+    private long framesShared;
+    private long bytesIn;
+    private long bytesOut;
+    private long deflateNanos;
+    private long framesInflated;
+    private long inflateNanos;
+
+    private static int adler(byte[] bytes) {
+        Adler32 adler = new Adler32();
+        adler.update(bytes);
+        return (int) adler.getValue();
+    }
+
+    public static boolean isCompressed(byte[] frame) {
+        return frame.length > 0 && frame[0] == ID;
+    }
+
+    /** The frame to send: compressed if that saves anything, otherwise the frame itself. */
+    public synchronized byte[] compress(byte[] frame) {
+        if (frame.length < THRESHOLD || closed) return frame;
+        long started = System.nanoTime();
+        deflater.reset();
+        deflater.setDictionary(DICTIONARY);
+        deflater.setInput(frame);
+        deflater.finish();
+        int length = 1;
+        deflateBuffer[0] = ID;
+        while (!deflater.finished()) {
+            // Bigger than the input means it is not worth it
+            if (length >= frame.length) return frame;
+            if (length == deflateBuffer.length) deflateBuffer = Arrays.copyOf(deflateBuffer, deflateBuffer.length * 2);
+            length += deflater.deflate(deflateBuffer, length, deflateBuffer.length - length);
+        }
+        deflateNanos += System.nanoTime() - started;
+        if (length >= frame.length) return frame;
+        framesCompressed++;
+        bytesIn += frame.length;
+        bytesOut += length;
+        return Arrays.copyOf(deflateBuffer, length);
+    }
+
+    /** Counts a frame another connection already compressed (broadcasts are compressed once). */
+    public synchronized void recordShared(int originalLength, byte[] sent) {
+        if (sent.length == originalLength) return;
+        framesShared++;
+        bytesIn += originalLength;
+        bytesOut += sent.length;
+    }
+
+    /** The codec frame inside a received frame; uncompressed frames come back as they are. */
+    public synchronized byte[] decompress(byte[] frame) throws IOException {
+        if (!isCompressed(frame)) return frame;
+        if (closed) throw new IOException("Connection closed");
+        long started = System.nanoTime();
+        inflater.reset();
+        inflater.setInput(frame, 1, frame.length - 1);
+        byte[] out = inflateBuffer;
+        int length = 0;
+        try {
+            while (!inflater.finished()) {
+                if (inflater.needsDictionary()) {
+                    if (inflater.getAdler() != DICTIONARY_ADLER) throw new IOException("Frame uses an unknown compression dictionary");
+                    inflater.setDictionary(DICTIONARY);
+                    continue;
+                }
+                if (length == out.length) {
+                    if (out.length >= MessageChannel.MAX_FRAME_SIZE) throw new IOException("Compressed frame expands beyond the frame limit");
+                    out = Arrays.copyOf(out, Math.min(out.length * 2, MessageChannel.MAX_FRAME_SIZE));
+                }
+                int inflated = inflater.inflate(out, length, out.length - length);
+                if (inflated == 0 && inflater.needsInput()) throw new IOException("Truncated compressed frame");
+                length += inflated;
+            }
+        } catch (DataFormatException e) {
+            throw new IOException("Corrupt compressed frame: " + e.getMessage());
+        }
+        if (out.length <= 256 * 1024) inflateBuffer = out; // Keep a grown buffer, but not a huge one
+        framesInflated++;
+        inflateNanos += System.nanoTime() - started;
+        return Arrays.copyOf(out, length);
+    }
+
+    /** Frees the native zlib memory. Later frames pass through uncompressed. */
+    public synchronized void close() {
+        if (closed) return;
+        closed = true;
+        deflater.end();
+        inflater.end();
+    }
+
+    public synchronized String getStats() {
+        long frames = framesCompressed + framesShared;
+        if (frames == 0 && framesInflated == 0) return "compression unused";
+        return String.format("compressed %d frames (%d shared) %d -> %d bytes (%.0f%%), deflate avg %.0f us, inflated %d frames avg %.0f us",
+                frames, framesShared, bytesIn, bytesOut, bytesIn == 0 ? 100.0 : 100.0 * bytesOut / bytesIn,
+                framesCompressed == 0 ? 0 : deflateNanos / 1e3 / framesCompressed,
+                framesInflated, framesInflated == 0 ? 0 : inflateNanos / 1e3 / framesInflated);
+    }
+}
@@ -0,0 +1,45 @@
+package game.network;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+
+/**
+ * The original wire format: plain Java serialization of the whole NetworkMessage.
+ * Kept as a fallback and as the baseline for comparing against the binary codec.
+ */
+public class JavaSerializationCodec implements MessageCodec {
+
+    public static final byte ID = 1;
+
+    @Override
+    public byte getId() {
+        return ID;
+    }
+
+    @Override
+    public String getName() {
+        return "java";
+    }
+
+    @Override
+    public byte[] encode(NetworkMessage msg) throws IOException {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream(256);
+        bos.write(ID);
+        try (ObjectOutputStream oos = new ObjectOutputStream(bos)) {
+            oos.writeObject(msg);
+        }
+        return bos.toByteArray();
+    }
+
+    @Override
+    public NetworkMessage decode(byte[] data) throws IOException {
+        try (ObjectInputStream ois = new ObjectInputStream(new ByteArrayInputStream(data, 1, data.length - 1))) {
+            return (NetworkMessage) ois.readObject();
+        } catch (ClassNotFoundException e) {
+            throw new IOException("Unknown class in message: " + e.getMessage(), e);
+        }
+    }
+}
@@ -0,0 +1,73 @@
+package game.network;
+
+import board.fields.BoardField;
+import mechanics.CasinoConfiguration;
+import players.Player;
+
+import java.io.Serializable;
+import java.util.List;
+
+/**
+ * Everything a client needs to show a game in progress, sent as one JOIN_SNAPSHOT
+ * instead of a message per player and property.
+ *
+ * Field owners are the same objects as the entries in {@link #getPlayers()}, so the
+ * binary codec only writes each player once.
+ */
+public class JoinSnapshot implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    /** Bumped whenever the snapshot layout changes. */
+    public static final int FORMAT_VERSION = 1;
+
+    private final long boardVersion;
+    private final List<BoardField> fields;
+    private final List<Player> players;
+    private final int selfIndex;
+    private final int currentPlayerIndex;
+    private final CasinoConfiguration casinoConfig;
+
+    public JoinSnapshot(long boardVersion, List<BoardField> fields, List<Player> players,
+                        int selfIndex, int currentPlayerIndex, CasinoConfiguration casinoConfig) {
+        this.boardVersion = boardVersion;
+        this.fields = fields;
+        this.players = players;
+        this.selfIndex = selfIndex;
+        this.currentPlayerIndex = currentPlayerIndex;
+        this.casinoConfig = casinoConfig;
+    }
+
+    /** Board version the snapshot was taken at; the client acknowledges it once applied. */
+    public long getBoardVersion() {
+        return boardVersion;
+    }
+
+    public List<BoardField> getFields() {
+        return fields;
+    }
+
+    public List<Player> getPlayers() {
+        return players;
+    }
+
+    public int getSelfIndex() {
+        return selfIndex;
+    }
+
+    /** The joining client's own player, or null. */
+    public Player getSelf() {
+        return selfIndex >= 0 && selfIndex < players.size() ? players.get(selfIndex) : null;
+    }
+
+    public int getCurrentPlayerIndex() {
+        return currentPlayerIndex;
+    }
+
+    public Player getCurrentPlayer() {
+        return currentPlayerIndex >= 0 && currentPlayerIndex < players.size() ? players.get(currentPlayerIndex) : null;
+    }
+
+    public CasinoConfiguration getCasinoConfig() {
+        return casinoConfig;
+    }
+}
@@ -0,0 +1,74 @@
+package game.network;
+
+/**
+ * Round trip time and liveness of one client, fed by PING/PONG.
+ *
+ * The smoothed RTT and jitter use the same weights as TCP's retransmission timer
+ * (1/8 for the average, 1/4 for the mean deviation), so one slow pong does not
+ * make a player look laggy but a lasting change shows up within a few pings.
+ *
+ * Tune with -Dvop.ping.interval (ms between pings, default 2000) and
+ * -Dvop.ping.maxMissed (unanswered pings before the client is dropped, default 5).
+ */
+public class LatencyTracker {
+
+    public static final long PING_INTERVAL_MS = Long.getLong("vop.ping.interval", 2000);
+    public static final int MAX_MISSED_PINGS = Integer.getInteger("vop.ping.maxMissed", 5);
+
+    /** How long a silent connection is trusted before it is considered dead. */
+    public static final long DEAD_AFTER_MS = PING_INTERVAL_MS * (MAX_MISSED_PINGS + 1);
+
+    private long pingsSent;
+    private long pongsReceived;
+    private int missed; // Pings sent since the last pong
+    private double smoothedRtt = -1; // ms, -1 = no sample yet
+    private double jitter;
+    private long lastRtt = -1;
+
+    /** Records an outgoing ping. @return the timestamp to put in its payload. */
+    public synchronized long onPingSent() {
+        pingsSent++;
+        missed++;
+        return System.nanoTime();
+    }
+
+    /** Records a pong echoing the timestamp of an earlier ping. */
+    public synchronized void onPong(long sentNanos) {
+        long rtt = (System.nanoTime() - sentNanos) / 1_000_000;
+        if (rtt < 0) return; // Not one of our timestamps
+        pongsReceived++;
+        missed = 0;
+        lastRtt = rtt;
+        if (smoothedRtt < 0) {
+            smoothedRtt = rtt;
+            jitter = rtt / 2.0;
+        } else {
+            jitter += (Math.abs(smoothedRtt - rtt) - jitter) / 4;
+            smoothedRtt += (rtt - smoothedRtt) / 8;
+        }
+    }
+
+    /** Smoothed round trip time in ms, or -1 before the first pong. */
+    public synchronized int getRttMillis() {
+        return (int) Math.round(smoothedRtt);
+    }
+
+    public synchronized int getJitterMillis() {
+        return smoothedRtt < 0 ? -1 : (int) Math.round(jitter);
+    }
+
+    public synchronized int getMissedPings() {
+        return missed;
+    }
+
+    /** True once more pings went unanswered than the configured threshold. */
+    public synchronized boolean isUnresponsive() {
+        return missed > MAX_MISSED_PINGS;
+    }
+
+    public synchronized String getStats() {
+        if (smoothedRtt < 0) return "rtt n/a, " + missed + " unanswered";
+        return String.format("rtt %d ms (last %d, jitter %d), %d/%d pongs, %d unanswered",
+                Math.round(smoothedRtt), lastRtt, Math.round(jitter), pongsReceived, pingsSent, missed);
+    }
+}
@@ -0,0 +1,254 @@
+package game.network;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Connects clients to a server running in the same JVM, without sockets.
+ *
+ * Messages for a client travel through a bounded lock-free {@link RingQueue}
+ * that its reader drains; the client's own messages are handed straight to the
+ * server's listener, whose game engine mailbox already queues them. The server
+ * side is an ordinary {@link ClientHandler}, so sequencing, replay, batching,
+ * pings and the outbound overflow policy all behave as they do over TCP.
+ *
+ * Payloads made only of strings, numbers, enums and arrays of those are passed
+ * by reference. Anything carrying game objects (players, fields, snapshots) is
+ * decoded into a copy, so the two sides never share mutable state. The copy is made
+ * from the bytes the engine thread encoded when it queued the message (see
+ * ClientHandler#enqueue), so it costs one decode and never reads the live objects.
+ * Almost every server action sends a player's stats, so nearly every delivery is a
+ * copy; the stats line shows how many and the time spent decoding them.
+ *
+ * Size the per-client ring with -Dvop.loopback.capacity (default 256 messages).
+ */
+public class LoopbackTransport implements Transport {
+
+    public static final int DEFAULT_CAPACITY = Integer.getInteger("vop.loopback.capacity", 256);
+
+    // Busy-polls before a reader parks, a reply usually arrives within microseconds
+    private static final int SPINS_BEFORE_PARK = 100;
+
+    private static final AtomicInteger NEXT_ID = new AtomicInteger(1);
+
+    /** A message on its way to the client, with the sequence number a socket frame would carry. */
+    private static final class Delivery {
+        final NetworkMessage msg;
+        final long sequence;
+
+        Delivery(NetworkMessage msg, long sequence) {
+            this.msg = msg;
+            this.sequence = sequence;
+        }
+    }
+
+    private final ClientListener server;
+    private final int capacity;
+
+    /** @param server receives the clients, usually a RoomManager. */
+    public LoopbackTransport(ClientListener server) {
+        this(server, DEFAULT_CAPACITY);
+    }
+
+    public LoopbackTransport(ClientListener server, int capacity) {
+        this.server = server;
+        this.capacity = capacity;
+    }
+
+    @Override
+    public Connection connect() {
+        return new LoopbackConnection(new LoopbackClientHandler(NEXT_ID.getAndIncrement()));
+    }
+
+    @Override
+    public String describe() {
+        return "loopback";
+    }
+
+    /** True if both sides may hold the payload at once, because nobody changes it after sending. */
+    static boolean isShareable(Object payload) {
+        if (payload == null || payload instanceof String || payload instanceof Integer || payload instanceof Long
+                || payload instanceof Double || payload instanceof Boolean || payload instanceof Enum
+                || payload instanceof boolean[]) {
+            return true;
+        }
+        // Media chunks: MediaSender reads every chunk into a fresh array and never touches it again
+        if (payload instanceof byte[]) return true;
+        if (payload instanceof ChatEvent) return true; // Immutable
+        if (payload instanceof NetworkMessage) return isShareable(((NetworkMessage) payload).getPayload());
+        if (payload instanceof Object[]) {
+            for (Object part : (Object[]) payload) {
+                if (!isShareable(part)) return false;
+            }
+            return true;
+        }
+        return false;
+    }
+
+    /** The message itself if it is safe to share, otherwise a copy decoded from its (cached) encoding. */
+    private static NetworkMessage handOver(NetworkMessage msg, MessageCodec codec) throws IOException {
+        if (isShareable(msg.getPayload())) return msg;
+        return MessageCodecs.decode(msg.encode(codec));
+    }
+
+    /** The server's end of one loopback connection. */
+    private final class LoopbackClientHandler extends ClientHandler {
+        private final int id;
+        private final RingQueue<Delivery> toClient = new RingQueue<>(capacity);
+        private final AtomicBoolean pumping = new AtomicBoolean();
+        private final AtomicBoolean closed = new AtomicBoolean();
+        private volatile Thread reader;
+        private volatile long delivered; // Only written while pumping
+        private volatile long copied;
+        private volatile long copyNanos;
+
+        LoopbackClientHandler(int id) {
+            this.id = id;
+        }
+
+        @Override
+        protected void onMessageQueued() {
+            pump();
+        }
+
+        /**
+         * Moves queued messages into the ring while it has room. Only one thread pumps
+         * at a time, which keeps sequence numbers in ring order. Whatever does not fit
+         * waits in the outbound queue (where its overflow policy applies) until the
+         * client reads.
+         */
+        void pump() {
+            do {
+                if (!pumping.compareAndSet(false, true)) return;
+                try {
+                    NetworkMessage msg;
+                    while (toClient.size() < toClient.capacity() && (msg = outbound.poll()) != null) {
+                        long sequence = nextSequence(msg);
+                        long started = System.nanoTime();
+                        NetworkMessage handed = handOver(msg, getCodec());
+                        if (handed != msg) {
+                            copied++;
+                            copyNanos += System.nanoTime() - started;
+                        }
+                        delivered++;
+                        // The message is numbered already, so it must go in. size() frees a slot as soon
+                        // as the reader claims it, a moment before the slot can be offered again.
+                        Delivery delivery = new Delivery(handed, sequence);
+                        while (!toClient.offer(delivery)) Thread.onSpinWait();
+                    }
+                } catch (IOException e) {
+                    System.out.println("Error sending to " + getDisplayName() + ": " + e.getMessage());
+                    disconnect();
+                    return;
+                } finally {
+                    pumping.set(false);
+                }
+                LockSupport.unpark(reader);
+            } while (outbound.size() > 0 && toClient.size() < toClient.capacity() && !closed.get());
+        }
+
+        @Override
+        public void disconnect() {
+            if (!closed.compareAndSet(false, true)) return;
+            outbound.close();
+            LockSupport.unpark(reader);
+            System.out.println("Client disconnected: " + getRemoteAddress() + " (" + getStats() + ", "
+                    + outbound.getStats() + ", " + outbound.getLaneStats() + ", " + getLatency().getStats() + ")");
+            server.removeClient(this);
+        }
+
+        @Override
+        public String getRemoteAddress() {
+            return "loopback-" + id;
+        }
+
+        String getStats() {
+            return String.format("delivered %d msgs, %d copied in %.2f ms", delivered, copied, copyNanos / 1e6);
+        }
+    }
+
+    /** The client's end: reads from the handler's ring, writes straight into the server. */
+    private final class LoopbackConnection implements Connection {
+        private final LoopbackClientHandler handler;
+        private boolean helloSent;
+        private MessageCodec codec = MessageCodecs.getDefault();
+        private long messagesSent;
+        private long messagesReceived;
+        private volatile long lastReceivedSequence;
+
+        LoopbackConnection(LoopbackClientHandler handler) {
+            this.handler = handler;
+        }
+
+        @Override
+        public synchronized void send(NetworkMessage msg) throws IOException {
+            if (handler.closed.get()) throw new EOFException("Loopback connection closed");
+            NetworkMessage handed = handOver(msg, codec);
+            messagesSent++;
+            if (!helloSent) {
+                // Same order as the socket handlers: the first message introduces the client
+                helloSent = true;
+                server.addClient(handler, handler.readHello(handed));
+                return;
+            }
+            if (handler.handleControlMessage(handed)) return;
+            server.handleNetworkMessage(handed, handler);
+        }
+
+        @Override
+        public NetworkMessage receive() throws IOException {
+            int spins = 0;
+            while (true) {
+                Delivery delivery = handler.toClient.poll();
+                if (delivery != null) {
+                    handler.pump(); // There is room again
+                    if (delivery.sequence > 0) lastReceivedSequence = delivery.sequence;
+                    synchronized (this) {
+                        messagesReceived++;
+                    }
+                    return delivery.msg;
+                }
+                if (handler.closed.get()) throw new EOFException("Loopback connection closed");
+                if (Thread.currentThread().isInterrupted()) throw new InterruptedIOException();
+                if (spins++ < SPINS_BEFORE_PARK) {
+                    Thread.onSpinWait();
+                    continue;
+                }
+                handler.reader = Thread.currentThread();
+                // Check again after registering, a message may have arrived in between
+                if (handler.toClient.isEmpty() && !handler.closed.get()) LockSupport.park(this);
+                handler.reader = null;
+            }
+        }
+
+        @Override
+        public synchronized void setFeatures(int features) {
+            this.codec = Protocol.codecFor(features);
+        }
+
+        @Override
+        public long getLastReceivedSequence() {
+            return lastReceivedSequence;
+        }
+
+        @Override
+        public boolean isOpen() {
+            return !handler.closed.get();
+        }
+
+        @Override
+        public void close() {
+            handler.disconnect();
+        }
+
+        @Override
+        public synchronized String getStats() {
+            return String.format("loopback, sent %d msgs, received %d msgs (server %s)",
+                    messagesSent, messagesReceived, handler.getStats());
+        }
+    }
+}
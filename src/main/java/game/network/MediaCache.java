@@ -0,0 +1,186 @@
+package game.network;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * Recently served GIFs kept in memory in front of the cache directory.
+ *
+ * A GIF posted to the table is fetched by every player within a second or two; with
+ * this tier the first request reads the file and the others are served from memory,
+ * even the ones that arrive while it is still being read. Contents live in direct
+ * buffers outside the heap, least recently used go first once the budget is spent,
+ * and files bigger than a quarter of the budget are streamed from disk as before.
+ * Cached files are never re-checked on disk: their names are content hashes, so they
+ * only change by being deleted, and whoever deletes them calls {@link #clear()}.
+ *
+ * Budget: -Dvop.media.hotCacheMb (default 32), changeable at runtime in Settings.
+ */
+public final class MediaCache {
+
+    private static final MediaCache SHARED = new MediaCache(Long.getLong("vop.media.hotCacheMb", 32) * 1024 * 1024);
+
+    private final LinkedHashMap<String, ByteBuffer> entries = new LinkedHashMap<>(64, 0.75f, true);
+    // Files being read right now, so concurrent requests for one file read it once
+    private final Map<String, CompletableFuture<ByteBuffer>> loading = new HashMap<>();
+    private long budget;
+    private long held;
+
+    // Metrics
+    private long hits;
+    private long misses;
+    private long bypassed;
+    private long evictions;
+
+    public MediaCache(long budgetBytes) {
+        this.budget = Math.max(0, budgetBytes);
+    }
+
+    /** The tier shared by the media server and Settings. */
+    public static MediaCache shared() {
+        return SHARED;
+    }
+
+    /**
+     * The file's contents as a read-only buffer of its own (position 0, limit = size),
+     * or null if the file is too big for this tier and should be streamed from disk.
+     *
+     * @throws java.nio.file.NoSuchFileException if the file does not exist
+     */
+    public ByteBuffer get(File file) throws IOException {
+        String key = file.getPath();
+        CompletableFuture<ByteBuffer> pending;
+        boolean loader = false;
+        synchronized (this) {
+            ByteBuffer cached = entries.get(key);
+            if (cached != null) {
+                hits++;
+                return cached.duplicate();
+            }
+            pending = loading.get(key);
+            if (pending == null) {
+                misses++;
+                pending = new CompletableFuture<>();
+                loading.put(key, pending);
+                loader = true;
+            } else {
+                hits++;
+            }
+        }
+
+        if (loader) {
+            try {
+                ByteBuffer contents = read(file);
+                synchronized (this) {
+                    loading.remove(key);
+                    if (contents != null) put(key, contents);
+                    else bypassed++;
+                }
+                pending.complete(contents);
+            } catch (IOException | RuntimeException e) {
+                synchronized (this) {
+                    loading.remove(key);
+                }
+                pending.completeExceptionally(e);
+                throw e;
+            }
+        }
+
+        try {
+            ByteBuffer contents = pending.get();
+            return contents != null ? contents.duplicate() : null;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while reading " + file.getName());
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) throw (IOException) e.getCause();
+            throw new IOException(e.getCause());
+        }
+    }
+
+    /** Changes the budget, evicting right away if it shrank. 0 turns the tier off. */
+    public synchronized void setBudget(long bytes) {
+        budget = Math.max(0, bytes);
+        // Files that would no longer be admitted go first
+        long maxEntry = maxEntry();
+        Iterator<ByteBuffer> it = entries.values().iterator();
+        while (it.hasNext()) {
+            ByteBuffer contents = it.next();
+            if (contents.capacity() > maxEntry) {
+                held -= contents.capacity();
+                it.remove();
+                evictions++;
+            }
+        }
+        evictToBudget();
+    }
+
+    public synchronized long getBudget() {
+        return budget;
+    }
+
+    /** Forgets one file, e.g. because it was evicted from the disk cache. */
+    public synchronized void invalidate(File file) {
+        ByteBuffer removed = entries.remove(file.getPath());
+        if (removed != null) held -= removed.capacity();
+    }
+
+    /** Forgets everything, e.g. after the files on disk were deleted. */
+    public synchronized void clear() {
+        entries.clear();
+        held = 0;
+    }
+
+    public synchronized String getStats() {
+        long lookups = hits + misses;
+        return String.format("%d files, %d of %d KB, %d hits, %d misses (%.0f%% hit), %d too big, %d evicted",
+                entries.size(), held / 1024, budget / 1024, hits, misses,
+                lookups == 0 ? 0.0 : hits * 100.0 / lookups, bypassed, evictions);
+    }
+
+    private ByteBuffer read(File file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size > maxEntry()) return null;
+            ByteBuffer buffer = ByteBuffer.allocateDirect((int) size);
+            while (buffer.hasRemaining()) {
+                if (channel.read(buffer) < 0) throw new IOException(file.getName() + " ended early");
+            }
+            buffer.flip();
+            return buffer.asReadOnlyBuffer();
+        }
+    }
+
+    // One file may use a quarter of the budget, so a single huge GIF cannot flush the rest
+    private synchronized long maxEntry() {
+        return Math.min(budget / 4, Integer.MAX_VALUE);
+    }
+
+    private void put(String key, ByteBuffer contents) {
+        // The budget may have shrunk while the file was read
+        if (contents.capacity() > maxEntry()) return;
+        ByteBuffer previous = entries.put(key, contents);
+        if (previous != null) held -= previous.capacity();
+        held += contents.capacity();
+        evictToBudget();
+    }
+
+    // Evicted buffers are freed by the garbage collector once no response still uses them
+    private void evictToBudget() {
+        Iterator<ByteBuffer> it = entries.values().iterator();
+        while (held > budget && it.hasNext()) {
+            held -= it.next().capacity();
+            it.remove();
+            evictions++;
+        }
+    }
+}
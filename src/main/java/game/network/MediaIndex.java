@@ -0,0 +1,426 @@
+package game.network;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Index of the converted GIFs in VaultOPolyCache/gifs, kept in memory and in an
+ * index file next to them.
+ *
+ * Every GIF is recorded with its key (the hash its file is named after), size,
+ * source URL, and when it was created and last used. Checking whether a GIF is
+ * cached is a map lookup, not a disk access. The directory is scanned once, when
+ * the index is loaded, to pick up files the index does not know and drop entries
+ * whose file is gone.
+ *
+ * The cache is kept under -Dvop.media.cacheMb (default 512). GIFs unused for
+ * -Dvop.media.cacheDays (default 30) are removed as well. Least recently used GIFs
+ * go first. A background thread does the evicting and writes the index file when
+ * something changed.
+ */
+public final class MediaIndex {
+
+    public static final String INDEX_FILE = "index.tsv";
+    private static final String HEADER = "# key\tsize\tcreated\tlastAccess\tsource";
+    private static final String PART_SUFFIX = ".part";
+    private static final long SAVE_INTERVAL_MS = 60_000;
+    private static final long AGE_CHECK_INTERVAL_MS = 10 * 60_000;
+
+    private static MediaIndex shared;
+
+    /** Produces a GIF, e.g. by downloading a video and running FFmpeg. */
+    public interface Conversion {
+        /** Writes the GIF to partFile. @return false if it failed (and the reason was reported). */
+        boolean writeTo(File partFile) throws Exception;
+    }
+
+    /** One converted GIF. */
+    private static final class Entry {
+        final String key;
+        final long size;
+        final String source;
+        final long created;
+        long lastAccess;
+
+        Entry(String key, long size, String source, long created, long lastAccess) {
+            this.key = key;
+            this.size = size;
+            this.source = source;
+            this.created = created;
+            this.lastAccess = lastAccess;
+        }
+    }
+
+    private final File directory;
+    private final long maxAgeMs;
+    // Least recently used first
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(256, 0.75f, true);
+    // Conversions running now, so a second request for the same GIF waits for the first
+    private final Map<String, CompletableFuture<File>> converting = new HashMap<>();
+    private final ScheduledExecutorService janitor;
+    private long budget;
+    private long totalBytes;
+    private boolean dirty;
+    private boolean evictionScheduled;
+
+    // Metrics
+    private long hits;
+    private long misses;
+    private long evictions;
+
+    public MediaIndex(File directory, long budgetBytes, long maxAgeMs) {
+        this.directory = directory;
+        this.budget = Math.max(0, budgetBytes);
+        this.maxAgeMs = maxAgeMs;
+        this.janitor = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "Media-Janitor");
+            t.setDaemon(true);
+            t.setPriority(Thread.MIN_PRIORITY);
+            return t;
+        });
+    }
+
+    /** The GIF cache in the user's home directory, loaded on first use. */
+    public static synchronized MediaIndex shared() {
+        if (shared == null) {
+            File dir = new File(System.getProperty("user.home") + File.separator + "VaultOPolyCache" + File.separator + "gifs");
+            shared = new MediaIndex(dir, Long.getLong("vop.media.cacheMb", 512) * 1024 * 1024,
+                    TimeUnit.DAYS.toMillis(Long.getLong("vop.media.cacheDays", 30)));
+            shared.load();
+            shared.start();
+        }
+        return shared;
+    }
+
+    public File getDirectory() {
+        return directory;
+    }
+
+    /** Where the GIF for a key lives (whether or not it exists yet). */
+    public File fileFor(String key) {
+        return new File(directory, key + ".gif");
+    }
+
+    /** True if the GIF is cached. Does not count as a use. */
+    public synchronized boolean contains(String key) {
+        // Plain get would move the entry to the end of the LRU order
+        return entries.containsKey(key);
+    }
+
+    /**
+     * Looks a GIF up and counts it as used, so it is evicted last.
+     *
+     * @return its file, or null if it is not cached
+     */
+    public synchronized File lookup(String key) {
+        Entry entry = entries.get(key);
+        if (entry == null) {
+            misses++;
+            return null;
+        }
+        hits++;
+        entry.lastAccess = System.currentTimeMillis();
+        dirty = true;
+        return fileFor(key);
+    }
+
+    /** True while a conversion for this key is running. */
+    public synchronized boolean isConverting(String key) {
+        return converting.containsKey(key);
+    }
+
+    /**
+     * Returns the GIF for a key, converting it first if it is not cached. If the same
+     * GIF is already being converted, waits for that conversion and shares its result,
+     * so each GIF is downloaded and converted once however many ask for it. Cancelling
+     * is per caller: if the one running the conversion is cancelled (it throws
+     * InterruptedException), a caller still waiting takes over and converts it itself.
+     *
+     * @return the cached file, or null if the conversion failed
+     */
+    public File convert(String key, String source, Conversion conversion) throws Exception {
+        while (true) {
+            CompletableFuture<File> job;
+            boolean leader = false;
+            synchronized (this) {
+                // Finished between the caller's lookup and now
+                if (entries.containsKey(key)) return lookup(key);
+                job = converting.get(key);
+                if (job == null) {
+                    job = new CompletableFuture<>();
+                    converting.put(key, job);
+                    leader = true;
+                }
+            }
+
+            if (leader) {
+                File result = null;
+                Exception failure = null;
+                try {
+                    File part = newPartFile(key);
+                    if (conversion.writeTo(part)) {
+                        result = add(key, part, source);
+                    } else {
+                        part.delete();
+                    }
+                } catch (Exception e) {
+                    failure = e;
+                    partFileFor(key).delete();
+                } finally {
+                    // Whatever happened, nobody may be left waiting
+                    synchronized (this) {
+                        converting.remove(key);
+                    }
+                    if (failure != null) job.completeExceptionally(failure);
+                    else job.complete(result);
+                }
+                if (failure != null) throw failure;
+                return result;
+            }
+
+            try {
+                return job.get();
+            } catch (ExecutionException e) {
+                // Someone else's cancel: this caller still wants the GIF, so try again (as the leader, probably)
+                if (e.getCause() instanceof InterruptedException && !Thread.currentThread().isInterrupted()) continue;
+                throw e.getCause() instanceof Exception ? (Exception) e.getCause() : e;
+            }
+        }
+    }
+
+    /**
+     * A file to write a new GIF to. It only becomes visible through {@link #add} once
+     * it is complete, so a half-written GIF is never served or mistaken for a hit.
+     */
+    public File newPartFile(String key) throws IOException {
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Failed to create cache directory: " + directory.getAbsolutePath());
+        }
+        return partFileFor(key);
+    }
+
+    private File partFileFor(String key) {
+        return new File(directory, key + ".gif" + PART_SUFFIX);
+    }
+
+    /** Moves a finished part file into place and records it. */
+    public File add(String key, File partFile, String source) throws IOException {
+        File target = fileFor(key);
+        Files.move(partFile.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        long now = System.currentTimeMillis();
+        synchronized (this) {
+            Entry previous = entries.put(key, new Entry(key, target.length(), clean(source), now, now));
+            if (previous != null) totalBytes -= previous.size;
+            totalBytes += target.length();
+            dirty = true;
+            if (totalBytes > budget) scheduleEviction();
+        }
+        return target;
+    }
+
+    /** Changes the byte budget; anything over it is evicted in the background. */
+    public synchronized void setBudget(long bytes) {
+        budget = Math.max(0, bytes);
+        if (totalBytes > budget) scheduleEviction();
+    }
+
+    public synchronized long getBudget() {
+        return budget;
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    public synchronized long getTotalBytes() {
+        return totalBytes;
+    }
+
+    /**
+     * Deletes every cached GIF and empties the index.
+     *
+     * @return {files deleted, bytes freed}
+     */
+    public long[] clear() {
+        List<Entry> removed;
+        synchronized (this) {
+            removed = new ArrayList<>(entries.values());
+            entries.clear();
+            totalBytes = 0;
+            dirty = true;
+        }
+        long[] result = delete(removed);
+        MediaCache.shared().clear();
+        save();
+        return result;
+    }
+
+    public synchronized String getStats() {
+        return String.format("%d GIFs, %d of %d MB, %d hits, %d misses, %d evicted, %d converting",
+                entries.size(), totalBytes / (1024 * 1024), budget / (1024 * 1024), hits, misses, evictions, converting.size());
+    }
+
+    /** Writes the index file now if anything changed since the last write. */
+    public void save() {
+        List<String> lines;
+        synchronized (this) {
+            if (!dirty) return;
+            dirty = false;
+            lines = new ArrayList<>(entries.size() + 1);
+            lines.add(HEADER);
+            for (Entry e : entries.values()) {
+                lines.add(e.key + "\t" + e.size + "\t" + e.created + "\t" + e.lastAccess + "\t" + e.source);
+            }
+        }
+        if (!directory.isDirectory() && !directory.mkdirs()) return;
+        Path target = new File(directory, INDEX_FILE).toPath();
+        Path temp = new File(directory, INDEX_FILE + PART_SUFFIX).toPath();
+        try {
+            try (BufferedWriter out = Files.newBufferedWriter(temp, StandardCharsets.UTF_8)) {
+                for (String line : lines) {
+                    out.write(line);
+                    out.newLine();
+                }
+            }
+            Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            synchronized (this) {
+                dirty = true;
+            }
+            System.err.println("Could not write GIF cache index: " + e.getMessage());
+        }
+    }
+
+    // Reads the index file and reconciles it with what is actually on disk
+    private void load() {
+        LinkedHashMap<String, Entry> loaded = new LinkedHashMap<>();
+        File indexFile = new File(directory, INDEX_FILE);
+        try (BufferedReader in = Files.newBufferedReader(indexFile.toPath(), StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = in.readLine()) != null) {
+                if (line.isEmpty() || line.startsWith("#")) continue;
+                String[] f = line.split("\t", 5);
+                if (f.length < 5) continue;
+                try {
+                    loaded.put(f[0], new Entry(f[0], Long.parseLong(f[1]), f[4], Long.parseLong(f[2]), Long.parseLong(f[3])));
+                } catch (NumberFormatException e) {
+                    // Skip the broken line, the scan below re-adds its file
+                }
+            }
+        } catch (NoSuchFileException e) {
+            // First run, or a cache from before the index existed
+        } catch (IOException e) {
+            System.err.println("Could not read GIF cache index, rebuilding it: " + e.getMessage());
+        }
+
+        List<Entry> found = new ArrayList<>();
+        boolean changed = false;
+        File[] files = directory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                String name = file.getName();
+                if (name.endsWith(PART_SUFFIX)) {
+                    // Left over from a conversion that never finished
+                    if (file.delete()) changed = true;
+                    continue;
+                }
+                if (!file.isFile() || !name.endsWith(".gif")) continue;
+                String key = name.substring(0, name.length() - ".gif".length());
+                Entry entry = loaded.remove(key);
+                if (entry == null || entry.size != file.length()) {
+                    long modified = file.lastModified();
+                    entry = new Entry(key, file.length(), entry != null ? entry.source : "", modified, modified);
+                    changed = true;
+                }
+                found.add(entry);
+            }
+        }
+        // Whatever is left in loaded has no file any more
+        if (!loaded.isEmpty()) changed = true;
+
+        found.sort(Comparator.comparingLong(e -> e.lastAccess));
+        synchronized (this) {
+            entries.clear();
+            totalBytes = 0;
+            for (Entry entry : found) {
+                entries.put(entry.key, entry);
+                totalBytes += entry.size;
+            }
+            dirty = changed;
+        }
+    }
+
+    private void start() {
+        janitor.scheduleWithFixedDelay(this::save, SAVE_INTERVAL_MS, SAVE_INTERVAL_MS, TimeUnit.MILLISECONDS);
+        janitor.scheduleWithFixedDelay(this::evict, 0, AGE_CHECK_INTERVAL_MS, TimeUnit.MILLISECONDS);
+        // Last access times are only written periodically, so write them once more on the way out
+        Runtime.getRuntime().addShutdownHook(new Thread(this::save, "Media-Index-Save"));
+    }
+
+    private void scheduleEviction() {
+        if (evictionScheduled) return;
+        evictionScheduled = true;
+        janitor.execute(this::evict);
+    }
+
+    // Removes expired GIFs, then the least recently used until the cache fits the budget
+    private void evict() {
+        List<Entry> victims = new ArrayList<>();
+        synchronized (this) {
+            evictionScheduled = false;
+            long expired = System.currentTimeMillis() - maxAgeMs;
+            Iterator<Entry> it = entries.values().iterator();
+            while (it.hasNext()) {
+                Entry entry = it.next();
+                if (totalBytes <= budget && entry.lastAccess >= expired) break;
+                it.remove();
+                totalBytes -= entry.size;
+                victims.add(entry);
+            }
+            if (victims.isEmpty()) return;
+            evictions += victims.size();
+            dirty = true;
+        }
+        delete(victims);
+        save();
+    }
+
+    private long[] delete(List<Entry> removed) {
+        long count = 0;
+        long bytes = 0;
+        MediaCache hotCache = MediaCache.shared();
+        for (Entry entry : removed) {
+            File file = fileFor(entry.key);
+            hotCache.invalidate(file);
+            if (file.delete() || !file.exists()) {
+                count++;
+                bytes += entry.size;
+            }
+        }
+        return new long[]{count, bytes};
+    }
+
+    // The index is tab separated, one GIF per line
+    private static String clean(String source) {
+        return source == null ? "" : source.replace('\t', ' ').replace('\n', ' ').replace('\r', ' ');
+    }
+}
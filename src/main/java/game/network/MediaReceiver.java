@@ -0,0 +1,184 @@
+package game.network;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Reassembles images streamed over one game connection (see {@link MediaSender}).
+ *
+ * Chunks are written straight to a temp file while a SHA-256 runs alongside, so
+ * only one chunk is ever held in memory. When MEDIA_END arrives the hash must
+ * match and the file must start like a GIF or PNG, otherwise it is deleted.
+ * Transfers larger than -Dvop.media.maxBytes (default 16 MB) are refused.
+ */
+public class MediaReceiver {
+
+    public static final long MAX_BYTES = Long.getLong("vop.media.maxBytes", 16L * 1024 * 1024);
+
+    // Transfers one connection may have in flight
+    private static final int MAX_ACTIVE = 4;
+
+    /** A complete, verified image. */
+    public static final class Received {
+        private final long id;
+        private final String sender;
+        private final File file;
+
+        Received(long id, String sender, File file) {
+            this.id = id;
+            this.sender = sender;
+            this.file = file;
+        }
+
+        public long getId() {
+            return id;
+        }
+
+        /** Player name the sending side put in MEDIA_START. */
+        public String getSender() {
+            return sender;
+        }
+
+        public File getFile() {
+            return file;
+        }
+    }
+
+    private static final class Incoming {
+        final String sender;
+        final long size;
+        final File file;
+        final OutputStream out;
+        final MessageDigest digest;
+        long received;
+        int nextIndex;
+
+        Incoming(String sender, long size, File file) throws IOException {
+            this.sender = sender;
+            this.size = size;
+            this.file = file;
+            this.out = new BufferedOutputStream(new FileOutputStream(file));
+            this.digest = MediaSender.sha256();
+        }
+    }
+
+    private final Map<Long, Incoming> active = new HashMap<>();
+
+    public static boolean isMediaMessage(NetworkMessage.MessageType type) {
+        return type == NetworkMessage.MessageType.MEDIA_START
+                || type == NetworkMessage.MessageType.MEDIA_CHUNK
+                || type == NetworkMessage.MessageType.MEDIA_END;
+    }
+
+    /**
+     * Handles MEDIA_START {id, sender, size}, MEDIA_CHUNK {id, index, bytes}
+     * and MEDIA_END {id, sha256}.
+     * @return the finished image after a MEDIA_END that checks out, otherwise null.
+     */
+    public synchronized Received handle(NetworkMessage msg) {
+        Object[] data = (Object[]) msg.getPayload();
+        long id = (Long) data[0];
+        try {
+            switch (msg.getType()) {
+                case MEDIA_START:
+                    start(id, (String) data[1], (Long) data[2]);
+                    return null;
+                case MEDIA_CHUNK:
+                    write(id, (Integer) data[1], (byte[]) data[2]);
+                    return null;
+                case MEDIA_END:
+                    return finish(id, (String) data[1]);
+                default:
+                    return null;
+            }
+        } catch (IOException | RuntimeException e) {
+            System.out.println("Media transfer " + id + " dropped: " + e.getMessage());
+            discard(active.remove(id));
+            return null;
+        }
+    }
+
+    private void start(long id, String sender, long size) throws IOException {
+        if (size < 0 || size > MAX_BYTES) throw new IOException("size " + size + " exceeds " + MAX_BYTES);
+        if (active.size() >= MAX_ACTIVE) throw new IOException("too many transfers at once");
+        File file = File.createTempFile("vop_media_", ".part");
+        file.deleteOnExit();
+        discard(active.put(id, new Incoming(sender, size, file)));
+    }
+
+    private void write(long id, int index, byte[] bytes) throws IOException {
+        Incoming in = active.get(id);
+        if (in == null) return; // Refused or already failed, the rest of it is ignored
+        if (index != in.nextIndex) throw new IOException("chunk " + index + " arrived, expected " + in.nextIndex);
+        if (in.received + bytes.length > in.size) throw new IOException("more data than announced");
+        in.out.write(bytes);
+        in.digest.update(bytes);
+        in.received += bytes.length;
+        in.nextIndex++;
+    }
+
+    private Received finish(long id, String hash) throws IOException {
+        Incoming in = active.remove(id);
+        if (in == null) return null;
+        in.out.close();
+        if (in.received != in.size) throw new IOException("got " + in.received + " of " + in.size + " bytes");
+        if (!MediaSender.toHex(in.digest.digest()).equalsIgnoreCase(hash)) throw new IOException("hash mismatch");
+
+        String extension = imageExtension(in.file);
+        if (extension == null) throw new IOException("not a GIF or PNG image");
+        File image = new File(in.file.getPath().replaceAll("\\.part$", extension));
+        Files.move(in.file.toPath(), image.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        image.deleteOnExit();
+        return new Received(id, in.sender, image);
+    }
+
+    /** Drops every unfinished transfer, e.g. when the connection is gone. */
+    public synchronized void abortAll() {
+        for (Incoming in : new ArrayList<>(active.values())) discard(in);
+        active.clear();
+    }
+
+    private static void discard(Incoming in) {
+        if (in == null) return;
+        try {
+            in.out.close();
+        } catch (IOException e) {
+            // Deleting anyway
+        }
+        in.file.delete();
+    }
+
+    /** True if the file starts with a GIF or PNG signature. */
+    public static boolean isImage(File file) {
+        try {
+            return imageExtension(file) != null;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    // The magic bytes decide the type, so a renamed file cannot pass as an image
+    private static String imageExtension(File file) throws IOException {
+        byte[] head = new byte[8];
+        int read;
+        try (InputStream in = new FileInputStream(file)) {
+            read = in.readNBytes(head, 0, head.length);
+        }
+        if (read < 8) return null;
+        boolean isGif = head[0] == 'G' && head[1] == 'I' && head[2] == 'F'
+                && head[3] == '8' && (head[4] == '7' || head[4] == '9') && head[5] == 'a';
+        boolean isPng = head[0] == (byte) 0x89 && head[1] == 'P' && head[2] == 'N' && head[3] == 'G';
+        return isGif ? ".gif" : isPng ? ".png" : null;
+    }
+}
@@ -0,0 +1,194 @@
+package game.network;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Streams images over the game connection as MEDIA_START, a run of fixed-size
+ * MEDIA_CHUNK frames and MEDIA_END carrying the SHA-256 (see {@link MediaReceiver}).
+ *
+ * Every chunk is its own frame in the bulk lane of the outbound queue, so game
+ * messages overtake it instead of waiting for a whole file. On the host, chunks
+ * only go into a client's bulk lane while fewer than a few are waiting there, so
+ * a slow client holds a handful of chunks, not the image. Files are read chunk by
+ * chunk and never held in memory.
+ *
+ * Chunk size: -Dvop.media.chunk (default 16 KB).
+ */
+public class MediaSender {
+
+    public static final int CHUNK_SIZE = Integer.getInteger("vop.media.chunk", 16 * 1024);
+
+    // Chunks a client's bulk lane may hold at once
+    private static final int WINDOW = 4;
+
+    // How long the sender rests when every client's window is full
+    private static final long IDLE_MS = 5;
+
+    private static final AtomicLong NEXT_ID = new AtomicLong(1);
+    private static final MediaSender SHARED = new MediaSender();
+
+    /** One file on its way to one client. */
+    private static final class Outgoing {
+        final ClientHandler client;
+        final long id;
+        final File file;
+        final String sender;
+        final MessageDigest digest = sha256();
+        FileChannel channel;
+        long offset;
+        int index;
+        boolean finished;
+
+        Outgoing(ClientHandler client, File file, String sender) {
+            this.client = client;
+            this.id = NEXT_ID.getAndIncrement();
+            this.file = file;
+            this.sender = sender;
+        }
+
+        /** The next frame of this transfer: start, a chunk, or the end. */
+        NetworkMessage next() throws IOException {
+            if (channel == null) {
+                channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+                return new NetworkMessage(NetworkMessage.MessageType.MEDIA_START, new Object[]{id, sender, channel.size()});
+            }
+            if (offset < channel.size()) {
+                ByteBuffer buffer = ByteBuffer.allocate((int) Math.min(CHUNK_SIZE, channel.size() - offset));
+                while (buffer.hasRemaining()) {
+                    if (channel.read(buffer, offset + buffer.position()) < 0) throw new IOException("file shrank");
+                }
+                byte[] chunk = buffer.array();
+                digest.update(chunk);
+                offset += chunk.length;
+                return new NetworkMessage(NetworkMessage.MessageType.MEDIA_CHUNK, new Object[]{id, index++, chunk});
+            }
+            close();
+            finished = true;
+            return new NetworkMessage(NetworkMessage.MessageType.MEDIA_END, new Object[]{id, toHex(digest.digest())});
+        }
+
+        void close() {
+            try {
+                if (channel != null) channel.close();
+            } catch (IOException e) {
+                // Nothing left to read anyway
+            }
+        }
+    }
+
+    private final List<Outgoing> active = new ArrayList<>();
+    private Thread thread;
+
+    /** The host's sender, shared by all rooms. */
+    public static MediaSender shared() {
+        return SHARED;
+    }
+
+    /**
+     * Sends a file to a server over a client connection. Blocks the calling thread
+     * until the last chunk is written; other threads can send in between chunks.
+     */
+    public static void upload(Connection connection, File file, String sender) throws IOException {
+        long id = NEXT_ID.getAndIncrement();
+        MessageDigest digest = sha256();
+        connection.send(new NetworkMessage(NetworkMessage.MessageType.MEDIA_START, new Object[]{id, sender, file.length()}));
+        try (InputStream in = new BufferedInputStream(new FileInputStream(file))) {
+            int index = 0;
+            byte[] chunk;
+            while ((chunk = in.readNBytes(CHUNK_SIZE)).length > 0) {
+                digest.update(chunk);
+                connection.send(new NetworkMessage(NetworkMessage.MessageType.MEDIA_CHUNK, new Object[]{id, index++, chunk}));
+            }
+        }
+        connection.send(new NetworkMessage(NetworkMessage.MessageType.MEDIA_END, new Object[]{id, toHex(digest.digest())}));
+    }
+
+    /** Queues a file for each client. Returns right away, chunks follow as their queues drain. */
+    public synchronized void send(File file, String sender, List<ClientHandler> recipients) {
+        for (ClientHandler client : recipients) active.add(new Outgoing(client, file, sender));
+        if (thread == null) {
+            thread = new Thread(this::run, "Media-Sender");
+            thread.setDaemon(true);
+            thread.start();
+        }
+        notifyAll();
+    }
+
+    public synchronized int getActiveTransfers() {
+        return active.size();
+    }
+
+    private void run() {
+        while (true) {
+            List<Outgoing> transfers;
+            synchronized (this) {
+                while (active.isEmpty()) {
+                    try {
+                        wait();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                }
+                transfers = new ArrayList<>(active);
+            }
+
+            boolean progressed = false;
+            List<Outgoing> done = new ArrayList<>();
+            for (Outgoing out : transfers) {
+                try {
+                    while (!out.finished && !out.client.isClosed() && out.client.getOutboundDepth(OutboundQueue.Lane.BULK) < WINDOW) {
+                        out.client.enqueue(out.next());
+                        progressed = true;
+                    }
+                } catch (IOException e) {
+                    System.out.println("Media transfer to " + out.client.getDisplayName() + " failed: " + e.getMessage());
+                    out.finished = true;
+                }
+                if (out.finished || out.client.isClosed()) {
+                    out.close();
+                    done.add(out);
+                }
+            }
+            synchronized (this) {
+                for (Iterator<Outgoing> it = active.iterator(); it.hasNext(); ) {
+                    if (done.contains(it.next())) it.remove();
+                }
+            }
+
+            if (!progressed) {
+                try {
+                    Thread.sleep(IDLE_MS);
+                } catch (InterruptedException e) {
+                    return;
+                }
+            }
+        }
+    }
+
+    static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e); // Every JVM has SHA-256
+        }
+    }
+
+    static String toHex(byte[] bytes) {
+        StringBuilder hex = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes) hex.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+        return hex.toString();
+    }
+}
@@ -0,0 +1,279 @@
+package game.network;
+
+import com.sun.net.httpserver.Headers;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Pattern;
+
+/**
+ * Serves cached GIFs to clients over HTTP at /gifs/&lt;hash&gt;.gif.
+ *
+ * A file's name is the SHA-256 of what it was converted from, so its content never
+ * changes: the name doubles as the ETag, a client that already has it gets 304, and
+ * every response may be cached forever. Range requests are answered with 206, so a
+ * client can resume a large GIF instead of starting over.
+ *
+ * Requests run on a small pool (-Dvop.media.threads, default 8) so one slow download
+ * no longer holds up everyone else's. When -Dvop.media.queue requests (default 64)
+ * are already waiting, the HTTP dispatcher serves the next one itself, which stops it
+ * accepting more until the pool catches up. Recently served files come from the
+ * {@link MediaCache} hot tier instead of the disk, and only GIFs the
+ * {@link MediaIndex} knows are served.
+ */
+public class MediaServer {
+
+    public static final String CONTEXT = "/gifs";
+
+    private static final Pattern FILE_NAME = Pattern.compile("[A-Za-z0-9_-]{1,128}\\.gif");
+    private static final String CACHE_FOREVER = "public, max-age=31536000, immutable";
+
+    private final MediaIndex index;
+    private final int port;
+    private final int threads;
+    private final int queueCapacity;
+    private final MediaCache hotCache;
+    private HttpServer server;
+    private ThreadPoolExecutor executor;
+
+    // Metrics
+    private final AtomicLong requests = new AtomicLong();
+    private final AtomicLong notModified = new AtomicLong();
+    private final AtomicLong partial = new AtomicLong();
+    private final AtomicLong notFound = new AtomicLong();
+    private final AtomicLong bytesSent = new AtomicLong();
+
+    public MediaServer(MediaIndex index, int port) {
+        this(index, port, Integer.getInteger("vop.media.threads", 8), Integer.getInteger("vop.media.queue", 64),
+                MediaCache.shared());
+    }
+
+    public MediaServer(MediaIndex index, int port, int threads, int queueCapacity, MediaCache hotCache) {
+        this.index = index;
+        this.port = port;
+        this.threads = Math.max(1, threads);
+        this.queueCapacity = Math.max(1, queueCapacity);
+        this.hotCache = hotCache;
+    }
+
+    /** Binds the port on all interfaces and starts serving. */
+    public void start() throws IOException {
+        File cacheDir = index.getDirectory();
+        if (!cacheDir.isDirectory() && !cacheDir.mkdirs()) {
+            throw new IOException("Failed to create cache directory: " + cacheDir.getAbsolutePath());
+        }
+        AtomicInteger count = new AtomicInteger();
+        executor = new ThreadPoolExecutor(threads, threads, 30, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(queueCapacity), r -> {
+                    Thread t = new Thread(r, "Media-" + count.incrementAndGet());
+                    t.setDaemon(true);
+                    return t;
+                }, new ThreadPoolExecutor.CallerRunsPolicy());
+        executor.allowCoreThreadTimeOut(true);
+
+        server = HttpServer.create(new InetSocketAddress(port), 0);
+        server.createContext(CONTEXT, this::handle);
+        server.setExecutor(executor);
+        server.start();
+    }
+
+    public void stop() {
+        if (server != null) server.stop(0);
+        if (executor != null) executor.shutdownNow();
+    }
+
+    public int getPort() {
+        return port;
+    }
+
+    /** Request counters, then the hot tier's and the disk cache's. */
+    public String getStats() {
+        return String.format("%d requests, %d not modified, %d partial, %d not found, %d KB sent, %d active, %d waiting",
+                requests.get(), notModified.get(), partial.get(), notFound.get(), bytesSent.get() / 1024,
+                executor != null ? executor.getActiveCount() : 0, executor != null ? executor.getQueue().size() : 0)
+                + "; memory: " + hotCache.getStats() + "; disk: " + index.getStats();
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try {
+            requests.incrementAndGet();
+            serve(exchange);
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private void serve(HttpExchange exchange) throws IOException {
+        String method = exchange.getRequestMethod();
+        boolean head = method.equals("HEAD");
+        if (!head && !method.equals("GET")) {
+            exchange.getResponseHeaders().set("Allow", "GET, HEAD");
+            exchange.sendResponseHeaders(405, -1);
+            return;
+        }
+
+        // Only plain file names, so a request can never leave the cache directory
+        String name = exchange.getRequestURI().getPath().substring(CONTEXT.length());
+        if (name.startsWith("/")) name = name.substring(1);
+        if (!FILE_NAME.matcher(name).matches()) {
+            notFound.incrementAndGet();
+            exchange.sendResponseHeaders(404, -1);
+            return;
+        }
+
+        // Unknown hashes are answered from the index, without touching the disk
+        String key = name.substring(0, name.length() - ".gif".length());
+        File file = index.lookup(key);
+        if (file == null) {
+            notFound.incrementAndGet();
+            exchange.sendResponseHeaders(404, -1);
+            return;
+        }
+        FileChannel channel = null;
+        try {
+            // Popular GIFs come from memory; big ones are streamed from disk
+            ByteBuffer hot = hotCache.get(file);
+            if (hot == null) channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+            long length = hot != null ? hot.remaining() : channel.size();
+            String etag = "\"" + key + "\"";
+
+            Headers headers = exchange.getResponseHeaders();
+            headers.set("ETag", etag);
+            headers.set("Cache-Control", CACHE_FOREVER);
+            headers.set("Accept-Ranges", "bytes");
+
+            if (matchesAny(exchange.getRequestHeaders().getFirst("If-None-Match"), etag)) {
+                notModified.incrementAndGet();
+                exchange.sendResponseHeaders(304, -1);
+                return;
+            }
+
+            headers.set("Content-Type", "image/gif");
+            long start = 0;
+            long end = length - 1;
+            int status = 200;
+            String range = exchange.getRequestHeaders().getFirst("Range");
+            String ifRange = exchange.getRequestHeaders().getFirst("If-Range");
+            // A stale If-Range means the client's partial copy is something else: send it all
+            if (range != null && (ifRange == null || ifRange.trim().equals(etag))) {
+                long[] bounds = parseRange(range, length);
+                if (bounds == null) {
+                    headers.set("Content-Range", "bytes */" + length);
+                    exchange.sendResponseHeaders(416, -1);
+                    return;
+                }
+                if (bounds.length == 2) {
+                    start = bounds[0];
+                    end = bounds[1];
+                    status = 206;
+                    partial.incrementAndGet();
+                    headers.set("Content-Range", "bytes " + start + "-" + end + "/" + length);
+                }
+            }
+
+            long count = end - start + 1;
+            if (head) {
+                headers.set("Content-Length", String.valueOf(count));
+                exchange.sendResponseHeaders(status, -1);
+                return;
+            }
+            // 0 would mean "chunked" to HttpServer
+            exchange.sendResponseHeaders(status, count == 0 ? -1 : count);
+            try (OutputStream body = exchange.getResponseBody()) {
+                WritableByteChannel out = Channels.newChannel(body);
+                if (hot != null) {
+                    write(hot.position((int) start).limit((int) (start + count)), out);
+                } else {
+                    transfer(channel, start, count, out);
+                }
+            }
+        } catch (NoSuchFileException e) {
+            notFound.incrementAndGet();
+            exchange.sendResponseHeaders(404, -1);
+        } finally {
+            if (channel != null) channel.close();
+        }
+    }
+
+    private void write(ByteBuffer contents, WritableByteChannel out) throws IOException {
+        while (contents.hasRemaining()) {
+            bytesSent.addAndGet(out.write(contents));
+        }
+    }
+
+    // Straight from the file channel, without reading the file into the heap first
+    private void transfer(FileChannel channel, long position, long count, WritableByteChannel out) throws IOException {
+        while (count > 0) {
+            long sent = channel.transferTo(position, count, out);
+            if (sent <= 0) throw new IOException("File ended early");
+            position += sent;
+            count -= sent;
+            bytesSent.addAndGet(sent);
+        }
+    }
+
+    /** True if an If-None-Match header names this ETag (or is "*"). */
+    static boolean matchesAny(String ifNoneMatch, String etag) {
+        if (ifNoneMatch == null) return false;
+        for (String candidate : ifNoneMatch.split(",")) {
+            String tag = candidate.trim();
+            if (tag.startsWith("W/")) tag = tag.substring(2);
+            if (tag.equals("*") || tag.equals(etag)) return true;
+        }
+        return false;
+    }
+
+    /**
+     * Parses a single "bytes=" range against the file length.
+     *
+     * @return {start, end} inclusive, an empty array to ignore the header and send
+     *         the whole file (other units, several ranges, malformed), or null if the
+     *         range lies beyond the end of the file
+     */
+    static long[] parseRange(String header, long length) {
+        String value = header.trim();
+        if (!value.startsWith("bytes=") || value.indexOf(',') >= 0) return new long[0];
+        String spec = value.substring("bytes=".length()).trim();
+        int dash = spec.indexOf('-');
+        if (dash < 0) return new long[0];
+        try {
+            String first = spec.substring(0, dash).trim();
+            String last = spec.substring(dash + 1).trim();
+            long start;
+            long end;
+            if (first.isEmpty()) {
+                // "bytes=-500": the last 500 bytes
+                if (last.isEmpty()) return new long[0];
+                long suffix = Long.parseLong(last);
+                if (suffix < 0) return new long[0];
+                if (suffix == 0 || length == 0) return null;
+                start = Math.max(0, length - suffix);
+                end = length - 1;
+            } else {
+                start = Long.parseLong(first);
+                if (start < 0) return new long[0];
+                if (!last.isEmpty() && Long.parseLong(last) < start) return new long[0];
+                if (start >= length) return null;
+                end = last.isEmpty() ? length - 1 : Math.min(Long.parseLong(last), length - 1);
+            }
+            return new long[]{start, end};
+        } catch (NumberFormatException e) {
+            return new long[0];
+        }
+    }
+}
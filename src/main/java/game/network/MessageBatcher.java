@@ -0,0 +1,118 @@
+package game.network;
+
+import players.Player;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Collects everything sent to clients while the server handles one action
+ * (a roll, a purchase, a chat command...) and sends it as one BATCH frame
+ * per client instead of a burst of separately flushed frames.
+ *
+ * Scopes are per thread and may nest; only the outermost {@link #end()} flushes.
+ * Within a batch, a later UPDATE_PLAYER_STATS for the same player or a later
+ * SET_CONTROLS replaces the earlier one.
+ *
+ * The payload of a BATCH message is an Object[] of NetworkMessages in send order.
+ * Clients that did not agree to {@link Protocol#BATCHING} get the same messages
+ * as separate frames.
+ */
+public class MessageBatcher {
+
+    private static class Scope {
+        int depth;
+        final Map<ClientHandler, List<NetworkMessage>> pending = new LinkedHashMap<>();
+    }
+
+    private final ThreadLocal<Scope> scope = new ThreadLocal<>();
+
+    public void begin() {
+        Scope current = scope.get();
+        if (current == null) {
+            current = new Scope();
+            scope.set(current);
+        }
+        current.depth++;
+    }
+
+    public void end() {
+        Scope current = scope.get();
+        if (current == null) return;
+        if (--current.depth <= 0) {
+            scope.remove();
+            flush(current);
+        }
+    }
+
+    /** True if messages sent from this thread are currently being collected. */
+    public boolean isOpen() {
+        return scope.get() != null;
+    }
+
+    /**
+     * Sends what has been collected so far without closing the scope.
+     * Used before the host blocks on a local dialog, so clients are not kept waiting.
+     */
+    public void flush() {
+        Scope current = scope.get();
+        if (current != null) flush(current);
+    }
+
+    /**
+     * Adds a message to the open batch of this thread.
+     * @return false if no batch is open and the caller should send directly.
+     */
+    boolean add(ClientHandler client, NetworkMessage msg) {
+        Scope current = scope.get();
+        if (current == null) return false;
+
+        List<NetworkMessage> messages = current.pending.computeIfAbsent(client, c -> new ArrayList<>());
+        if (isCoalescable(msg)) {
+            Iterator<NetworkMessage> it = messages.iterator();
+            while (it.hasNext()) {
+                if (isSameUpdate(it.next(), msg)) it.remove();
+            }
+        }
+        messages.add(msg);
+        return true;
+    }
+
+    // Runs on the thread that opened the scope. enqueue() encodes right away, so the BATCH
+    // holds the state as of now, not whatever the game has changed by the time it is written.
+    private void flush(Scope current) {
+        // Clients that saw the same messages share one BATCH object, so it is only encoded once per codec
+        Map<List<NetworkMessage>, NetworkMessage> shared = new HashMap<>();
+        for (Map.Entry<ClientHandler, List<NetworkMessage>> entry : current.pending.entrySet()) {
+            List<NetworkMessage> messages = entry.getValue();
+            if (messages.isEmpty()) continue;
+            if (!entry.getKey().supports(Protocol.BATCHING)) {
+                // Still coalesced above, just sent one frame at a time
+                for (NetworkMessage msg : messages) entry.getKey().enqueue(msg);
+                continue;
+            }
+
+            NetworkMessage out = messages.size() == 1
+                    ? messages.get(0)
+                    : shared.computeIfAbsent(messages, m -> new NetworkMessage(NetworkMessage.MessageType.BATCH, m.toArray()));
+            entry.getKey().enqueue(out);
+        }
+        current.pending.clear();
+    }
+
+    private static boolean isCoalescable(NetworkMessage msg) {
+        return msg.getType() == NetworkMessage.MessageType.UPDATE_PLAYER_STATS
+                || msg.getType() == NetworkMessage.MessageType.SET_CONTROLS;
+    }
+
+    private static boolean isSameUpdate(NetworkMessage earlier, NetworkMessage later) {
+        if (earlier.getType() != later.getType()) return false;
+        if (later.getType() == NetworkMessage.MessageType.SET_CONTROLS) return true;
+        return earlier.getPayload() instanceof Player && later.getPayload() instanceof Player
+                && ((Player) earlier.getPayload()).getToken() == ((Player) later.getPayload()).getToken();
+    }
+}
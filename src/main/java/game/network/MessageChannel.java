@@ -0,0 +1,148 @@
+package game.network;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.Socket;
+
+/**
+ * A length-prefixed message stream over a socket.
+ *
+ * Each frame is a 4-byte length, an 8-byte sequence number and the encoded
+ * message (which starts with its codec id). Replaces the old
+ * ObjectOutputStream/ObjectInputStream pair, so no class descriptors or
+ * reset() calls are needed between messages.
+ *
+ * The server numbers every message it sends to a player (see ReplayBuffer);
+ * unsequenced frames, like everything a client sends, carry 0.
+ */
+public class MessageChannel implements Connection {
+
+    /** Upper bound for a single frame, protects against corrupt length headers. */
+    public static final int MAX_FRAME_SIZE = 64 * 1024 * 1024;
+
+    /** Length + sequence number in front of every frame. */
+    public static final int HEADER_SIZE = 12;
+
+    private final Socket socket;
+    private final DataInputStream in;
+    private final DataOutputStream out;
+    private volatile MessageCodec codec;
+    private final FrameCompressor compressor;
+    private volatile boolean compress;
+
+    private final Object writeLock = new Object();
+    private long messagesSent;
+    private long bytesSent;
+    private long messagesReceived;
+    private long bytesReceived;
+    private volatile long lastReceivedSequence;
+
+    public MessageChannel(Socket socket) throws IOException {
+        this(socket, MessageCodecs.getDefault());
+    }
+
+    public MessageChannel(Socket socket, MessageCodec codec) throws IOException {
+        this(socket, codec, new FrameCompressor());
+    }
+
+    /** @param compressor inflates compressed frames on receive and deflates sends once agreed. */
+    public MessageChannel(Socket socket, MessageCodec codec, FrameCompressor compressor) throws IOException {
+        this.socket = socket;
+        this.codec = codec;
+        this.compressor = compressor;
+        this.socket.setTcpNoDelay(true);
+        this.in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+        this.out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+    }
+
+    @Override
+    public void setFeatures(int features) {
+        this.codec = Protocol.codecFor(features);
+        this.compress = Protocol.has(features, Protocol.COMPRESSION);
+    }
+
+    /** Encodes and writes a single message, flushing immediately. */
+    @Override
+    public void send(NetworkMessage msg) throws IOException {
+        send(msg, 0);
+    }
+
+    /** Encodes and writes a message with the given sequence number. */
+    public void send(NetworkMessage msg, long sequence) throws IOException {
+        sendFrame(compress ? msg.encode(codec, compressor) : msg.encode(codec), sequence);
+    }
+
+    /** Writes an already encoded message. */
+    public void sendFrame(byte[] frame) throws IOException {
+        sendFrame(frame, 0);
+    }
+
+    public void sendFrame(byte[] frame, long sequence) throws IOException {
+        synchronized (writeLock) {
+            out.writeInt(frame.length);
+            out.writeLong(sequence);
+            out.write(frame);
+            out.flush();
+            messagesSent++;
+            bytesSent += frame.length + HEADER_SIZE;
+        }
+    }
+
+    /** Blocks until the next message arrives. */
+    @Override
+    public NetworkMessage receive() throws IOException {
+        return MessageCodecs.decode(compressor.decompress(receiveFrame()));
+    }
+
+    public byte[] receiveFrame() throws IOException {
+        int length = in.readInt();
+        if (length <= 0 || length > MAX_FRAME_SIZE) {
+            throw new IOException("Invalid frame length: " + length);
+        }
+        long sequence = in.readLong();
+        byte[] frame = new byte[length];
+        in.readFully(frame);
+        if (sequence > 0) lastReceivedSequence = sequence;
+        messagesReceived++;
+        bytesReceived += length + HEADER_SIZE;
+        return frame;
+    }
+
+    /** Sequence number of the last numbered frame received, 0 if none. */
+    @Override
+    public long getLastReceivedSequence() {
+        return lastReceivedSequence;
+    }
+
+    @Override
+    public boolean isOpen() {
+        return !socket.isClosed() && socket.isConnected();
+    }
+
+    @Override
+    public void close() {
+        try {
+            socket.close();
+        } catch (IOException e) {
+            // Already closed
+        }
+        compressor.close();
+    }
+
+    public MessageCodec getCodec() {
+        return codec;
+    }
+
+    public Socket getSocket() {
+        return socket;
+    }
+
+    @Override
+    public String getStats() {
+        return String.format("%s codec, sent %d msgs / %d bytes, received %d msgs / %d bytes, %s",
+                codec.getName(), messagesSent, bytesSent, messagesReceived, bytesReceived, compressor.getStats());
+    }
+}
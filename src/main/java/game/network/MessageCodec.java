@@ -0,0 +1,28 @@
+package game.network;
+
+import java.io.IOException;
+
+/**
+ * Turns a NetworkMessage into bytes for the wire and back again.
+ * Every encoded message starts with the codec id, so the receiving side
+ * can decode frames from any registered codec (see MessageCodecs).
+ */
+public interface MessageCodec {
+
+    /** Unique id written as the first byte of every encoded message. */
+    byte getId();
+
+    /** Short name used for selection (-Dvop.codec=...) and in logs. */
+    String getName();
+
+    /**
+     * Encodes the message. The returned array already contains the codec id as its first byte.
+     */
+    byte[] encode(NetworkMessage msg) throws IOException;
+
+    /**
+     * Decodes a message previously produced by {@link #encode(NetworkMessage)}.
+     * The array includes the leading codec id byte.
+     */
+    NetworkMessage decode(byte[] data) throws IOException;
+}
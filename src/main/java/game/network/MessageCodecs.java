@@ -0,0 +1,53 @@
+package game.network;
+
+import java.io.IOException;
+
+/**
+ * Registry of the available wire codecs.
+ *
+ * The codec used for outgoing messages is chosen with the system property
+ * {@code vop.codec} ("binary" or "java", default "binary"). Incoming messages
+ * are always decoded by looking at their leading codec id, so a host and a
+ * client configured differently can still talk to each other.
+ */
+public final class MessageCodecs {
+
+    public static final String PROPERTY = "vop.codec";
+
+    private static final MessageCodec JAVA = new JavaSerializationCodec();
+    private static final MessageCodec BINARY = new BinaryMessageCodec();
+
+    private static final MessageCodec DEFAULT = byName(System.getProperty(PROPERTY, BINARY.getName()));
+
+    private MessageCodecs() {}
+
+    /** The codec selected for outgoing messages. */
+    public static MessageCodec getDefault() {
+        return DEFAULT;
+    }
+
+    public static MessageCodec[] all() {
+        return new MessageCodec[]{JAVA, BINARY};
+    }
+
+    public static MessageCodec byName(String name) {
+        for (MessageCodec codec : all()) {
+            if (codec.getName().equalsIgnoreCase(name)) return codec;
+        }
+        System.err.println("Unknown codec '" + name + "', falling back to " + BINARY.getName());
+        return BINARY;
+    }
+
+    public static MessageCodec byId(byte id) throws IOException {
+        for (MessageCodec codec : all()) {
+            if (codec.getId() == id) return codec;
+        }
+        throw new IOException("Unknown codec id: " + id);
+    }
+
+    /** Decodes a frame with whichever codec produced it. */
+    public static NetworkMessage decode(byte[] frame) throws IOException {
+        if (frame.length == 0) throw new IOException("Empty frame");
+        return byId(frame[0]).decode(frame);
+    }
+}
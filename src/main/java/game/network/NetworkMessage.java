@@ -1,6 +1,8 @@
 package game.network;
 
+import java.io.IOException;
 import java.io.Serializable;
+import java.util.Arrays;
 
 public class NetworkMessage implements Serializable {
 
@@ -54,12 +56,51 @@ public class NetworkMessage implements Serializable {
         SYNC_BOARD_STATE,
 
         // Raw Chat Broadcast
-        PLAYER_CHAT
+        PLAYER_CHAT,
+
+        // The binary codec sends ordinals, so new types only ever go below this line
+
+        // Board sync by version: the client confirms or asks for a resync, the server sends deltas
+        ACK_BOARD_VERSION,
+        REQUEST_BOARD_RESYNC,
+        SYNC_BOARD_DELTA,
+
+        // Several messages from one server action, payload is an Object[] of NetworkMessage
+        BATCH,
+
+        // Everything a joining client needs, in one message (see JoinSnapshot)
+        JOIN_SNAPSHOT,
+
+        // Replay epoch and slot after a join, so the client can resume after a reconnect
+        SESSION_INFO,
+
+        // Heartbeat and round trip times
+        PING,
+        PONG,
+        PLAYER_LATENCY,
+
+        // Images streamed in chunks, either direction (see MediaSender)
+        MEDIA_START,
+        MEDIA_CHUNK,
+        MEDIA_END,
+
+        // Host's answer to CLIENT_INFO: {Integer protocol version, Integer features} (see Protocol)
+        SERVER_HELLO,
+
+        // Chat line as data, rendered by the client (see ChatEvent); replaces CHAT_MESSAGE/PLAYER_CHAT
+        CHAT_EVENT
     }
 
     private final MessageType type;
     private final Object payload;
 
+    // Encoded form per codec id, shared by every recipient of a broadcast. Never modified once set,
+    // so a table mixing Java and binary clients encodes each message once per codec, not per client.
+    private transient byte[][] encoded;
+
+    // Compressed form of each encoded form (or that form itself if compressing did not pay off)
+    private transient byte[][] compressed;
+
     public NetworkMessage(MessageType type, Object payload) {
         this.type = type;
         this.payload = payload;
@@ -72,4 +113,45 @@ public class NetworkMessage implements Serializable {
     public Object getPayload() {
         return payload;
     }
-}
\ No newline at end of file
+
+    /** The response to a SHOW_SELECTION_DIALOG, which depends on what the prompt asks. */
+    public static MessageType selectionResponseType(String prompt) {
+        if (prompt.contains("jail")) return MessageType.RESPONSE_JAIL_ACTION;
+        if (prompt.contains("improve")) return MessageType.RESPONSE_IMPROVE_SELECTION;
+        if (prompt.contains("trade with")) return MessageType.RESPONSE_TRADE_SELECTION;
+        return MessageType.LOG_MESSAGE;
+    }
+
+    /**
+     * Returns the encoded message, encoding it only on the first call per codec.
+     * A broadcast therefore pays the encoding cost once, no matter how many clients it goes to.
+     * The returned array is shared and must not be modified.
+     */
+    public synchronized byte[] encode(MessageCodec codec) throws IOException {
+        int slot = codec.getId() & 0xFF;
+        encoded = withSlot(encoded, slot);
+        if (encoded[slot] == null) encoded[slot] = codec.encode(this);
+        return encoded[slot];
+    }
+
+    /**
+     * Encodes and compresses the message. Compression is the same for every
+     * connection, so a broadcast is only deflated for the first recipient.
+     */
+    public synchronized byte[] encode(MessageCodec codec, FrameCompressor compressor) throws IOException {
+        byte[] frame = encode(codec);
+        int slot = codec.getId() & 0xFF;
+        compressed = withSlot(compressed, slot);
+        if (compressed[slot] != null) {
+            compressor.recordShared(frame.length, compressed[slot]);
+        } else {
+            compressed[slot] = compressor.compress(frame);
+        }
+        return compressed[slot];
+    }
+
+    private static byte[][] withSlot(byte[][] cache, int slot) {
+        if (cache == null) return new byte[slot + 1][];
+        return slot < cache.length ? cache : Arrays.copyOf(cache, slot + 1);
+    }
+}
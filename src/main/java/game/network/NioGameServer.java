@@ -0,0 +1,354 @@
+package game.network;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.IntConsumer;
+
+/**
+ * Selector based game server. A handful of I/O threads serve every connection
+ * instead of one blocked thread per client.
+ *
+ * Uses the same length-prefixed frames as {@link MessageChannel}, so clients
+ * cannot tell the two servers apart. Decoded messages go straight to the
+ * {@link ClientListener}, which hands them to the game's own executor, so game
+ * logic never stalls an I/O thread.
+ *
+ * Enable with -Dvop.server=nio, -Dvop.io.threads sets the number of I/O loops.
+ */
+public class NioGameServer {
+
+    private static final int READ_BUFFER_SIZE = 16 * 1024;
+
+    private final int port;
+    private final ClientListener listener;
+    private final IoLoop[] loops;
+    private final AtomicInteger nextLoop = new AtomicInteger();
+    private IntConsumer acceptListener;
+    private ServerSocketChannel serverChannel;
+
+    public NioGameServer(int port, ClientListener listener) {
+        this(port, listener, Integer.getInteger("vop.io.threads", Math.min(2, Runtime.getRuntime().availableProcessors())));
+    }
+
+    public NioGameServer(int port, ClientListener listener, int ioThreads) {
+        this.port = port;
+        this.listener = listener;
+        this.loops = new IoLoop[Math.max(1, ioThreads)];
+    }
+
+    /** Called with the local port of every accepted connection (used for tunnel detection). */
+    public void setAcceptListener(IntConsumer acceptListener) {
+        this.acceptListener = acceptListener;
+    }
+
+    /** Binds the port and starts the I/O threads. Returns once the server is listening. */
+    public void start() throws IOException {
+        for (int i = 0; i < loops.length; i++) {
+            loops[i] = new IoLoop(i);
+        }
+
+        serverChannel = ServerSocketChannel.open();
+        serverChannel.bind(new InetSocketAddress(port));
+        serverChannel.configureBlocking(false);
+        loops[0].registerAcceptor(serverChannel);
+
+        for (IoLoop loop : loops) {
+            Thread t = new Thread(loop, "NIO-IO-" + loop.index);
+            t.setDaemon(true);
+            t.start();
+        }
+        System.out.println("NIO server started on port " + port + " with " + loops.length + " I/O thread(s).");
+    }
+
+    public void stop() {
+        for (IoLoop loop : loops) {
+            if (loop != null) loop.shutdown();
+        }
+        try {
+            if (serverChannel != null) serverChannel.close();
+        } catch (IOException e) {
+            // Already closed
+        }
+    }
+
+    public int getConnectionCount() {
+        int count = 0;
+        for (IoLoop loop : loops) {
+            if (loop != null) count += loop.selector.keys().size();
+        }
+        return count - 1; // Minus the acceptor key
+    }
+
+    private void accept() throws IOException {
+        SocketChannel channel;
+        while ((channel = serverChannel.accept()) != null) {
+            channel.configureBlocking(false);
+            channel.socket().setTcpNoDelay(true);
+
+            if (acceptListener != null) {
+                acceptListener.accept(channel.socket().getLocalPort());
+            }
+
+            IoLoop loop = loops[Math.floorMod(nextLoop.getAndIncrement(), loops.length)];
+            loop.register(new NioClientHandler(channel, loop));
+        }
+    }
+
+    /**
+     * One selector thread. Owns the keys of the connections assigned to it;
+     * other threads only touch it through the pending queue and wakeup().
+     */
+    private class IoLoop implements Runnable {
+        private final int index;
+        private final Selector selector;
+        private final Queue<NioClientHandler> pendingRegistrations = new ConcurrentLinkedQueue<>();
+        private final Queue<NioClientHandler> pendingWrites = new ConcurrentLinkedQueue<>();
+        private volatile boolean running = true;
+
+        IoLoop(int index) throws IOException {
+            this.index = index;
+            this.selector = Selector.open();
+        }
+
+        void registerAcceptor(ServerSocketChannel server) throws IOException {
+            server.register(selector, SelectionKey.OP_ACCEPT);
+        }
+
+        void register(NioClientHandler handler) {
+            pendingRegistrations.add(handler);
+            selector.wakeup();
+        }
+
+        void requestWrite(NioClientHandler handler) {
+            pendingWrites.add(handler);
+            selector.wakeup();
+        }
+
+        void shutdown() {
+            running = false;
+            selector.wakeup();
+        }
+
+        @Override
+        public void run() {
+            while (running) {
+                try {
+                    selector.select();
+                    processPending();
+
+                    Iterator<SelectionKey> it = selector.selectedKeys().iterator();
+                    while (it.hasNext()) {
+                        SelectionKey key = it.next();
+                        it.remove();
+                        if (!key.isValid()) continue;
+
+                        if (key.isAcceptable()) {
+                            accept();
+                            continue;
+                        }
+
+                        NioClientHandler handler = (NioClientHandler) key.attachment();
+                        try {
+                            if (key.isReadable()) handler.onReadable();
+                            if (key.isValid() && key.isWritable()) handler.onWritable();
+                        } catch (IOException e) {
+                            handler.close();
+                        }
+                    }
+                } catch (Exception e) {
+                    if (running) e.printStackTrace();
+                }
+            }
+
+            for (SelectionKey key : selector.keys()) {
+                if (key.attachment() instanceof NioClientHandler) {
+                    ((NioClientHandler) key.attachment()).close();
+                }
+            }
+            try {
+                selector.close();
+            } catch (IOException e) {
+                // Ignore
+            }
+        }
+
+        private void processPending() {
+            NioClientHandler handler;
+            while ((handler = pendingRegistrations.poll()) != null) {
+                try {
+                    handler.key = handler.channel.register(selector, SelectionKey.OP_READ, handler);
+                } catch (IOException e) {
+                    handler.close();
+                }
+            }
+            while ((handler = pendingWrites.poll()) != null) {
+                handler.writeScheduled.set(false);
+                if (handler.key == null || !handler.key.isValid()) continue;
+                try {
+                    handler.onWritable();
+                } catch (IOException e) {
+                    handler.close();
+                }
+            }
+        }
+    }
+
+    /**
+     * A single connection on the NIO server. Reads are assembled into frames
+     * on the I/O thread; messages are encoded by whichever thread queues them
+     * and flushed by the owning loop.
+     */
+    private class NioClientHandler extends ClientHandler {
+        private final SocketChannel channel;
+        private final IoLoop loop;
+        private final String remoteAddress;
+        private ByteBuffer[] pendingWrite;
+        private final AtomicBoolean writeScheduled = new AtomicBoolean();
+        private final AtomicBoolean closed = new AtomicBoolean();
+
+        private ByteBuffer readBuffer = ByteBuffer.allocate(READ_BUFFER_SIZE);
+        private SelectionKey key;
+        private boolean helloReceived;
+
+        private long messagesSent;
+        private long bytesSent;
+        private long messagesReceived;
+        private long bytesReceived;
+
+        NioClientHandler(SocketChannel channel, IoLoop loop) {
+            this.channel = channel;
+            this.loop = loop;
+            String address;
+            try {
+                address = String.valueOf(channel.getRemoteAddress());
+            } catch (IOException e) {
+                address = "unknown";
+            }
+            this.remoteAddress = address;
+        }
+
+        void onReadable() throws IOException {
+            int read = channel.read(readBuffer);
+            if (read < 0) {
+                throw new IOException("Connection closed by peer");
+            }
+            bytesReceived += Math.max(0, read);
+
+            readBuffer.flip();
+            final int header = MessageChannel.HEADER_SIZE;
+            while (readBuffer.remaining() >= header) {
+                int length = readBuffer.getInt(readBuffer.position());
+                if (length <= 0 || length > MessageChannel.MAX_FRAME_SIZE) {
+                    throw new IOException("Invalid frame length: " + length);
+                }
+                if (readBuffer.remaining() < header + length) {
+                    if (readBuffer.capacity() < header + length) {
+                        // Grow so the whole frame fits, then keep reading
+                        ByteBuffer larger = ByteBuffer.allocate(header + length);
+                        larger.put(readBuffer);
+                        readBuffer = larger;
+                        return;
+                    }
+                    break;
+                }
+                readBuffer.getInt();
+                readBuffer.getLong(); // Sequence, clients send unsequenced frames
+                byte[] frame = new byte[length];
+                readBuffer.get(frame);
+                messagesReceived++;
+                onFrame(frame);
+            }
+            readBuffer.compact();
+
+            // Shrink back once a large frame has been consumed
+            if (readBuffer.capacity() > READ_BUFFER_SIZE && readBuffer.position() <= READ_BUFFER_SIZE) {
+                ByteBuffer smaller = ByteBuffer.allocate(READ_BUFFER_SIZE);
+                readBuffer.flip();
+                smaller.put(readBuffer);
+                readBuffer = smaller;
+            }
+        }
+
+        private void onFrame(byte[] frame) throws IOException {
+            NetworkMessage msg = decodeFrame(frame);
+            if (!helloReceived) {
+                helloReceived = true;
+                String username = readHello(msg);
+                listener.addClient(this, username);
+            } else if (!handleControlMessage(msg)) {
+                listener.handleNetworkMessage(msg, this);
+            }
+        }
+
+        void onWritable() throws IOException {
+            while (true) {
+                if (pendingWrite == null) {
+                    NetworkMessage msg = outbound.poll();
+                    if (msg == null) break;
+                    // Broadcast frames are shared between clients, so only wrap them
+                    byte[] frame = encodeFrame(msg);
+                    long sequence = nextSequence(msg);
+                    pendingWrite = new ByteBuffer[]{
+                            ByteBuffer.allocate(MessageChannel.HEADER_SIZE).putInt(0, frame.length).putLong(4, sequence),
+                            ByteBuffer.wrap(frame)
+                    };
+                    messagesSent++;
+                }
+                bytesSent += channel.write(pendingWrite);
+                if (pendingWrite[1].hasRemaining()) {
+                    // Socket buffer full, the rest stays in the outbound queue until OP_WRITE
+                    key.interestOps(key.interestOps() | SelectionKey.OP_WRITE);
+                    return;
+                }
+                pendingWrite = null;
+            }
+            key.interestOps(key.interestOps() & ~SelectionKey.OP_WRITE);
+        }
+
+        @Override
+        protected void onMessageQueued() {
+            if (!closed.get() && writeScheduled.compareAndSet(false, true)) {
+                loop.requestWrite(this);
+            }
+        }
+
+        @Override
+        public void disconnect() {
+            close();
+        }
+
+        @Override
+        public String getRemoteAddress() {
+            return remoteAddress;
+        }
+
+        void close() {
+            if (!closed.compareAndSet(false, true)) return;
+            outbound.close();
+            if (key != null) key.cancel();
+            try {
+                channel.close();
+            } catch (IOException e) {
+                // Already closed
+            }
+            System.out.println("Client disconnected: " + remoteAddress + " (" + String.format(
+                    "%s codec, sent %d msgs / %d bytes, received %d msgs / %d bytes, %s, %s, %s, %s",
+                    getCodec().getName(), messagesSent, bytesSent, messagesReceived, bytesReceived, getCompressionStats(),
+                    outbound.getStats(), outbound.getLaneStats(), getLatency().getStats()) + ")");
+            getCompressor().close();
+            if (helloReceived) {
+                listener.removeClient(this);
+            }
+        }
+    }
+}
@@ -0,0 +1,293 @@
+package game.network;
+
+import players.Player;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.EnumSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Bounded queue of messages waiting to be written to one client.
+ *
+ * Game code only ever enqueues, the transport drains it on its own writer,
+ * so a client with a full TCP buffer can no longer stall a broadcast.
+ * When the queue is full the {@link OverflowPolicy} decides what gives way.
+ *
+ * Messages wait in one of two {@link Lane}s. Game state is always written first;
+ * chat and images only get every so many sends while both lanes have work, so a
+ * chatty lobby cannot delay the turn handoff and a busy game cannot starve chat.
+ * Each lane keeps its own queueing delay (see {@link #getStats()}).
+ *
+ * Configure with -Dvop.outbound.capacity (default 1024, both lanes together),
+ * -Dvop.outbound.policy=coalesce|drop|disconnect (default coalesce) and
+ * -Dvop.outbound.bulkShare (percent of sends the bulk lane gets under load, default 25).
+ */
+public class OutboundQueue {
+
+    public enum OverflowPolicy {
+        /** Replace a queued UPDATE_PLAYER_STATS for the same player, then fall back to DROP. */
+        COALESCE,
+        /** Drop chat/log traffic, then disconnect if only state messages are queued. */
+        DROP,
+        /** Disconnect as soon as the queue is full. */
+        DISCONNECT
+    }
+
+    public enum Lane {
+        /** Game state and anything the game log needs in order with it. */
+        INTERACTIVE,
+        /** Chat, GIFs and image chunks: nobody waits on these to take their turn. */
+        BULK;
+
+        private static final Set<NetworkMessage.MessageType> BULK_TYPES = EnumSet.of(
+                NetworkMessage.MessageType.CHAT_MESSAGE,
+                NetworkMessage.MessageType.PLAYER_CHAT,
+                NetworkMessage.MessageType.CHAT_EVENT,
+                NetworkMessage.MessageType.MEDIA_START,
+                NetworkMessage.MessageType.MEDIA_CHUNK,
+                NetworkMessage.MessageType.MEDIA_END
+        );
+
+        /** A batch is bulk only if everything in it is, so state never waits behind chat. */
+        public static Lane of(NetworkMessage msg) {
+            if (msg.getType() == NetworkMessage.MessageType.BATCH && msg.getPayload() instanceof Object[]) {
+                for (Object part : (Object[]) msg.getPayload()) {
+                    if (!(part instanceof NetworkMessage) || of((NetworkMessage) part) != BULK) return INTERACTIVE;
+                }
+                return BULK;
+            }
+            return BULK_TYPES.contains(msg.getType()) ? BULK : INTERACTIVE;
+        }
+    }
+
+    /** Purely informational messages that may be lost under pressure. */
+    private static final Set<NetworkMessage.MessageType> DROPPABLE = EnumSet.of(
+            NetworkMessage.MessageType.LOG_MESSAGE,
+            NetworkMessage.MessageType.CHAT_MESSAGE,
+            NetworkMessage.MessageType.PLAYER_CHAT,
+            NetworkMessage.MessageType.CHAT_EVENT,
+            NetworkMessage.MessageType.PLAYER_LATENCY
+    );
+
+    public static final int DEFAULT_CAPACITY = Integer.getInteger("vop.outbound.capacity", 1024);
+    public static final int BULK_SHARE = Math.max(1, Math.min(100, Integer.getInteger("vop.outbound.bulkShare", 25)));
+
+    /** A queued message and when it was queued. */
+    private static final class Entry {
+        final NetworkMessage msg;
+        final long order;
+        final long queuedNanos;
+
+        Entry(NetworkMessage msg, long order, long queuedNanos) {
+            this.msg = msg;
+            this.order = order;
+            this.queuedNanos = queuedNanos;
+        }
+    }
+
+    /** Messages of one lane, oldest first, and how long they waited. */
+    private static final class LaneQueue {
+        final ArrayDeque<Entry> entries = new ArrayDeque<>();
+        long sent;
+        long waitNanos;
+        long maxWaitNanos;
+
+        NetworkMessage take() {
+            Entry entry = entries.pollFirst();
+            long waited = System.nanoTime() - entry.queuedNanos;
+            sent++;
+            waitNanos += waited;
+            maxWaitNanos = Math.max(maxWaitNanos, waited);
+            return entry.msg;
+        }
+
+        String describe() {
+            return String.format("%d queued, %d sent, wait avg %.1f ms max %.1f ms", entries.size(), sent,
+                    sent == 0 ? 0 : waitNanos / 1e6 / sent, maxWaitNanos / 1e6);
+        }
+    }
+
+    private final LaneQueue interactive = new LaneQueue();
+    private final LaneQueue bulk = new LaneQueue();
+    private final int capacity;
+    private final OverflowPolicy policy;
+    private boolean closed;
+
+    // Bulk's share of sends, a bulk message goes out whenever this reaches 100
+    private int bulkCredit;
+    private long nextOrder;
+
+    // Metrics
+    private long enqueued;
+    private long dropped;
+    private long coalesced;
+    private int highWatermark;
+
+    public OutboundQueue() {
+        this(DEFAULT_CAPACITY, configuredPolicy());
+    }
+
+    public OutboundQueue(int capacity, OverflowPolicy policy) {
+        this.capacity = Math.max(1, capacity);
+        this.policy = policy;
+    }
+
+    private static OverflowPolicy configuredPolicy() {
+        String value = System.getProperty("vop.outbound.policy", "coalesce");
+        try {
+            return OverflowPolicy.valueOf(value.trim().toUpperCase());
+        } catch (IllegalArgumentException e) {
+            System.out.println("Unknown outbound policy '" + value + "', using COALESCE.");
+            return OverflowPolicy.COALESCE;
+        }
+    }
+
+    /**
+     * Adds a message for sending.
+     * @return false if the queue overflowed and the client should be disconnected.
+     */
+    public synchronized boolean offer(NetworkMessage msg) {
+        if (closed) return true; // Nothing to do, the connection is already going away
+
+        if (size() >= capacity) {
+            if (policy == OverflowPolicy.DISCONNECT) return false;
+            if (policy == OverflowPolicy.COALESCE && coalesce(msg)) return true;
+            if (DROPPABLE.contains(msg.getType())) {
+                dropped++;
+                return true;
+            }
+            if (!evictDroppable(bulk) && !evictDroppable(interactive)) return false;
+        }
+
+        laneFor(msg).entries.addLast(new Entry(msg, nextOrder++, System.nanoTime()));
+        enqueued++;
+        if (size() > highWatermark) highWatermark = size();
+        notifyAll();
+        return true;
+    }
+
+    private LaneQueue laneFor(NetworkMessage msg) {
+        return Lane.of(msg) == Lane.BULK ? bulk : interactive;
+    }
+
+    /** Makes space for a state message by discarding the oldest chat/log line. */
+    private boolean evictDroppable(LaneQueue lane) {
+        Iterator<Entry> it = lane.entries.iterator();
+        while (it.hasNext()) {
+            if (DROPPABLE.contains(it.next().msg.getType())) {
+                it.remove();
+                dropped++;
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /** Swaps the payload of a queued stats update for the same player, keeping its place. */
+    private boolean coalesce(NetworkMessage incoming) {
+        // Only a newer stats update may stand in for an older one
+        if (incoming.getType() != NetworkMessage.MessageType.UPDATE_PLAYER_STATS
+                || !(incoming.getPayload() instanceof Player)) return false;
+        Player player = (Player) incoming.getPayload();
+
+        ArrayDeque<Entry> entries = interactive.entries;
+        ArrayDeque<Entry> rebuilt = new ArrayDeque<>(entries.size());
+        boolean replaced = false;
+        for (Entry queued : entries) {
+            if (!replaced && queued.msg.getType() == NetworkMessage.MessageType.UPDATE_PLAYER_STATS
+                    && queued.msg.getPayload() instanceof Player
+                    && ((Player) queued.msg.getPayload()).getToken() == player.getToken()) {
+                rebuilt.addLast(new Entry(incoming, queued.order, queued.queuedNanos));
+                replaced = true;
+            } else {
+                rebuilt.addLast(queued);
+            }
+        }
+        if (replaced) {
+            entries.clear();
+            entries.addAll(rebuilt);
+            coalesced++;
+        }
+        return replaced;
+    }
+
+    /** Blocks until a message is available. Returns null once the queue is closed. */
+    public synchronized NetworkMessage take() throws InterruptedException {
+        while (size() == 0 && !closed) {
+            wait();
+        }
+        return closed ? null : next();
+    }
+
+    /** Returns the next message without blocking, or null if empty. */
+    public synchronized NetworkMessage poll() {
+        return size() == 0 ? null : next();
+    }
+
+    /** Game state first; while both lanes wait, bulk gets BULK_SHARE percent of the sends. */
+    private NetworkMessage next() {
+        if (bulk.entries.isEmpty()) return interactive.take();
+        if (interactive.entries.isEmpty()) {
+            bulkCredit = 0; // No credit saved up while the lane had no competition
+            return bulk.take();
+        }
+        bulkCredit += BULK_SHARE;
+        if (bulkCredit >= 100) {
+            bulkCredit -= 100;
+            return bulk.take();
+        }
+        return interactive.take();
+    }
+
+    /** Stops the writer. Messages still queued stay available through {@link #drain()}. */
+    public synchronized void close() {
+        closed = true;
+        notifyAll();
+    }
+
+    public synchronized boolean isClosed() {
+        return closed;
+    }
+
+    /** Removes and returns everything still queued, in the order it was offered. */
+    public synchronized List<NetworkMessage> drain() {
+        List<Entry> entries = new ArrayList<>(interactive.entries);
+        entries.addAll(bulk.entries);
+        entries.sort(Comparator.comparingLong(entry -> entry.order));
+        interactive.entries.clear();
+        bulk.entries.clear();
+        List<NetworkMessage> remaining = new ArrayList<>(entries.size());
+        for (Entry entry : entries) remaining.add(entry.msg);
+        return remaining;
+    }
+
+    public synchronized int size() {
+        return interactive.entries.size() + bulk.entries.size();
+    }
+
+    public synchronized int size(Lane lane) {
+        return (lane == Lane.BULK ? bulk : interactive).entries.size();
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    public OverflowPolicy getPolicy() {
+        return policy;
+    }
+
+    public synchronized String getStats() {
+        return String.format("queue %d/%d (peak %d), enqueued %d, dropped %d, coalesced %d",
+                size(), capacity, highWatermark, enqueued, dropped, coalesced);
+    }
+
+    /** Queueing delay per lane, from offer to the writer taking the message. */
+    public synchronized String getLaneStats() {
+        return "interactive " + interactive.describe() + "; bulk " + bulk.describe();
+    }
+}
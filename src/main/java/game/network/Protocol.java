@@ -0,0 +1,85 @@
+package game.network;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Protocol version and optional features, agreed per connection in the hello.
+ *
+ * The client lists the features it can handle in CLIENT_INFO; the host keeps
+ * the ones it supports too and answers with SERVER_HELLO {version, features}.
+ * Everything the host sends that client afterwards uses only those features, so
+ * a table can mix builds while a faster path is rolled out. A client that sends
+ * no version (an older build) gets none of the optional features and no
+ * SERVER_HELLO, which it would not understand.
+ *
+ * -Dvop.protocol.disable=batching,delta,... switches features off in this build,
+ * e.g. to try a mixed table.
+ */
+public final class Protocol {
+
+    /** Bump when the meaning of an existing message changes. */
+    public static final int VERSION = 2;
+
+    /** Version assumed for clients that do not send one. */
+    public static final int LEGACY_VERSION = 1;
+
+    // Feature bits. Never reuse a bit for something else.
+    public static final int BINARY_CODEC = 1;
+    public static final int DELTA_SYNC = 1 << 1;
+    public static final int COMPRESSION = 1 << 2;
+    public static final int BATCHING = 1 << 3;
+    public static final int CHAT_EVENTS = 1 << 4;
+
+    private static final String[] NAMES = {"binary", "delta", "compression", "batching", "chat"};
+
+    private static final int LOCAL = configuredFeatures();
+
+    private Protocol() {}
+
+    private static int configuredFeatures() {
+        int features = DELTA_SYNC | BATCHING | COMPRESSION | CHAT_EVENTS;
+        if (MessageCodecs.getDefault().getName().equals("binary")) features |= BINARY_CODEC;
+        for (String name : System.getProperty("vop.protocol.disable", "").split(",")) {
+            int bit = bitFor(name.trim());
+            if (bit != 0) features &= ~bit;
+            else if (!name.isBlank()) System.err.println("Unknown protocol feature '" + name.trim() + "'");
+        }
+        return features;
+    }
+
+    private static int bitFor(String name) {
+        for (int i = 0; i < NAMES.length; i++) {
+            if (NAMES[i].equalsIgnoreCase(name)) return 1 << i;
+        }
+        return 0;
+    }
+
+    /** Features this build supports and has enabled. */
+    public static int localFeatures() {
+        return LOCAL;
+    }
+
+    /** The features both sides support. */
+    public static int negotiate(int offered) {
+        return offered & LOCAL;
+    }
+
+    public static boolean has(int features, int feature) {
+        return (features & feature) != 0;
+    }
+
+    /** The codec to write with once the features are agreed. */
+    public static MessageCodec codecFor(int features) {
+        return has(features, BINARY_CODEC) ? MessageCodecs.byName("binary") : MessageCodecs.byName("java");
+    }
+
+    /** Readable list for logs, e.g. "binary, delta, batching". */
+    public static String describe(int features) {
+        List<String> names = new ArrayList<>();
+        for (int i = 0; i < NAMES.length; i++) {
+            if (has(features, 1 << i)) names.add(NAMES[i]);
+        }
+        return names.isEmpty() ? "none" : String.join(", ", names);
+    }
+}
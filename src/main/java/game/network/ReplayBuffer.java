@@ -0,0 +1,112 @@
+package game.network;
+
+import java.io.IOException;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The last messages sent to one player slot, numbered in send order.
+ *
+ * Outlives the connection: when a client drops and comes back with the last
+ * sequence number it saw, the host replays just the missed tail instead of
+ * sending the whole game again. Messages that were still queued when the old
+ * connection died are kept as well, since they were never numbered.
+ *
+ * Size with -Dvop.replay.capacity (default 1024 messages per slot).
+ */
+public class ReplayBuffer {
+
+    public static final int DEFAULT_CAPACITY = Integer.getInteger("vop.replay.capacity", 1024);
+
+    private static final SecureRandom RANDOM = new SecureRandom();
+
+    /** A message being sent again with the sequence number it was first sent with. */
+    static class Replayed extends NetworkMessage {
+        private static final long serialVersionUID = 1L;
+        private final transient NetworkMessage original;
+        private final long sequence;
+
+        Replayed(NetworkMessage original, long sequence) {
+            super(original.getType(), original.getPayload());
+            this.original = original;
+            this.sequence = sequence;
+        }
+
+        long getSequence() {
+            return sequence;
+        }
+
+        /** Sends exactly the bytes of the first attempt. */
+        @Override
+        public byte[] encode(MessageCodec codec) throws IOException {
+            return original.encode(codec);
+        }
+    }
+
+    // Identifies this buffer, so a sequence number from another host session is never trusted
+    private final long epoch = RANDOM.nextLong() & Long.MAX_VALUE;
+    private final NetworkMessage[] ring;
+    private long nextSequence = 1;
+    private List<NetworkMessage> unsent = Collections.emptyList();
+    private long stashedBoardVersion = -1;
+
+    public ReplayBuffer() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    public ReplayBuffer(int capacity) {
+        this.ring = new NetworkMessage[Math.max(1, capacity)];
+    }
+
+    public long getEpoch() {
+        return epoch;
+    }
+
+    /** Numbers and remembers a message about to be written. */
+    public synchronized long record(NetworkMessage msg) {
+        long sequence = nextSequence++;
+        ring[(int) (sequence % ring.length)] = msg;
+        return sequence;
+    }
+
+    public synchronized long getLastSequence() {
+        return nextSequence - 1;
+    }
+
+    /**
+     * Everything sent after lastSeen, in order.
+     * @return null if part of that range has already been evicted (or lastSeen is not from this buffer).
+     */
+    public synchronized List<NetworkMessage> since(long lastSeen) {
+        long last = nextSequence - 1;
+        long oldest = Math.max(1, nextSequence - ring.length);
+        if (lastSeen < 0 || lastSeen > last || lastSeen + 1 < oldest) return null;
+
+        List<NetworkMessage> tail = new ArrayList<>((int) (last - lastSeen));
+        for (long seq = lastSeen + 1; seq <= last; seq++) {
+            tail.add(new Replayed(ring[(int) (seq % ring.length)], seq));
+        }
+        return tail;
+    }
+
+    /**
+     * Keeps what the dead connection leaves behind: messages it never got to write
+     * and the last board version its client acknowledged.
+     */
+    public synchronized void stash(List<NetworkMessage> messages, long boardVersionAcked) {
+        this.unsent = messages;
+        this.stashedBoardVersion = boardVersionAcked;
+    }
+
+    public synchronized List<NetworkMessage> takeUnsent() {
+        List<NetworkMessage> result = unsent;
+        unsent = Collections.emptyList();
+        return result;
+    }
+
+    public synchronized long getStashedBoardVersion() {
+        return stashedBoardVersion;
+    }
+}
@@ -0,0 +1,88 @@
+package game.network;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Bounded lock-free queue for any number of producers and consumers.
+ *
+ * Every slot carries a sequence number that tells producers and consumers whose
+ * turn it is, so neither side ever takes a lock; offer() simply fails when the
+ * ring is full and poll() returns null when it is empty. The capacity is rounded
+ * up to a power of two.
+ */
+public class RingQueue<E> {
+
+    private final AtomicReferenceArray<E> items;
+    private final AtomicLongArray turns;
+    private final int mask;
+    private final AtomicLong head = new AtomicLong(); // Next position to poll
+    private final AtomicLong tail = new AtomicLong(); // Next position to offer
+
+    public RingQueue(int capacity) {
+        int size = 2;
+        while (size < capacity) size <<= 1;
+        this.items = new AtomicReferenceArray<>(size);
+        this.turns = new AtomicLongArray(size);
+        this.mask = size - 1;
+        for (int i = 0; i < size; i++) turns.set(i, i);
+    }
+
+    /** @return false if the queue is full. */
+    public boolean offer(E item) {
+        long pos = tail.get();
+        while (true) {
+            int index = (int) (pos & mask);
+            long diff = turns.get(index) - pos;
+            if (diff == 0) {
+                if (tail.compareAndSet(pos, pos + 1)) {
+                    items.set(index, item);
+                    turns.set(index, pos + 1); // Publish to consumers
+                    return true;
+                }
+                pos = tail.get();
+            } else if (diff < 0) {
+                return false; // Slot still holds an item from the previous lap
+            } else {
+                pos = tail.get(); // Another producer got here first
+            }
+        }
+    }
+
+    /** @return the oldest item, or null if the queue is empty. */
+    public E poll() {
+        long pos = head.get();
+        while (true) {
+            int index = (int) (pos & mask);
+            long diff = turns.get(index) - (pos + 1);
+            if (diff == 0) {
+                if (head.compareAndSet(pos, pos + 1)) {
+                    E item = items.get(index);
+                    items.set(index, null);
+                    turns.set(index, pos + mask + 1); // Free the slot for the next lap
+                    return item;
+                }
+                pos = head.get();
+            } else if (diff < 0) {
+                return null; // Nothing published in this slot yet
+            } else {
+                pos = head.get();
+            }
+        }
+    }
+
+    /** Approximate while producers or consumers are active. */
+    public int size() {
+        long size = tail.get() - head.get();
+        return (int) Math.max(0, Math.min(size, capacity()));
+    }
+
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+
+    public int capacity() {
+        return mask + 1;
+    }
+}
@@ -0,0 +1,98 @@
+package game.network;
+
+import java.net.Socket;
+
+/**
+ * A thread on the server that handles communication with a single client
+ * over a blocking socket (one thread per connection).
+ */
+public class SocketClientHandler extends ClientHandler implements Runnable {
+    private Socket socket;
+    private ClientListener listener;
+    private MessageChannel channel;
+
+    public SocketClientHandler(Socket socket, ClientListener listener) {
+        this.socket = socket;
+        this.listener = listener;
+    }
+
+    public void start() {
+        Thread thread = new Thread(this, "Client-" + socket.getInetAddress());
+        thread.start();
+    }
+
+    public void run() {
+        try {
+            channel = new MessageChannel(socket, MessageCodecs.getDefault(), getCompressor());
+            startWriter();
+
+            // Now, we can safely wait for the client's first message
+            NetworkMessage helloMsg = channel.receive();
+            String username = readHello(helloMsg);
+            channel.setFeatures(getFeatures());
+
+            // Hand the client to the game
+            listener.addClient(this, username);
+
+            // Listen for all future messages
+            while (true) {
+                NetworkMessage msg = channel.receive();
+                if (handleControlMessage(msg)) continue;
+                listener.handleNetworkMessage(msg, this);
+            }
+        } catch (Exception e) {
+            // Client disconnected
+            System.out.println("Client disconnected: " + socket.getInetAddress()
+                    + (channel != null ? " (" + channel.getStats() + ", " + outbound.getStats() + ", " + outbound.getLaneStats() + ", " + getLatency().getStats() + ")" : ""));
+            outbound.close();
+            getCompressor().close();
+            listener.removeClient(this);
+        }
+    }
+
+    /**
+     * Drains the outbound queue on a dedicated thread, so a client with a full
+     * TCP buffer only blocks its own writer and never the game or other clients.
+     */
+    private void startWriter() {
+        Thread writer = new Thread(() -> {
+            try {
+                NetworkMessage msg;
+                while ((msg = outbound.take()) != null) {
+                    long sequence = nextSequence(msg);
+                    channel.sendFrame(encodeFrame(msg), sequence);
+                }
+            } catch (Exception e) {
+                // e.printStackTrace(); // Suppress noise on disconnect
+                System.out.println("Error sending to " + getDisplayName() + ": " + e.getMessage());
+                disconnect();
+            }
+        }, "Client-Writer-" + socket.getInetAddress());
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    @Override
+    protected void onMessageQueued() {
+        // The writer thread is already waiting on the queue
+    }
+
+    @Override
+    public void disconnect() {
+        outbound.close();
+        try {
+            socket.close();
+        } catch (Exception e) {
+            // Already closed
+        }
+    }
+
+    @Override
+    public String getRemoteAddress() {
+        return String.valueOf(socket.getInetAddress());
+    }
+
+    public MessageChannel getChannel() {
+        return channel;
+    }
+}
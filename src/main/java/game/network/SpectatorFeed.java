@@ -0,0 +1,218 @@
+package game.network;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The read-only game stream for spectators, kept apart from the players' broadcast.
+ *
+ * Publishing only appends to this feed. A low-priority thread of its own hands each
+ * message to the spectators once it is the configured delay old, so a crowd of
+ * viewers costs the game thread nothing and a delayed stream is no use to someone
+ * sitting at the table. A spectator joins through the same queue as the messages,
+ * so it gets its snapshot and then exactly what was published after it. Messages
+ * are copied when published (the game keeps changing its objects) and each copy is
+ * encoded once per codec for every spectator.
+ *
+ * Host delay: -Dvop.spectator.delayMs (default 0).
+ */
+public class SpectatorFeed {
+
+    public static final long DELAY_MS = Long.getLong("vop.spectator.delayMs", 0);
+
+    /** A message for every spectator, or a spectator joining with what it needs first. */
+    private static final class Entry {
+        final long dueNanos;
+        final NetworkMessage msg;
+        final int feature;
+        final NetworkMessage fallback;
+        final ClientHandler joining;
+        final List<NetworkMessage> catchUp;
+
+        Entry(long dueNanos, NetworkMessage msg, int feature, NetworkMessage fallback,
+              ClientHandler joining, List<NetworkMessage> catchUp) {
+            this.dueNanos = dueNanos;
+            this.msg = msg;
+            this.feature = feature;
+            this.fallback = fallback;
+            this.joining = joining;
+            this.catchUp = catchUp;
+        }
+    }
+
+    private final String name;
+    private final long delayNanos;
+    private final boolean copy;
+    private final ArrayDeque<Entry> pending = new ArrayDeque<>();
+    private final List<ClientHandler> spectators = new CopyOnWriteArrayList<>();
+    private Thread thread;
+    private boolean closed;
+
+    // Metrics
+    private long published;
+    private long delivered;
+    private long joins;
+
+    public SpectatorFeed(String name, long delayMs) {
+        this(name, delayMs, true);
+    }
+
+    /** @param copy false if published messages are never changed afterwards (e.g. a relay forwarding what it received). */
+    public SpectatorFeed(String name, long delayMs, boolean copy) {
+        this.name = name;
+        this.delayNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(0, delayMs));
+        this.copy = copy;
+    }
+
+    /** True while anybody watches or is about to, i.e. while publishing is worth it. */
+    public synchronized boolean isActive() {
+        return !spectators.isEmpty() || !pending.isEmpty();
+    }
+
+    public void publish(NetworkMessage msg) {
+        publish(msg, 0, null);
+    }
+
+    /**
+     * Queues a message for every spectator. Spectators that did not agree to the
+     * feature get the fallback instead (nothing if it is null).
+     */
+    public void publish(NetworkMessage msg, int feature, NetworkMessage fallback) {
+        if (!isActive()) return;
+        try {
+            NetworkMessage frozen = snapshot(msg);
+            NetworkMessage frozenFallback = fallback != null ? snapshot(fallback) : null;
+            offer(new Entry(System.nanoTime() + delayNanos, frozen, feature, frozenFallback, null, null));
+        } catch (IOException e) {
+            System.err.println("Spectator feed " + name + " skipped " + msg.getType() + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * Adds a spectator. It receives catchUp (usually a JOIN_SNAPSHOT) when the delay
+     * has passed, followed by everything published from now on.
+     */
+    public void join(ClientHandler client, List<NetworkMessage> catchUp) {
+        List<NetworkMessage> copies = new ArrayList<>(catchUp.size());
+        try {
+            for (NetworkMessage msg : catchUp) copies.add(snapshot(msg));
+        } catch (IOException e) {
+            System.err.println("Spectator feed " + name + " could not copy the catch-up: " + e.getMessage());
+            client.disconnect();
+            return;
+        }
+        offer(new Entry(System.nanoTime() + delayNanos, null, 0, null, client, copies));
+    }
+
+    public void leave(ClientHandler client) {
+        spectators.remove(client);
+    }
+
+    /** Everybody currently receiving the feed. */
+    public List<ClientHandler> getSpectators() {
+        return spectators;
+    }
+
+    /** Spectators watching or waiting for their delayed snapshot. */
+    public synchronized int size() {
+        int waiting = 0;
+        for (Entry entry : pending) if (entry.joining != null) waiting++;
+        return spectators.size() + waiting;
+    }
+
+    /** Disconnects every spectator and stops the thread. */
+    public void close() {
+        synchronized (this) {
+            closed = true;
+            pending.clear();
+            notifyAll();
+        }
+        for (ClientHandler client : spectators) client.disconnect();
+        spectators.clear();
+    }
+
+    public synchronized String getStats() {
+        return String.format("%d watching, delay %d ms, %d joins, %d published, %d delivered, %d waiting",
+                spectators.size(), TimeUnit.NANOSECONDS.toMillis(delayNanos), joins, published, delivered, pending.size());
+    }
+
+    private synchronized void offer(Entry entry) {
+        if (closed) {
+            if (entry.joining != null) entry.joining.disconnect();
+            return;
+        }
+        pending.add(entry);
+        if (entry.msg != null) published++;
+        if (thread == null) {
+            thread = new Thread(this::run, "Spectators-" + name);
+            thread.setDaemon(true);
+            // Players come first; spectators get whatever CPU is left
+            thread.setPriority(Thread.MIN_PRIORITY);
+            thread.start();
+        }
+        notifyAll();
+    }
+
+    private void run() {
+        while (true) {
+            Entry entry;
+            synchronized (this) {
+                try {
+                    while (!closed && (pending.isEmpty() || pending.peek().dueNanos > System.nanoTime())) {
+                        if (pending.isEmpty()) {
+                            wait();
+                        } else {
+                            long waitNanos = pending.peek().dueNanos - System.nanoTime();
+                            if (waitNanos > 0) TimeUnit.NANOSECONDS.timedWait(this, waitNanos);
+                        }
+                    }
+                } catch (InterruptedException e) {
+                    return;
+                }
+                if (closed) return;
+                entry = pending.poll();
+                // Counted from the moment it leaves the queue; only this thread delivers, so order holds
+                if (entry.joining != null && !entry.joining.isClosed()) spectators.add(entry.joining);
+            }
+            deliver(entry);
+        }
+    }
+
+    private void deliver(Entry entry) {
+        if (entry.joining != null) {
+            if (entry.joining.isClosed()) {
+                spectators.remove(entry.joining);
+                return;
+            }
+            for (NetworkMessage msg : entry.catchUp) entry.joining.enqueue(msg);
+            synchronized (this) {
+                joins++;
+            }
+            return;
+        }
+        int count = 0;
+        for (ClientHandler client : spectators) {
+            if (client.isClosed()) {
+                spectators.remove(client);
+                continue;
+            }
+            NetworkMessage msg = entry.feature == 0 || client.supports(entry.feature) ? entry.msg : entry.fallback;
+            if (msg == null) continue;
+            client.enqueue(msg);
+            count++;
+        }
+        synchronized (this) {
+            delivered += count;
+        }
+    }
+
+    // The game keeps mutating players and fields, so anything not immutable is copied now
+    private NetworkMessage snapshot(NetworkMessage msg) throws IOException {
+        if (!copy || LoopbackTransport.isShareable(msg.getPayload())) return msg;
+        return MessageCodecs.decode(msg.encode(MessageCodecs.getDefault()));
+    }
+}
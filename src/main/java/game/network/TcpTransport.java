@@ -0,0 +1,38 @@
+package game.network;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+
+/** Connects to a host over TCP, one {@link MessageChannel} per connection. */
+public class TcpTransport implements Transport {
+
+    private static final int CONNECT_TIMEOUT_MS = 2000;
+
+    private final String host;
+    private final int port;
+
+    public TcpTransport(String host, int port) {
+        this.host = host;
+        this.port = port;
+    }
+
+    @Override
+    public Connection connect() throws IOException {
+        Socket socket = new Socket();
+        try {
+            socket.connect(new InetSocketAddress(host, port), CONNECT_TIMEOUT_MS);
+            // The host pings regularly, a silent socket means the connection is gone
+            socket.setSoTimeout((int) LatencyTracker.DEAD_AFTER_MS);
+            return new MessageChannel(socket);
+        } catch (IOException e) {
+            socket.close();
+            throw e;
+        }
+    }
+
+    @Override
+    public String describe() {
+        return host + ":" + port;
+    }
+}
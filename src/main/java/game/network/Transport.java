@@ -0,0 +1,15 @@
+package game.network;
+
+import java.io.IOException;
+
+/**
+ * Opens connections to one game server. The client keeps its transport so it can
+ * open a fresh connection the same way when it needs to reconnect.
+ */
+public interface Transport {
+
+    Connection connect() throws IOException;
+
+    /** Where this transport connects to, for logs and error messages. */
+    String describe();
+}
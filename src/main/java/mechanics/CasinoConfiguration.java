@@ -20,6 +20,13 @@ public class CasinoConfiguration implements Serializable {
         this.diceCurrency = getRandomResource(random);
     }
 
+    public CasinoConfiguration(ResourceType coinflip, ResourceType blackjack, ResourceType baccarat, ResourceType dice) {
+        this.coinflipCurrency = coinflip;
+        this.blackjackCurrency = blackjack;
+        this.baccaratCurrency = baccarat;
+        this.diceCurrency = dice;
+    }
+
     private ResourceType getRandomResource(Random random) {
         ResourceType[] values = ResourceType.values();
         return values[random.nextInt(values.length)];
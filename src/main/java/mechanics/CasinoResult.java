@@ -29,6 +29,14 @@ public class CasinoResult implements Serializable {
         return deltas;
     }
 
+    public int getGamesPlayed() {
+        return gamesPlayed;
+    }
+
+    public void setGamesPlayed(int gamesPlayed) {
+        this.gamesPlayed = gamesPlayed;
+    }
+
     public String getSummary() {
         if (deltas.isEmpty()) {
             return "left the casino no richer or poorer.";
@@ -149,6 +149,10 @@ public class Player implements Serializable {
         this.jailTurns++;
     }
 
+    public void setJailTurns(int jailTurns) {
+        this.jailTurns = jailTurns;
+    }
+
     public void setHasGetOutOfJailCard(boolean hasCard) {
         this.hasGetOutOfJailCard = hasCard;
     }
@@ -0,0 +1,128 @@
+package tools;
+
+import board.fields.BoardField;
+import config.BoardLoader;
+import game.network.ClientHandler;
+import game.network.MessageChannel;
+import game.network.MessageCodec;
+import game.network.MessageCodecs;
+import game.network.NetworkMessage;
+import game.network.NetworkMessage.MessageType;
+import players.Player;
+import util.PlayerToken;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Measures CPU time per broadcast as the number of clients grows, comparing
+ * per-client encoding with encoding the message once and sharing the bytes.
+ * Sockets are replaced by in-memory sinks so only serialization cost is measured.
+ * Run with: java -cp vault-o-poly.jar tools.BroadcastBenchmark [broadcasts]
+ */
+public class BroadcastBenchmark {
+
+    private static final int[] CLIENT_COUNTS = {4, 8, 16, 32, 64};
+
+    public static void main(String[] args) throws Exception {
+        int broadcasts = args.length > 0 ? Integer.parseInt(args[0]) : 200;
+        ThreadMXBean cpu = ManagementFactory.getThreadMXBean();
+
+        Map<String, NetworkMessage.MessageType> samples = new LinkedHashMap<>();
+        samples.put("INITIALIZE_BOARD", MessageType.INITIALIZE_BOARD);
+        samples.put("SYNC_BOARD_STATE", MessageType.SYNC_BOARD_STATE);
+        samples.put("UPDATE_PLAYER_STATS", MessageType.UPDATE_PLAYER_STATS);
+
+        List<BoardField> fields = BoardLoader.loadBoard("board.json");
+        Player player = new Player("Survivor", PlayerToken.VAULT_BOY);
+
+        for (MessageCodec codec : MessageCodecs.all()) {
+            System.out.printf("%n[%s codec]%n", codec.getName());
+            System.out.printf("%-22s %8s %18s %18s %8s%n", "Message", "Clients", "Per-client (us)", "Encode-once (us)", "Speedup");
+
+            for (Map.Entry<String, MessageType> sample : samples.entrySet()) {
+                Object payload = sample.getValue() == MessageType.UPDATE_PLAYER_STATS ? player : fields;
+
+                for (int clients : CLIENT_COUNTS) {
+                    List<SinkClient> sinks = new ArrayList<>();
+                    for (int i = 0; i < clients; i++) sinks.add(new SinkClient(codec));
+
+                    // Warm up both paths
+                    for (int i = 0; i < broadcasts / 4; i++) {
+                        broadcastPerClient(sinks, codec, new NetworkMessage(sample.getValue(), payload));
+                        broadcastShared(sinks, codec, new NetworkMessage(sample.getValue(), payload));
+                    }
+
+                    long start = cpu.getCurrentThreadCpuTime();
+                    for (int i = 0; i < broadcasts; i++) {
+                        broadcastPerClient(sinks, codec, new NetworkMessage(sample.getValue(), payload));
+                    }
+                    long perClientNs = (cpu.getCurrentThreadCpuTime() - start) / broadcasts;
+
+                    start = cpu.getCurrentThreadCpuTime();
+                    for (int i = 0; i < broadcasts; i++) {
+                        broadcastShared(sinks, codec, new NetworkMessage(sample.getValue(), payload));
+                    }
+                    long sharedNs = (cpu.getCurrentThreadCpuTime() - start) / broadcasts;
+
+                    System.out.printf("%-22s %8d %18.1f %18.1f %7.1fx%n", sample.getKey(), clients,
+                            perClientNs / 1000.0, sharedNs / 1000.0, (double) perClientNs / Math.max(1, sharedNs));
+                }
+            }
+        }
+    }
+
+    /** The old behaviour: every client serializes the message itself. */
+    private static void broadcastPerClient(List<SinkClient> sinks, MessageCodec codec, NetworkMessage msg) throws Exception {
+        for (SinkClient sink : sinks) {
+            sink.write(codec.encode(msg));
+        }
+    }
+
+    /** What GameController.broadcastMessage does now. */
+    private static void broadcastShared(List<SinkClient> sinks, MessageCodec codec, NetworkMessage msg) throws Exception {
+        msg.encode(codec);
+        for (SinkClient sink : sinks) {
+            sink.sendMessage(msg);
+        }
+    }
+
+    /** A client whose "socket" just counts the bytes written to it. */
+    private static class SinkClient extends ClientHandler {
+        private final MessageCodec codec;
+        private long bytesWritten;
+
+        SinkClient(MessageCodec codec) {
+            this.codec = codec;
+        }
+
+        @Override
+        protected void onMessageQueued() {
+            NetworkMessage msg;
+            while ((msg = outbound.poll()) != null) {
+                try {
+                    write(msg.encode(codec));
+                } catch (Exception e) {
+                    throw new RuntimeException(e);
+                }
+            }
+        }
+
+        void write(byte[] frame) {
+            bytesWritten += frame.length + MessageChannel.HEADER_SIZE;
+        }
+
+        @Override
+        public void disconnect() {
+        }
+
+        @Override
+        public String getRemoteAddress() {
+            return "sink";
+        }
+    }
+}
@@ -0,0 +1,89 @@
+package tools;
+
+import board.fields.BoardField;
+import board.fields.PropertyField;
+import config.BoardLoader;
+import game.network.MessageChannel;
+import game.network.MessageCodec;
+import game.network.MessageCodecs;
+import game.network.NetworkMessage;
+import game.network.NetworkMessage.MessageType;
+import players.Player;
+import resources.ResourceType;
+import util.PlayerToken;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Compares the registered wire codecs on bytes per message and encode/decode latency.
+ * Run with: java -cp vault-o-poly.jar tools.CodecBenchmark [iterations]
+ */
+public class CodecBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        int iterations = args.length > 0 ? Integer.parseInt(args[0]) : 20000;
+
+        Map<String, NetworkMessage> samples = buildSamples();
+
+        System.out.printf("%-22s %-8s %10s %14s %14s%n", "Message", "Codec", "Bytes", "Encode (ns)", "Decode (ns)");
+        for (Map.Entry<String, NetworkMessage> sample : samples.entrySet()) {
+            for (MessageCodec codec : MessageCodecs.all()) {
+                NetworkMessage msg = sample.getValue();
+                byte[] encoded = codec.encode(msg);
+
+                // Warm up so the JIT has compiled both paths before measuring
+                for (int i = 0; i < iterations / 10; i++) {
+                    codec.decode(codec.encode(msg));
+                }
+
+                long start = System.nanoTime();
+                for (int i = 0; i < iterations; i++) {
+                    encoded = codec.encode(msg);
+                }
+                long encodeNs = (System.nanoTime() - start) / iterations;
+
+                start = System.nanoTime();
+                for (int i = 0; i < iterations; i++) {
+                    codec.decode(encoded);
+                }
+                long decodeNs = (System.nanoTime() - start) / iterations;
+
+                System.out.printf("%-22s %-8s %10d %14d %14d%n",
+                        sample.getKey(), codec.getName(), encoded.length + MessageChannel.HEADER_SIZE, encodeNs, decodeNs);
+            }
+        }
+    }
+
+    private static Map<String, NetworkMessage> buildSamples() {
+        List<BoardField> fields = BoardLoader.loadBoard("board.json");
+
+        List<Player> players = new ArrayList<>();
+        for (PlayerToken token : PlayerToken.values()) {
+            Player p = new Player("Survivor " + token.name(), token);
+            p.addResources(ResourceType.WATER, 3);
+            p.addResources(ResourceType.SCRAP_MATERIAL, 7);
+            players.add(p);
+        }
+
+        // Hand out every other property so ownership graphs are realistic
+        int i = 0;
+        for (BoardField field : fields) {
+            if (field instanceof PropertyField && (i++ % 2 == 0)) {
+                Player owner = players.get(i % players.size());
+                ((PropertyField) field).setOwner(owner);
+                owner.addProperty((PropertyField) field);
+            }
+        }
+
+        Map<String, NetworkMessage> samples = new LinkedHashMap<>();
+        samples.put("LOG_MESSAGE", new NetworkMessage(MessageType.LOG_MESSAGE, "12:34 Survivor VAULT_BOY rolled a 7 (3 + 4)!"));
+        samples.put("MOVE_PLAYER_TOKEN", new NetworkMessage(MessageType.MOVE_PLAYER_TOKEN, new Object[]{PlayerToken.DOGMEAT, 17}));
+        samples.put("SET_CONTROLS", new NetworkMessage(MessageType.SET_CONTROLS, new boolean[]{true, true, false}));
+        samples.put("UPDATE_PLAYER_STATS", new NetworkMessage(MessageType.UPDATE_PLAYER_STATS, players.get(1)));
+        samples.put("SYNC_BOARD_STATE", new NetworkMessage(MessageType.SYNC_BOARD_STATE, fields));
+        return samples;
+    }
+}
@@ -0,0 +1,231 @@
+package tools;
+
+import game.GameController;
+import game.RoomManager;
+import game.network.Connection;
+import game.network.JoinSnapshot;
+import game.network.LoopbackTransport;
+import game.network.NetworkMessage;
+import game.network.Protocol;
+import game.network.NetworkMessage.MessageType;
+import ui.ConsoleUI;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Plays a networked game between bots over the loopback transport: a real host
+ * GameController behind a RoomManager, every bot a full client connection, but no
+ * sockets. Reports turn throughput, the time from a roll request to the host's
+ * answer and the host engine's command latency, and checks that every client saw
+ * the server's sequence numbers in order. With silent% above 0 the bots ignore that
+ * share of prompts, which the host then answers for them when the deadline passes.
+ * Run with: java -cp vault-o-poly.jar tools.LoopbackSoak [players] [seconds] [silent%]
+ */
+public class LoopbackSoak {
+
+    public static void main(String[] args) throws Exception {
+        int playerCount = args.length > 0 ? Integer.parseInt(args[0]) : 4;
+        long seconds = args.length > 1 ? Long.parseLong(args[1]) : 30;
+        // Share of prompts the bots never answer, to exercise the prompt deadlines
+        int silentPercent = args.length > 2 ? Integer.parseInt(args[2]) : 0;
+
+        // Games are short, so keep starting new ones until the time is up
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(seconds);
+        long started = System.nanoTime();
+        List<Bot> all = new ArrayList<>();
+        GameController last = null;
+        int games = 0;
+        while (System.nanoTime() < deadline) {
+            games++;
+            last = playGame(games, playerCount, silentPercent, deadline, all);
+        }
+        double elapsed = (System.nanoTime() - started) / 1e9;
+
+        long rolls = 0;
+        long messages = 0;
+        long answered = 0;
+        long answerNanos = 0;
+        long maxAnswerNanos = 0;
+        long outOfOrder = 0;
+        long ignored = 0;
+        for (Bot bot : all) {
+            synchronized (bot) {
+                rolls += bot.rolls;
+                messages += bot.received;
+                answered += bot.answered;
+                answerNanos += bot.answerNanos;
+                maxAnswerNanos = Math.max(maxAnswerNanos, bot.maxAnswerNanos);
+                outOfOrder += bot.outOfOrder;
+                ignored += bot.ignored;
+            }
+        }
+        System.out.printf("%n%d games in %.1f s with %d players%n", games, elapsed, playerCount);
+        System.out.printf("Turns/s: %.1f, messages/s: %.0f%n", rolls / elapsed, messages / elapsed);
+        System.out.printf("Roll to first reply: avg %.1f us, max %.1f us%n",
+                answered == 0 ? 0 : answerNanos / 1e3 / answered, maxAnswerNanos / 1e3);
+        System.out.println("Sequence order: " + (outOfOrder == 0 ? "ok" : outOfOrder + " messages out of order"));
+        if (silentPercent > 0) System.out.println("Prompts left unanswered: " + ignored);
+        System.out.println("Engine (last game):");
+        for (String line : last.getEngine().describeStats()) System.out.println("  " + line);
+    }
+
+    /** Runs one game until somebody wins or the deadline passes, then tears it down. */
+    private static GameController playGame(int number, int playerCount, int silentPercent, long deadline, List<Bot> all) throws Exception {
+        GameController host = new GameController(new ConsoleUI("soak") {
+            @Override public void logMessage(String message) {}
+            @Override public void displayChatMessage(String message) {}
+            @Override public void showNotification(String message) {}
+        }, "soak-" + number);
+        host.getEngine().submit("start", () -> host.startAsRoom(host));
+        RoomManager rooms = new RoomManager(host);
+        LoopbackTransport transport = new LoopbackTransport(rooms);
+
+        CountDownLatch finished = new CountDownLatch(1);
+        List<Bot> bots = new ArrayList<>();
+        long started = System.nanoTime();
+        for (int i = 1; i <= playerCount; i++) {
+            Bot bot = new Bot("Bot-" + i, transport.connect(), number * 100L + i, finished, silentPercent);
+            bots.add(bot);
+            Thread thread = new Thread(bot, bot.name);
+            thread.setDaemon(true);
+            thread.start();
+        }
+
+        boolean gameOver = finished.await(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+        long rolls = 0;
+        for (Bot bot : bots) {
+            bot.connection.close();
+            synchronized (bot) {
+                rolls += bot.rolls;
+            }
+        }
+        System.out.printf("Game %d: %s after %d turns, %.0f ms%n", number, gameOver ? "won" : "stopped",
+                rolls, (System.nanoTime() - started) / 1e6);
+
+        rooms.stop();
+        host.getEngine().submit("close", host::closeRoom);
+        host.getEngine().shutdown();
+        all.addAll(bots);
+        return host;
+    }
+
+    /** A client that accepts whatever the host offers and rolls as soon as it may. */
+    private static class Bot implements Runnable {
+        final String name;
+        final Connection connection;
+        final Random random;
+        final CountDownLatch finished;
+        final int silentPercent;
+
+        long received;
+        long rolls;
+        long answered;
+        long answerNanos;
+        long maxAnswerNanos;
+        long outOfOrder;
+        long ignored;
+        private long rollSentNanos;
+        private long lastSequence;
+
+        Bot(String name, Connection connection, long seed, CountDownLatch finished, int silentPercent) {
+            this.name = name;
+            this.connection = connection;
+            this.random = new Random(seed);
+            this.finished = finished;
+            this.silentPercent = silentPercent;
+        }
+
+        @Override
+        public void run() {
+            try {
+                connection.send(new NetworkMessage(MessageType.CLIENT_INFO,
+                        new Object[]{name, null, 0L, 0L, null, Protocol.VERSION, Protocol.localFeatures()}));
+                while (true) {
+                    NetworkMessage msg = connection.receive();
+                    synchronized (this) {
+                        received++;
+                        long sequence = connection.getLastReceivedSequence();
+                        if (sequence < lastSequence) outOfOrder++;
+                        lastSequence = sequence;
+                        if (rollSentNanos != 0) {
+                            long nanos = System.nanoTime() - rollSentNanos;
+                            answered++;
+                            answerNanos += nanos;
+                            maxAnswerNanos = Math.max(maxAnswerNanos, nanos);
+                            rollSentNanos = 0;
+                        }
+                    }
+                    handle(msg);
+                }
+            } catch (IOException e) {
+                // Connection closed
+            }
+        }
+
+        /** Answers a prompt by its request id, or leaves it to time out now and then. */
+        private void answer(MessageType type, Object requestId, Object value) throws IOException {
+            if (random.nextInt(100) < silentPercent) {
+                synchronized (this) {
+                    ignored++;
+                }
+                return;
+            }
+            connection.send(new NetworkMessage(type, new Object[]{requestId, value}));
+        }
+
+        private void handle(NetworkMessage msg) throws IOException {
+            Object payload = msg.getPayload();
+            switch (msg.getType()) {
+                case BATCH:
+                    for (Object part : (Object[]) payload) handle((NetworkMessage) part);
+                    break;
+                case SERVER_HELLO:
+                    connection.setFeatures((Integer) ((Object[]) payload)[1]);
+                    break;
+                case PING:
+                    connection.send(new NetworkMessage(MessageType.PONG, payload));
+                    break;
+                case JOIN_SNAPSHOT:
+                    connection.send(new NetworkMessage(MessageType.ACK_BOARD_VERSION, ((JoinSnapshot) payload).getBoardVersion()));
+                    break;
+                case SYNC_BOARD_DELTA:
+                    connection.send(new NetworkMessage(MessageType.ACK_BOARD_VERSION, ((Object[]) payload)[0]));
+                    break;
+                case SET_CONTROLS:
+                    if (((boolean[]) payload)[0]) {
+                        synchronized (this) {
+                            rolls++;
+                            rollSentNanos = System.nanoTime();
+                        }
+                        connection.send(new NetworkMessage(MessageType.REQUEST_ROLL, null));
+                    }
+                    break;
+                case SHOW_BOOLEAN_DIALOG:
+                    answer(MessageType.RESPONSE_BUY_PROPERTY, ((Object[]) payload)[1], random.nextBoolean());
+                    break;
+                case SHOW_SELECTION_DIALOG:
+                    Object[] dialog = (Object[]) payload;
+                    String[] options = (String[]) dialog[1];
+                    MessageType type = NetworkMessage.selectionResponseType((String) dialog[0]);
+                    answer(type, dialog[2], type == MessageType.RESPONSE_JAIL_ACTION ? options[random.nextInt(options.length)] : null);
+                    break;
+                case REQUEST_BUILD_OFFER:
+                    answer(MessageType.RESPONSE_BUILD_OFFER, ((Object[]) payload)[1], null);
+                    break;
+                case REQUEST_ACCEPT_TRADE:
+                    answer(MessageType.RESPONSE_ACCEPT_TRADE, ((Object[]) payload)[1], false);
+                    break;
+                case GAME_OVER:
+                    finished.countDown();
+                    break;
+                default:
+                    break;
+            }
+        }
+    }
+}
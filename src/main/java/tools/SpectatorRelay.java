@@ -0,0 +1,203 @@
+package tools;
+
+import game.network.ClientHandler;
+import game.network.ClientListener;
+import game.network.Connection;
+import game.network.LatencyTracker;
+import game.network.NetworkMessage;
+import game.network.NetworkMessage.MessageType;
+import game.network.NioGameServer;
+import game.network.Protocol;
+import game.network.SpectatorFeed;
+import game.network.TcpTransport;
+import game.network.Transport;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Re-broadcasts one room to its own spectators, so the host uploads the game once
+ * no matter how many people watch.
+ *
+ * The relay joins the host as a single spectator and serves its viewers from its own
+ * NIO server. It keeps the last JOIN_SNAPSHOT and everything after it, so a viewer
+ * who arrives late gets the snapshot plus that tail and then the live stream. Once
+ * the tail reaches -Dvop.relay.maxLog messages (default 2048) the relay rejoins the
+ * host for a fresh snapshot, which viewers apply like any resync. Relays accept other
+ * relays as viewers, so they can be chained. Any spectator delay is the host's.
+ * Messages are forwarded as the host sent them, so a viewer must read board deltas
+ * and chat events if this relay asks the host for them; older viewers are turned away.
+ * Viewers use "Join by Address" with "Watch only" ticked.
+ * Run with: java -cp vault-o-poly.jar tools.SpectatorRelay host port [listen port] [room]
+ */
+public class SpectatorRelay implements ClientListener {
+
+    private static final int MAX_LOG = Integer.getInteger("vop.relay.maxLog", 2048);
+    private static final int DEFAULT_PORT = 10367;
+    private static final int[] RECONNECT_DELAYS_MS = {0, 250, 1000, 2000, 5000};
+    // Features that change what the host sends, not just how, so the relay cannot translate them
+    private static final int CONTENT_FEATURES = Protocol.localFeatures() & (Protocol.DELTA_SYNC | Protocol.CHAT_EVENTS);
+
+    private final Transport upstream;
+    private final String roomId;
+    // Forwarded messages are never changed, so the feed can share them as they are
+    private final SpectatorFeed feed = new SpectatorFeed("relay", 0, false);
+
+    // The latest snapshot and everything since, for viewers who join late
+    private final Object lock = new Object();
+    private NetworkMessage snapshot;
+    private final List<NetworkMessage> tail = new ArrayList<>();
+
+    public SpectatorRelay(Transport upstream, String roomId) {
+        this.upstream = upstream;
+        this.roomId = roomId;
+    }
+
+    public static void main(String[] args) throws Exception {
+        if (args.length < 2) {
+            System.out.println("Usage: tools.SpectatorRelay host port [listen port] [room]");
+            return;
+        }
+        int listenPort = args.length > 2 ? Integer.parseInt(args[2]) : DEFAULT_PORT;
+        String room = args.length > 3 ? args[3] : null;
+
+        SpectatorRelay relay = new SpectatorRelay(new TcpTransport(args[0], Integer.parseInt(args[1])), room);
+        NioGameServer server = new NioGameServer(listenPort, relay);
+        server.start();
+        relay.startPinging();
+        System.out.println("Relaying " + args[0] + ":" + args[1] + (room != null ? "/" + room : "") + " on port " + listenPort);
+        relay.run();
+    }
+
+    /** Follows the host until the process ends, rejoining whenever the connection drops. */
+    public void run() throws InterruptedException {
+        int attempt = 0;
+        while (true) {
+            Thread.sleep(RECONNECT_DELAYS_MS[Math.min(attempt, RECONNECT_DELAYS_MS.length - 1)]);
+            Connection connection;
+            try {
+                connection = upstream.connect();
+                connection.send(new NetworkMessage(MessageType.CLIENT_INFO,
+                        new Object[]{"Relay", null, 0L, 0L, roomId, Protocol.VERSION, Protocol.localFeatures(), true}));
+            } catch (IOException e) {
+                attempt++;
+                System.out.println("Relay: cannot reach " + upstream.describe() + " (" + e.getMessage() + ")");
+                continue;
+            }
+            try {
+                while (true) {
+                    NetworkMessage msg = connection.receive();
+                    attempt = 0;
+                    if (!forward(connection, msg)) break;
+                }
+                System.out.println("Relay: " + MAX_LOG + " messages since the last snapshot, rejoining for a fresh one.");
+            } catch (IOException e) {
+                attempt++;
+                System.out.println("Relay: lost " + upstream.describe() + " (" + e.getMessage() + "), rejoining.");
+            } finally {
+                connection.close();
+            }
+        }
+    }
+
+    /** @return false once the tail is long enough that a fresh snapshot is cheaper. */
+    private boolean forward(Connection connection, NetworkMessage msg) throws IOException {
+        switch (msg.getType()) {
+            case PING:
+                connection.send(new NetworkMessage(MessageType.PONG, msg.getPayload()));
+                return true;
+            case SERVER_HELLO:
+                connection.setFeatures((Integer) ((Object[]) msg.getPayload())[1]);
+                return true;
+            case SESSION_INFO:
+                return true;
+            case BATCH:
+                for (Object part : (Object[]) msg.getPayload()) {
+                    if (!forward(connection, (NetworkMessage) part)) return false;
+                }
+                return true;
+            case JOIN_SNAPSHOT:
+                synchronized (lock) {
+                    snapshot = msg;
+                    tail.clear();
+                    feed.publish(msg);
+                }
+                return true;
+            default:
+                synchronized (lock) {
+                    tail.add(msg);
+                    feed.publish(msg);
+                    return tail.size() < MAX_LOG;
+                }
+        }
+    }
+
+    // Viewers time out without pings, and the host's pings end at the relay
+    private void startPinging() {
+        Thread pinger = new Thread(() -> {
+            long rounds = 0;
+            while (true) {
+                try {
+                    Thread.sleep(LatencyTracker.PING_INTERVAL_MS);
+                } catch (InterruptedException e) {
+                    return;
+                }
+                for (ClientHandler viewer : feed.getSpectators()) {
+                    LatencyTracker latency = viewer.getLatency();
+                    if (latency.isUnresponsive()) {
+                        viewer.disconnect();
+                        continue;
+                    }
+                    viewer.sendMessage(new NetworkMessage(MessageType.PING, latency.onPingSent()));
+                }
+                if (++rounds % 30 == 0) System.out.println("Relay: " + feed.getStats());
+            }
+        }, "Relay-Ping");
+        pinger.setDaemon(true);
+        pinger.start();
+    }
+
+    @Override
+    public void addClient(ClientHandler client, String username) {
+        if (!client.isSpectator()) {
+            refuse(client, "This is a spectator relay. Join again with \"Watch only\" ticked.");
+            return;
+        }
+        int missing = CONTENT_FEATURES & ~client.getFeatures();
+        if (missing != 0) {
+            System.out.println("Relay: turned " + username + " away, missing " + Protocol.describe(missing));
+            refuse(client, "This relay forwards messages your version cannot read (" + Protocol.describe(missing)
+                    + "). Update the game to watch here.");
+            return;
+        }
+        // Under the lock, so nothing forwarded in between is missed or sent twice
+        synchronized (lock) {
+            List<NetworkMessage> catchUp = new ArrayList<>(tail.size() + 1);
+            if (snapshot != null) {
+                catchUp.add(snapshot);
+                catchUp.addAll(tail);
+            }
+            feed.join(client, catchUp);
+        }
+        System.out.println("Relay: " + username + " is watching (" + feed.size() + " viewers)");
+    }
+
+    private void refuse(ClientHandler client, String notice) {
+        client.sendMessage(new NetworkMessage(MessageType.SHOW_NOTIFICATION, notice));
+        // Give the writer a moment to deliver the notice
+        CompletableFuture.delayedExecutor(500, TimeUnit.MILLISECONDS).execute(client::disconnect);
+    }
+
+    @Override
+    public void handleNetworkMessage(NetworkMessage msg, ClientHandler sender) {
+        // Viewers only watch; their acks and requests have nowhere to go
+    }
+
+    @Override
+    public void removeClient(ClientHandler client) {
+        feed.leave(client);
+    }
+}
@@ -0,0 +1,134 @@
+package ui;
+
+import game.network.ChatEvent;
+import util.PlayerToken;
+
+import java.net.URL;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Turns a {@link ChatEvent} into the HTML the chat panel shows.
+ *
+ * Runs wherever the line is displayed: on each client for CHAT_EVENT, and on the
+ * host for its own chat and for clients that still expect ready-made HTML. The
+ * markup around a player's name (icon, color, escaped name) only depends on the
+ * player, so it is built once per sender and reused for every later line.
+ */
+public final class ChatRenderer {
+
+    private static final ChatRenderer SHARED = new ChatRenderer();
+
+    private static final Map<PlayerToken, String> PLAYER_COLORS = Map.of(
+            PlayerToken.VAULT_BOY, "#88B1D8",
+            PlayerToken.NUKA_GIRL, "#D88888",
+            PlayerToken.DOGMEAT, "#D8B188",
+            PlayerToken.GHOUL, "#88D888"
+    );
+    private static final String DEFAULT_COLOR = "#AAAAAA";
+
+    // Words longer than this get break opportunities, otherwise the bubble overflows
+    private static final int MAX_WORD = 20;
+
+    private static final DateTimeFormatter TIME = DateTimeFormatter.ofPattern("HH:mm").withZone(ZoneId.systemDefault());
+
+    private static final String BUBBLE_START = "<div class=\"bubble-container\"><p class=\"chat-bubble\"><span class=\"timestamp\">";
+    private static final String BUBBLE_END = "</span></p></div>";
+
+    // Names seen in one session; the cap only matters if players keep renaming
+    private static final int MAX_CACHED = 256;
+
+    // Icon tags by token, and header markup by "token:name"
+    private final Map<PlayerToken, String> icons = new ConcurrentHashMap<>();
+    private final Map<String, String> headers = new ConcurrentHashMap<>();
+    private final Map<String, String> names = new ConcurrentHashMap<>();
+
+    /** The renderer shared by everything in this process. */
+    public static ChatRenderer shared() {
+        return SHARED;
+    }
+
+    public String render(ChatEvent event) {
+        String time = TIME.format(Instant.ofEpochMilli(event.getTimestamp()));
+        switch (event.getKind()) {
+            case PUBLIC:
+                return BUBBLE_START + time + "</span>" + header(event.getSender(), event.getSenderToken(), true)
+                        + " <span class=\"message\">" + escapeHtml(insertZeroWidthSpace(event.getText())) + BUBBLE_END;
+            case IMAGE:
+                return BUBBLE_START + time + "</span>" + header(event.getSender(), event.getSenderToken(), false)
+                        + " <span class=\"message\"><img src='" + event.getMedia().replace("'", "%27") + "' width='150'>" + BUBBLE_END;
+            case EMOTE:
+                return "<p class=\"system log\">* " + coloredName(event.getSender(), event.getSenderToken()) + " "
+                        + escapeHtml(insertZeroWidthSpace(event.getText())) + " *</p>";
+            case WHISPER_TO:
+                return "<p class=\"system private\">" + time + " [To " + coloredName(event.getPeer(), event.getPeerToken()) + "]: "
+                        + escapeHtml(insertZeroWidthSpace(event.getText())) + "</p>";
+            case WHISPER_FROM:
+                return "<p class=\"system private\">" + time + " [From " + coloredName(event.getSender(), event.getSenderToken()) + "]: "
+                        + escapeHtml(insertZeroWidthSpace(event.getText())) + "</p>";
+            case ERROR:
+                return "<p class=\"log\">" + time + " <i>[Error] " + lines(event.getText()) + "</i></p>";
+            case NOTICE:
+                return "<p class=\"system\">" + lines(event.getText()) + "</p>";
+            case SYSTEM:
+            default:
+                return "<p class=\"log\">" + time + " <i>[System] " + lines(event.getText()) + "</i></p>";
+        }
+    }
+
+    public static String colorFor(PlayerToken token) {
+        return token == null ? DEFAULT_COLOR : PLAYER_COLORS.getOrDefault(token, DEFAULT_COLOR);
+    }
+
+    // Icon (bubbles with text only) and colored name, e.g. "<img ...> <span class="name" ...>Bob:</span>"
+    private String header(String name, PlayerToken token, boolean withIcon) {
+        if (headers.size() > MAX_CACHED) headers.clear();
+        String key = (withIcon ? "i" : "") + token + ":" + name;
+        return headers.computeIfAbsent(key, k -> (withIcon ? iconTag(token) : "")
+                + "<span class=\"name\" style=\"color: " + colorFor(token) + ";\">" + escapeHtml(String.valueOf(name)) + ":</span>");
+    }
+
+    private String coloredName(String name, PlayerToken token) {
+        if (names.size() > MAX_CACHED) names.clear();
+        return names.computeIfAbsent(token + ":" + name,
+                k -> "<font color='" + colorFor(token) + "'>" + escapeHtml(String.valueOf(name)) + "</font>");
+    }
+
+    // The token icons ship with the game, so the path points into this client's own resources
+    private String iconTag(PlayerToken token) {
+        if (token == null) return "";
+        return icons.computeIfAbsent(token, t -> {
+            URL url = ChatRenderer.class.getResource("/tokens/" + t.name().toLowerCase() + ".png");
+            return url != null ? "<img src='" + url + "' width='24' height='24' align='middle'> " : "";
+        });
+    }
+
+    private static String lines(String text) {
+        return escapeHtml(text == null ? "" : text).replace("\n", "<br>&nbsp; ");
+    }
+
+    public static String escapeHtml(String text) {
+        return text.replace("&", "&amp;").replace("<", "&lt;").replace(">", "&gt;");
+    }
+
+    private static String insertZeroWidthSpace(String text) {
+        if (text == null || text.isEmpty()) return "";
+        StringBuilder result = new StringBuilder();
+        for (String word : text.split("\\s+")) {
+            if (word.length() > MAX_WORD) {
+                result.append('\u200B');
+                for (int i = 0; i < word.length(); i += MAX_WORD) {
+                    result.append(word, i, Math.min(i + MAX_WORD, word.length()));
+                    if (i + MAX_WORD < word.length()) result.append('\u200B');
+                }
+            } else {
+                result.append(word);
+            }
+            result.append(" ");
+        }
+        return result.toString().trim();
+    }
+}
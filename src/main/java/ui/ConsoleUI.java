@@ -0,0 +1,70 @@
+package ui;
+
+import board.fields.BoardField;
+import game.GameController;
+import mechanics.CasinoConfiguration;
+import mechanics.TradeOffer;
+import players.Player;
+import util.PlayerToken;
+
+import java.util.List;
+
+/**
+ * UI for a game without a local player, e.g. an extra room on a shared server.
+ * Messages go to stdout, prompts are never answered and everything visual is a no-op.
+ * Clients still get the full UI through the network wrapper in GameController.
+ */
+public class ConsoleUI implements UIInterface {
+    private final String name;
+
+    public ConsoleUI(String name) {
+        this.name = name;
+    }
+
+    private void print(String message) {
+        // Log lines are HTML fragments meant for the Swing log panel
+        System.out.println("[" + name + "] " + message.replaceAll("<[^>]*>", "").replace("&nbsp;", " "));
+    }
+
+    @Override public void showNotification(String message) { print(message); }
+    @Override public void logMessage(String message) { print(message); }
+    @Override public void displayChatMessage(String message) { print(message); }
+
+    @Override public String askForString(String prompt) { return null; }
+    @Override public int askForInt(String prompt, int min, int max) { return min; }
+    @Override public boolean askForBoolean(String prompt) { return false; }
+    @Override public boolean askForBoolean(Player player, String prompt) { return false; }
+    @Override public TradeOffer askForTradeOffer(Player player, String prompt) { return null; }
+    @Override public String[] askForTunnelDetails(String prompt) { return null; }
+    @Override public String askForSelection(String prompt, String[] options) { return null; }
+
+    @Override public void clearLog() {}
+    @Override public void resetFullLog() {}
+    @Override public void showFullLog() {}
+    @Override public void showMainMenu() {}
+    @Override public void showGameWindow() {}
+    @Override public void hideGameWindow() {}
+
+    @Override public void setGameController(GameController controller) {}
+    @Override public void show() {}
+
+    @Override public void showBoard(List<BoardField> fields) {}
+    @Override public void createPlayerToken(Player player) {}
+    @Override public void removePlayerToken(PlayerToken token) {}
+    @Override public void movePlayerToken(PlayerToken token, int newPosition) {}
+    @Override public void updatePlayerStats(Player player) {}
+    @Override public void updatePropertyOwner(int position, Player owner) {}
+
+    @Override public void resetBoard() {}
+    @Override public void resetStats() {}
+
+    @Override public void setPlayerTurn(Player player) {}
+    @Override public void setControlsEnabled(boolean roll, boolean improve, boolean trade) {}
+    @Override public void showFullImage(String imageUrl) {}
+    @Override public void showCasinoDialog(Player player, GameController controller, CasinoConfiguration config) {}
+    @Override public void updateBoardState(List<BoardField> newFields) {}
+    @Override public void showRadioWindow() {}
+    @Override public void stopRadio() {}
+    @Override public void showProgress(String status, int percent) {}
+    @Override public void hideProgress() {}
+}
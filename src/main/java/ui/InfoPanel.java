@@ -100,6 +100,11 @@ public class InfoPanel extends JPanel {
         if (panel != null) panel.updateDisplay(player);
     }
 
+    public void updateLatency(PlayerToken player, int rttMillis, int jitterMillis) {
+        PlayerStatsPanel panel = playerPanels.get(player);
+        if (panel != null) panel.updateLatency(rttMillis, jitterMillis);
+    }
+
     public void removePlayer(PlayerToken player) {
         if (player == null) return;
         PlayerStatsPanel panel = playerPanels.remove(player);
@@ -123,6 +128,7 @@ public class InfoPanel extends JPanel {
     private static class PlayerStatsPanel extends JPanel {
         // Map to hold the label for each resource type
         private Map<ResourceType, JLabel> resourceLabels;
+        private JLabel latencyLabel;
 
         PlayerStatsPanel() {
             setLayout(new BoxLayout(this, BoxLayout.Y_AXIS));
@@ -150,6 +156,13 @@ public class InfoPanel extends JPanel {
                 }
             }
 
+            // 4. Network latency (hidden until the host reports one)
+            latencyLabel = new JLabel();
+            latencyLabel.setFont(GameWindow.FALLOUT_FONT.deriveFont(14f));
+            latencyLabel.setAlignmentX(Component.LEFT_ALIGNMENT);
+            latencyLabel.setVisible(false);
+            add(latencyLabel);
+
             // Push content to top
             add(Box.createVerticalGlue());
         }
@@ -189,6 +202,12 @@ public class InfoPanel extends JPanel {
             }
         }
 
+        public void updateLatency(int rttMillis, int jitterMillis) {
+            latencyLabel.setText(" Ping: " + rttMillis + " ms (\u00B1" + jitterMillis + ")");
+            latencyLabel.setForeground(rttMillis < 100 ? GameWindow.FALLOUT_GREEN : rttMillis < 250 ? Color.ORANGE : Color.RED);
+            latencyLabel.setVisible(true);
+        }
+
         public void updateDisplay(Player player) {
             for (ResourceType type : ResourceType.values()) {
                 JLabel label = resourceLabels.get(type);
@@ -2,9 +2,16 @@ package ui;
 
 import game.GameController;
 import game.SaveManager;
+import game.network.ChatEvent;
+import game.network.Connection;
+import game.network.JoinSnapshot;
+import game.network.MediaReceiver;
 import game.network.NetworkMessage;
+import game.network.Protocol;
 import game.network.SessionCodec;
 import game.network.IpUtil;
+import game.network.TcpTransport;
+import game.network.Transport;
 import mechanics.TradeOffer;
 import players.Player;
 import util.PlayerToken;
@@ -13,19 +20,28 @@ import board.fields.BoardField;
 import com.formdev.flatlaf.FlatDarkLaf;
 import javax.swing.*;
 import java.awt.*;
-import java.io.ObjectInputStream;
-import java.io.ObjectOutputStream;
-import java.net.Socket;
+import java.util.ArrayList;
 import java.util.List;
 
 public class MainMenuWindow extends JFrame {
 
     private GameController controller;
-    private ObjectOutputStream clientNetworkOut;
+    private Connection clientNetworkOut;
     private Player self;
+    private long connectStartedNanos; // For measuring join time until the snapshot is applied
+
+    // Session the host assigned us (SESSION_INFO), presented again when reconnecting
+    private volatile PlayerToken sessionSlot;
+    private volatile long sessionEpoch;
+    private volatile long lastServerSequence;
+    // Joined to watch only; reconnects as a spectator again once a snapshot arrived
+    private volatile boolean spectating;
+    private volatile boolean watching;
+
+    // Delays between reconnect attempts after the connection drops
+    private static final int[] RECONNECT_DELAYS_MS = {0, 100, 250, 500, 1000, 2000, 4000};
     private JTextField usernameField;
 
-    private Socket clientSocket;
     private Thread networkListenerThread;
 
     static {
@@ -220,9 +236,16 @@ public class MainMenuWindow extends JFrame {
                 }
             }
             else if (selectedOption.equals("Join by Session ID")) {
-                String input = JOptionPane.showInputDialog(this, "Enter Session ID (e.g., VAULT-XYZ or VAULT-XYZ:12345):");
+                String input = JOptionPane.showInputDialog(this, "Enter Session ID (e.g., VAULT-XYZ, VAULT-XYZ:12345 or VAULT-XYZ:12345/room):");
                 if (input != null && !input.isBlank()) {
                     try {
+                        // Optional room after a slash (format: ID:PORT/ROOM)
+                        String room = null;
+                        if (input.contains("/")) {
+                            room = input.substring(input.indexOf('/') + 1).trim();
+                            input = input.substring(0, input.indexOf('/'));
+                        }
+
                         // Check for custom port in ID (format: ID:PORT)
                         String sessionId = input;
                         if (input.contains(":")) {
@@ -232,7 +255,7 @@ public class MainMenuWindow extends JFrame {
                         }
 
                         ip = SessionCodec.decodeSessionId(sessionId);
-                        if (ip != null) connectToServer(ip, port, username);
+                        if (ip != null) connectToServer(ip, port, username, room);
 
                     } catch (Exception ex) {
                         JOptionPane.showMessageDialog(this, "Invalid Session ID or Port.", "Error", JOptionPane.ERROR_MESSAGE);
@@ -242,11 +265,14 @@ public class MainMenuWindow extends JFrame {
             else if (selectedOption.equals("Join by Address")) {
                 JTextField hostField = new JTextField();
                 JTextField portField = new JTextField();
-                Object[] message = {"Host:", hostField, "Port:", portField};
+                JTextField roomField = new JTextField();
+                JCheckBox watchBox = new JCheckBox("Watch only (spectator or relay)");
+                Object[] message = {"Host:", hostField, "Port:", portField, "Room (optional):", roomField, watchBox};
                 int option = JOptionPane.showConfirmDialog(this, message, "Join", JOptionPane.OK_CANCEL_OPTION);
                 if (option == JOptionPane.OK_OPTION) {
                     try {
-                        connectToServer(hostField.getText(), Integer.parseInt(portField.getText()), username);
+                        connect(new TcpTransport(hostField.getText(), Integer.parseInt(portField.getText())),
+                                username, roomField.getText().trim(), watchBox.isSelected());
                     } catch (Exception ex) {
                         JOptionPane.showMessageDialog(this, "Invalid Input.");
                     }
@@ -401,42 +427,92 @@ public class MainMenuWindow extends JFrame {
     }
 
     private void connectToServer(String host, int port, String username) {
-        try {
-            clientSocket = new Socket(host, port);
+        connectToServer(host, port, username, null);
+    }
 
-            ObjectOutputStream out = new ObjectOutputStream(clientSocket.getOutputStream());
-            out.flush();
-            this.clientNetworkOut = out;
+    /** @param room room to join on a shared server, null or blank for the default room. */
+    private void connectToServer(String host, int port, String username, String room) {
+        connect(new TcpTransport(host, port), username, room);
+    }
 
-            ObjectInputStream in = new ObjectInputStream(clientSocket.getInputStream());
+    /**
+     * Joins a game through any transport: TCP for remote hosts, loopback for a host
+     * in this JVM.
+     */
+    public void connect(Transport transport, String username, String room) {
+        connect(transport, username, room, false);
+    }
 
-            out.writeObject(new NetworkMessage(NetworkMessage.MessageType.CLIENT_INFO, username));
-            out.flush();
+    /** @param spectate watch without taking a seat. */
+    public void connect(Transport transport, String username, String room, boolean spectate) {
+        try {
+            spectating = spectate;
+            sessionSlot = null;
+            lastServerSequence = 0;
+            connectStartedNanos = System.nanoTime();
+            Connection out = transport.connect();
+            this.clientNetworkOut = out;
+
+            String roomId = room != null && !room.isBlank() ? room : null;
+            out.send(new NetworkMessage(NetworkMessage.MessageType.CLIENT_INFO,
+                    new Object[]{username, null, 0L, 0L, roomId, Protocol.VERSION, Protocol.localFeatures(), spectate}));
 
             SwingUI ui = new SwingUI();
             GameController controller = new GameController(ui, out);
+            controller.setWatchOnly(spectate);
             ui.setGameController(controller);
             ui.getMainMenuWindow().setGameController(controller);
 
             networkListenerThread = new Thread(() -> {
-                try {
-                    while (true) {
+                Connection channel = out;
+                MediaReceiver media = new MediaReceiver();
+                while (channel != null) {
+                    try {
+                        while (true) {
+                            if (Thread.currentThread().isInterrupted()) {
+                                return;
+                            }
+                            NetworkMessage msg = channel.receive();
+                            if (channel.getLastReceivedSequence() > 0) lastServerSequence = channel.getLastReceivedSequence();
+                            if (msg.getType() == NetworkMessage.MessageType.PING) {
+                                // Answer right here, a busy EDT should not count as network lag
+                                channel.send(new NetworkMessage(NetworkMessage.MessageType.PONG, msg.getPayload()));
+                                continue;
+                            }
+                            if (msg.getType() == NetworkMessage.MessageType.SERVER_HELLO) {
+                                // Write with whatever the host agreed to from now on
+                                Object[] hello = (Object[]) msg.getPayload();
+                                channel.setFeatures((Integer) hello[1]);
+                                System.out.println("NETWORK: Protocol v" + hello[0] + ", features: " + Protocol.describe((Integer) hello[1]));
+                                continue;
+                            }
+                            if (MediaReceiver.isMediaMessage(msg.getType())) {
+                                // Chunks go straight to disk, the EDT only hears about finished images
+                                MediaReceiver.Received image = media.handle(msg);
+                                if (image != null) {
+                                    SwingUtilities.invokeLater(() -> controller.showReceivedImage(image.getSender(), image.getFile()));
+                                }
+                                continue;
+                            }
+                            handleServerMessage(msg, ui, controller);
+                        }
+                    } catch (Exception ex) {
                         if (Thread.currentThread().isInterrupted()) {
-                            break;
+                            return;
                         }
-                        NetworkMessage msg = (NetworkMessage) in.readObject();
-                        handleServerMessage(msg, ui, controller);
-                    }
-                } catch (Exception ex) {
-                    if (!Thread.currentThread().isInterrupted()) {
-                        System.err.println("[Debug] Network listener disconnected.");
-                        SwingUtilities.invokeLater(() -> {
-                            ui.showNotification("Disconnected from server.");
-                            ui.hideGameWindow();
-                            ui.showMainMenu();
-                        });
+                        boolean wasWatching = watching;
+                        watching = false; // A refused reconnect must not loop
+                        if (sessionSlot == null && !wasWatching) break; // Never got into a game, nothing to resume
+                        System.err.println("[Debug] Network listener disconnected, trying to resume...");
+                        media.abortAll(); // The host does not resend half-finished images
+                        channel = reconnect(transport, username, roomId, controller);
                     }
                 }
+                SwingUtilities.invokeLater(() -> {
+                    ui.showNotification("Disconnected from server.");
+                    ui.hideGameWindow();
+                    ui.showMainMenu();
+                });
             });
             networkListenerThread.start();
 
@@ -446,175 +522,267 @@ public class MainMenuWindow extends JFrame {
 
         } catch (Exception ex) {
             ex.printStackTrace();
-            JOptionPane.showMessageDialog(this, "Failed to connect to " + host + ":" + port + "\n" + ex.getMessage());
+            JOptionPane.showMessageDialog(this, "Failed to connect to " + transport.describe() + "\n" + ex.getMessage());
         }
     }
 
+    /**
+     * Reconnects after a dropped connection, presenting our slot and the last message
+     * we saw so the host only replays what we missed.
+     * @return the new connection, or null if the host could not be reached.
+     */
+    private Connection reconnect(Transport transport, String username, String roomId, GameController controller) {
+        long started = System.nanoTime();
+        for (int delay : RECONNECT_DELAYS_MS) {
+            try {
+                if (delay > 0) Thread.sleep(delay);
+                Connection channel = transport.connect();
+                channel.send(new NetworkMessage(NetworkMessage.MessageType.CLIENT_INFO,
+                        new Object[]{username, sessionSlot, sessionEpoch, lastServerSequence, roomId,
+                                Protocol.VERSION, Protocol.localFeatures(), spectating}));
+
+                this.clientNetworkOut = channel;
+                controller.setNetworkChannel(channel);
+                System.out.println("NETWORK: Reconnected in " + (System.nanoTime() - started) / 1_000_000
+                        + " ms, resuming after #" + lastServerSequence);
+                return channel;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return null;
+            } catch (Exception e) {
+                System.err.println("[Debug] Reconnect failed: " + e.getMessage());
+            }
+        }
+        return null;
+    }
+
     private void connectToServer(String ip, String username) {
         connectToServer(ip, 10365, username);
     }
 
     private void handleServerMessage(NetworkMessage msg, UIInterface ui, GameController controller) {
         SwingUtilities.invokeLater(() -> {
-            try {
-                switch (msg.getType()) {
+            if (msg.getType() == NetworkMessage.MessageType.BATCH) {
+                // Apply the whole batch in one EDT hop, in the order the server sent it
+                for (Object part : (Object[]) msg.getPayload()) {
+                    NetworkMessage inner = (NetworkMessage) part;
+                    if (isBlockingPrompt(inner.getType())) {
+                        // Dialogs are modal, let the rest of the batch land before one opens
+                        SwingUtilities.invokeLater(() -> dispatchServerMessage(inner, ui, controller));
+                    } else {
+                        dispatchServerMessage(inner, ui, controller);
+                    }
+                }
+            } else {
+                dispatchServerMessage(msg, ui, controller);
+            }
+        });
+    }
 
-                    case LOG_MESSAGE:
-                        ui.logMessage((String) msg.getPayload());
-                        break;
-                    case CHAT_MESSAGE:
-                        ui.displayChatMessage((String) msg.getPayload());
-                        break;
-                    case CLEAR_LOG:
-                        ui.clearLog();
-                        break;
-                    case SHOW_NOTIFICATION:
-                        ui.showNotification((String) msg.getPayload());
-                        break;
-                    case INITIALIZE_BOARD:
-                        ui.showBoard((List<BoardField>) msg.getPayload());
-                        break;
-                    case ADD_PLAYER_TOKEN:
-                        ui.createPlayerToken((Player) msg.getPayload());
-                        break;
-                    case REMOVE_PLAYER_TOKEN:
-                        Player playerToRemove = (Player) msg.getPayload();
-                        if (playerToRemove != null) {
-                            ui.removePlayerToken(playerToRemove.getToken());
-                        }
-                        break;
-                    case MOVE_PLAYER_TOKEN:
-                        Object[] moveData = (Object[]) msg.getPayload();
-                        ui.movePlayerToken((PlayerToken) moveData[0], (Integer) moveData[1]);
-                        break;
-                    case UPDATE_PLAYER_STATS:
-                        Player updatedPlayer = (Player) msg.getPayload();
-                        ui.updatePlayerStats(updatedPlayer);
+    private static boolean isBlockingPrompt(NetworkMessage.MessageType type) {
+        switch (type) {
+            case SHOW_BOOLEAN_DIALOG:
+            case SHOW_SELECTION_DIALOG:
+            case REQUEST_BUILD_OFFER:
+            case REQUEST_ACCEPT_TRADE:
+            case SHOW_CASINO_DIALOG:
+                return true;
+            default:
+                return false;
+        }
+    }
 
-                        if (this.self != null && this.self.equals(updatedPlayer)) {
-                            this.self = updatedPlayer;
-                            controller.setSelfPlayer(this.self);
-                        }
+    private void dispatchServerMessage(NetworkMessage msg, UIInterface ui, GameController controller) {
+        try {
+            switch (msg.getType()) {
+
+                case LOG_MESSAGE:
+                    ui.logMessage((String) msg.getPayload());
+                    break;
+                case CHAT_MESSAGE:
+                    ui.displayChatMessage((String) msg.getPayload());
+                    break;
+                case CLEAR_LOG:
+                    ui.clearLog();
+                    break;
+                case SHOW_NOTIFICATION:
+                    ui.showNotification((String) msg.getPayload());
+                    break;
+                case INITIALIZE_BOARD:
+                    ui.showBoard((List<BoardField>) msg.getPayload());
+                    break;
+                case ADD_PLAYER_TOKEN:
+                    ui.createPlayerToken((Player) msg.getPayload());
+                    break;
+                case REMOVE_PLAYER_TOKEN:
+                    Player playerToRemove = (Player) msg.getPayload();
+                    if (playerToRemove != null) {
+                        ui.removePlayerToken(playerToRemove.getToken());
+                    }
+                    break;
+                case MOVE_PLAYER_TOKEN:
+                    Object[] moveData = (Object[]) msg.getPayload();
+                    ui.movePlayerToken((PlayerToken) moveData[0], (Integer) moveData[1]);
+                    break;
+                case UPDATE_PLAYER_STATS:
+                    Player updatedPlayer = (Player) msg.getPayload();
+                    ui.updatePlayerStats(updatedPlayer);
+
+                    if (this.self != null && this.self.equals(updatedPlayer)) {
+                        this.self = updatedPlayer;
+                        controller.setSelfPlayer(this.self);
+                    }
 
-                        controller.refreshPropertiesWindow();
-                        break;
+                    controller.refreshPropertiesWindow();
+                    break;
 
-                    case UPDATE_PROPERTY_OWNER:
-                        Object[] data = (Object[]) msg.getPayload();
-                        Integer pos = (Integer) data[0];
+                case UPDATE_PROPERTY_OWNER:
+                    Object[] data = (Object[]) msg.getPayload();
+                    Integer pos = (Integer) data[0];
 
-                        // Handle PlayerToken instead of Player object
-                        PlayerToken ownerToken = (PlayerToken) data[1];
-                        Player owner = null;
+                    // Handle PlayerToken instead of Player object
+                    PlayerToken ownerToken = (PlayerToken) data[1];
+                    Player owner = null;
 
-                        // Find local player object by token
-                        if (ownerToken != null && controller.getPlayers() != null) {
-                            for (Player p : controller.getPlayers()) {
-                                if (p.getToken() == ownerToken) {
-                                    owner = p;
-                                    break;
-                                }
+                    // Find local player object by token
+                    if (ownerToken != null && controller.getPlayers() != null) {
+                        for (Player p : controller.getPlayers()) {
+                            if (p.getToken() == ownerToken) {
+                                owner = p;
+                                break;
                             }
                         }
+                    }
 
-                        // 1. Update the Visual Board (UI)
-                        ui.updatePropertyOwner(pos, owner);
-
-                        // 2. Update the Logic Board (Controller Model)
-                        controller.setPropertyOwner(pos, owner);
-
-                        // 3. Refresh the Properties Window
-                        controller.refreshPropertiesWindow();
-                        break;
-                    case SET_PLAYER_TURN:
-                        ui.setPlayerTurn((Player) msg.getPayload());
-                        break;
-                    case SET_CONTROLS:
-                        boolean[] controls = (boolean[]) msg.getPayload();
-                        ui.setControlsEnabled(controls[0], controls[1], controls[2]);
-                        break;
-                    case RESET_UI:
-                        ui.resetBoard();
-                        ui.resetStats();
-                        ui.clearLog();
-                        ui.resetFullLog();
-                        break;
-                    case SET_CLIENT_PLAYER:
-                        this.self = (Player) msg.getPayload();
-                        controller.setSelfPlayer(this.self);
-                        break;
-                    case GAME_OVER:
-                        ui.showNotification((String) msg.getPayload());
-                        ui.hideGameWindow();
-                        ui.showMainMenu();
-                        disconnectFromServer();
-                        break;
-                    // --- DIALOGS ---
-                    case SHOW_BOOLEAN_DIALOG:
-                        String buyPrompt = (String) msg.getPayload();
-                        boolean wantsToBuy = ui.askForBoolean(buyPrompt);
-                        sendResponse(clientNetworkOut, new NetworkMessage(NetworkMessage.MessageType.RESPONSE_BUY_PROPERTY, wantsToBuy));
-                        break;
-                    case SHOW_SELECTION_DIALOG:
-                        Object[] dialogData = (Object[]) msg.getPayload();
-                        String prompt = (String) dialogData[0];
-                        String[] options = (String[]) dialogData[1];
-                        String choice = ui.askForSelection(prompt, options);
-
-                        NetworkMessage.MessageType responseType;
-                        if (prompt.contains("jail")) {
-                            responseType = NetworkMessage.MessageType.RESPONSE_JAIL_ACTION;
-                        } else if (prompt.contains("improve")) {
-                            responseType = NetworkMessage.MessageType.RESPONSE_IMPROVE_SELECTION;
-                        } else if (prompt.contains("trade with")) {
-                            responseType = NetworkMessage.MessageType.RESPONSE_TRADE_SELECTION;
-                        } else {
-                            responseType = NetworkMessage.MessageType.LOG_MESSAGE;
-                        }
-                        sendResponse(clientNetworkOut, new NetworkMessage(responseType, choice));
-                        break;
-                    case REQUEST_BUILD_OFFER:
-                        String buildPrompt = (String) msg.getPayload();
-                        TradeOffer offer = ui.askForTradeOffer(this.self, buildPrompt);
-                        sendResponse(clientNetworkOut, new NetworkMessage(NetworkMessage.MessageType.RESPONSE_BUILD_OFFER, offer));
-                        break;
-                    case REQUEST_ACCEPT_TRADE:
-                        String summary = (String) msg.getPayload();
-                        boolean accepted = ui.askForBoolean(summary);
-                        sendResponse(clientNetworkOut, new NetworkMessage(NetworkMessage.MessageType.RESPONSE_ACCEPT_TRADE, accepted));
-                        break;
-                    case SHOW_CASINO_DIALOG:
-                        mechanics.CasinoConfiguration config = (mechanics.CasinoConfiguration) msg.getPayload();
-                        ui.showCasinoDialog(this.self, controller, config);
-                        break;
-                    case SYNC_BOARD_STATE:
-                        List<BoardField> fields = (List<BoardField>) msg.getPayload();
-                        // This updates the logic, the board UI, and the properties window
-                        controller.updateBoardState(fields);
-                        break;
-                    case PLAYER_CHAT:
-                        Object[] chatData = (Object[]) msg.getPayload();
-                        String senderName = (String) chatData[0];
-                        PlayerToken senderToken = (PlayerToken) chatData[1];
-                        String text = (String) chatData[2];
-
-                        // Route through controller to handle chat
-                        controller.handleIncomingChat(senderName, senderToken, text);
+                    // 1. Update the Visual Board (UI)
+                    ui.updatePropertyOwner(pos, owner);
+
+                    // 2. Update the Logic Board (Controller Model)
+                    controller.setPropertyOwner(pos, owner);
+
+                    // 3. Refresh the Properties Window
+                    controller.refreshPropertiesWindow();
+                    break;
+                case SET_PLAYER_TURN:
+                    ui.setPlayerTurn((Player) msg.getPayload());
+                    break;
+                case SET_CONTROLS:
+                    boolean[] controls = (boolean[]) msg.getPayload();
+                    ui.setControlsEnabled(controls[0], controls[1], controls[2]);
+                    break;
+                case RESET_UI:
+                    ui.resetBoard();
+                    ui.resetStats();
+                    ui.clearLog();
+                    ui.resetFullLog();
+                    break;
+                case SET_CLIENT_PLAYER:
+                    this.self = (Player) msg.getPayload();
+                    controller.setSelfPlayer(this.self);
+                    break;
+                case PLAYER_LATENCY:
+                    if (ui instanceof SwingUI) ((SwingUI) ui).updatePlayerLatencies((Object[]) msg.getPayload());
+                    break;
+                case SESSION_INFO:
+                    Object[] session = (Object[]) msg.getPayload();
+                    this.sessionSlot = (PlayerToken) session[0];
+                    this.sessionEpoch = (Long) session[1];
+                    if ((Boolean) session[2]) {
+                        System.out.println("NETWORK: Session resumed without a resync.");
+                    }
+                    break;
+                case JOIN_SNAPSHOT:
+                    JoinSnapshot snapshot = (JoinSnapshot) msg.getPayload();
+                    controller.applyJoinSnapshot(snapshot);
+                    this.self = snapshot.getSelf();
+                    watching = spectating;
+                    System.out.println("NETWORK: Joined in " + (System.nanoTime() - connectStartedNanos) / 1_000_000
+                            + " ms (" + snapshot.getPlayers().size() + " players, board v" + snapshot.getBoardVersion() + ")");
+                    sendResponse(clientNetworkOut, new NetworkMessage(NetworkMessage.MessageType.ACK_BOARD_VERSION, snapshot.getBoardVersion()));
+                    break;
+                case GAME_OVER:
+                    ui.showNotification((String) msg.getPayload());
+                    ui.hideGameWindow();
+                    ui.showMainMenu();
+                    disconnectFromServer();
+                    break;
+                // --- DIALOGS ---
+                // Prompts end with {request id, ms to answer}; the answer echoes the id
+                case SHOW_BOOLEAN_DIALOG:
+                    Object[] buyData = (Object[]) msg.getPayload();
+                    boolean wantsToBuy = ui.askForBoolean(withDeadline((String) buyData[0], buyData[2]));
+                    sendResponse(clientNetworkOut, new NetworkMessage(NetworkMessage.MessageType.RESPONSE_BUY_PROPERTY, new Object[]{buyData[1], wantsToBuy}));
+                    break;
+                case SHOW_SELECTION_DIALOG:
+                    Object[] dialogData = (Object[]) msg.getPayload();
+                    String prompt = (String) dialogData[0];
+                    String[] options = (String[]) dialogData[1];
+                    String choice = ui.askForSelection(withDeadline(prompt, dialogData[3]), options);
+                    sendResponse(clientNetworkOut, new NetworkMessage(NetworkMessage.selectionResponseType(prompt), new Object[]{dialogData[2], choice}));
+                    break;
+                case REQUEST_BUILD_OFFER:
+                    Object[] buildData = (Object[]) msg.getPayload();
+                    TradeOffer offer = ui.askForTradeOffer(this.self, withDeadline((String) buildData[0], buildData[2]));
+                    sendResponse(clientNetworkOut, new NetworkMessage(NetworkMessage.MessageType.RESPONSE_BUILD_OFFER, new Object[]{buildData[1], offer}));
+                    break;
+                case REQUEST_ACCEPT_TRADE:
+                    Object[] tradeData = (Object[]) msg.getPayload();
+                    boolean accepted = ui.askForBoolean(withDeadline((String) tradeData[0], tradeData[2]));
+                    sendResponse(clientNetworkOut, new NetworkMessage(NetworkMessage.MessageType.RESPONSE_ACCEPT_TRADE, new Object[]{tradeData[1], accepted}));
+                    break;
+                case SHOW_CASINO_DIALOG:
+                    mechanics.CasinoConfiguration config = (mechanics.CasinoConfiguration) msg.getPayload();
+                    ui.showCasinoDialog(this.self, controller, config);
+                    break;
+                case SYNC_BOARD_STATE:
+                    List<BoardField> fields = (List<BoardField>) msg.getPayload();
+                    // This updates the logic, the board UI, and the properties window
+                    controller.updateBoardState(fields);
+                    break;
+                case SYNC_BOARD_DELTA:
+                    Object[] delta = (Object[]) msg.getPayload();
+                    long boardVersion = (Long) delta[0];
+                    boolean fullSnapshot = (Boolean) delta[1];
+                    List<BoardField> changedFields = new ArrayList<>();
+                    for (Object field : (List<?>) delta[2]) changedFields.add((BoardField) field);
+
+                    if (fullSnapshot) {
+                        controller.updateBoardState(changedFields);
+                    } else if (!controller.applyBoardDelta(changedFields)) {
+                        sendResponse(clientNetworkOut, new NetworkMessage(NetworkMessage.MessageType.REQUEST_BOARD_RESYNC, null));
                         break;
-                }
-            } catch (Exception e) {
-                e.printStackTrace();
+                    }
+                    sendResponse(clientNetworkOut, new NetworkMessage(NetworkMessage.MessageType.ACK_BOARD_VERSION, boardVersion));
+                    break;
+                case PLAYER_CHAT:
+                    Object[] chatData = (Object[]) msg.getPayload();
+                    String senderName = (String) chatData[0];
+                    PlayerToken senderToken = (PlayerToken) chatData[1];
+                    String text = (String) chatData[2];
+
+                    // Route through controller to handle chat
+                    controller.handleIncomingChat(senderName, senderToken, text);
+                    break;
+                case CHAT_EVENT:
+                    controller.showChatEvent((ChatEvent) msg.getPayload());
+                    break;
             }
-        });
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
     }
 
-    private void sendResponse(ObjectOutputStream out, NetworkMessage msg) {
+    /** Tells the player how long the host waits before answering for them. */
+    private static String withDeadline(String prompt, Object timeoutMillis) {
+        if (!(timeoutMillis instanceof Long)) return prompt;
+        return prompt + " (" + (Long) timeoutMillis / 1000 + "s to answer)";
+    }
+
+    private void sendResponse(Connection out, NetworkMessage msg) {
         new Thread(() -> {
             try {
                 if (out != null) {
-                    out.writeObject(msg);
-                    out.flush();
-                    out.reset();
+                    out.send(msg);
                 }
             } catch (Exception e) {
                 System.out.println("Could not send response (may be disconnected).");
@@ -626,18 +794,11 @@ public class MainMenuWindow extends JFrame {
         if (networkListenerThread != null) {
             networkListenerThread.interrupt();
         }
-        try {
-            if (clientNetworkOut != null) {
-                clientNetworkOut.close();
-            }
-            if (clientSocket != null) {
-                clientSocket.close();
-            }
-        } catch (java.io.IOException e) {
-            System.out.println("Client disconnected.");
+        if (clientNetworkOut != null) {
+            System.out.println("Connection stats: " + clientNetworkOut.getStats());
+            clientNetworkOut.close();
         }
         networkListenerThread = null;
-        clientSocket = null;
         clientNetworkOut = null;
     }
 
@@ -1,5 +1,7 @@
 package ui;
 
+import game.network.MediaCache;
+import game.network.MediaIndex;
 import util.WebAudioPlayer;
 import javax.swing.*;
 import javax.swing.border.LineBorder;
@@ -9,12 +11,14 @@ import java.io.IOException;
 
 public class SettingsDialog extends JDialog {
 
+    private static final int MAX_HOT_CACHE_MB = 256;
+
     public SettingsDialog(Frame owner) {
         super(owner, "Settings", true);
 
         getContentPane().setBackground(GameWindow.DARK_BACKGROUND);
         setLayout(new BorderLayout(10, 10));
-        setSize(450, 420);
+        setSize(450, 500);
         setLocationRelativeTo(owner);
 
         JLabel title = new JLabel("VAULT-O-POLY SETTINGS", SwingConstants.CENTER);
@@ -71,6 +75,8 @@ public class SettingsDialog extends JDialog {
         cacheMainPanel.add(createCacheRow("Video/Temp Cache (Raw)", CacheType.VIDEO_TEMP));
         cacheMainPanel.add(Box.createRigidArea(new Dimension(0, 10)));
         cacheMainPanel.add(createCacheRow("GIF Cache (Processed)", CacheType.GIF_PERSISTENT));
+        cacheMainPanel.add(Box.createRigidArea(new Dimension(0, 10)));
+        cacheMainPanel.add(createMemoryRow());
 
         contentPanel.add(cacheMainPanel, BorderLayout.CENTER);
         add(contentPanel, BorderLayout.CENTER);
@@ -190,6 +196,38 @@ public class SettingsDialog extends JDialog {
         return row;
     }
 
+    /**
+     * Slider for the memory the host may use to keep popular GIFs out of the disk's way.
+     */
+    private JPanel createMemoryRow() {
+        JPanel row = new JPanel(new GridLayout(2, 1, 0, 0));
+        row.setBackground(GameWindow.DARK_BACKGROUND);
+
+        MediaCache hotCache = MediaCache.shared();
+        int currentMb = (int) Math.min(MAX_HOT_CACHE_MB, hotCache.getBudget() / (1024 * 1024));
+
+        JLabel label = new JLabel(memoryLabel(currentMb));
+        label.setFont(GameWindow.FALLOUT_FONT.deriveFont(12f));
+        label.setForeground(Color.WHITE);
+        label.setToolTipText("Used while hosting. 0 reads every GIF from disk.");
+        row.add(label);
+
+        JSlider slider = new JSlider(0, MAX_HOT_CACHE_MB, currentMb);
+        slider.setBackground(GameWindow.DARK_BACKGROUND);
+        slider.setForeground(GameWindow.FALLOUT_GREEN);
+        slider.addChangeListener(e -> {
+            label.setText(memoryLabel(slider.getValue()));
+            // Apply once the knob is let go, so dragging does not evict on every step
+            if (!slider.getValueIsAdjusting()) hotCache.setBudget(slider.getValue() * 1024L * 1024L);
+        });
+        row.add(slider);
+        return row;
+    }
+
+    private static String memoryLabel(int mb) {
+        return "GIF Memory Cache (Host): " + (mb == 0 ? "Off" : mb + " MB");
+    }
+
     // --- Cache Logic and Helpers ---
     private enum CacheType {
         VIDEO_TEMP,
@@ -206,9 +244,9 @@ public class SettingsDialog extends JDialog {
                 prefix = "vop_";
                 break;
             case GIF_PERSISTENT:
-                directory = getPersistentCacheDir();
-                prefix = "";
-                break;
+                // The index already knows, no need to walk the folder
+                MediaIndex gifCache = MediaIndex.shared();
+                return new long[]{gifCache.size(), gifCache.getTotalBytes()};
             default:
                 return new long[]{0, 0};
         }
@@ -216,8 +254,7 @@ public class SettingsDialog extends JDialog {
     }
 
     private File getPersistentCacheDir() {
-        String path = System.getProperty("user.home") + File.separator + "VaultOPolyCache" + File.separator + "gifs";
-        return new File(path);
+        return MediaIndex.shared().getDirectory();
     }
 
     private long[] deleteCacheFiles(File directory, String prefix) {
@@ -263,7 +300,7 @@ public class SettingsDialog extends JDialog {
                 break;
             case GIF_PERSISTENT:
                 name = "GIF Cache";
-                results = deleteCacheFiles(getPersistentCacheDir(), "");
+                results = MediaIndex.shared().clear();
                 break;
             default:
                 return;
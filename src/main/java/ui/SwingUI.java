@@ -354,6 +354,50 @@ public class SwingUI implements UIInterface {
         return gameWindow;
     }
 
+    public java.io.File chooseSaveFile() {
+        return game.SaveManager.chooseFileToSave(gameWindow);
+    }
+
+    public java.io.File chooseLoadFile() {
+        return game.SaveManager.chooseFileToLoad(mainMenuWindow);
+    }
+
+    /** Asks the host whether a client's video may be downloaded and converted to a GIF. */
+    public boolean confirmGifRequest(String username, String url, long fileSizeBytes, double durationSeconds) {
+        String sourceSize = "Unknown";
+        if (fileSizeBytes > 0) {
+            double mb = fileSizeBytes / (1024.0 * 1024.0);
+            sourceSize = String.format("%.2f MB", mb);
+        }
+
+        // ESTIMATION: 320p @ 10fps usually averages 0.3-0.5 MB/s depending on complexity/dithering.
+        // We use 0.35 MB/s as a reasonable heuristic to warn the host.
+        double estMb = durationSeconds * 0.35;
+        String estSize = String.format("~%.2f MB", estMb);
+
+        JEditorPane linkPane = new JEditorPane("text/html",
+                "<html><body style='font-family: Sans-Serif;'>" +
+                        "Request from: <b>" + username + "</b><br>" +
+                        "File: " + (url.length() > 50 ? url.substring(0, 47) + "..." : url) + "<br>" +
+                        "Video Size: <b>" + sourceSize + "</b><br>" +
+                        "Est. GIF Size: <b>" + estSize + "</b><br><br>" +
+                        "<b><a href='" + url + "' style='color: #55ff55;'>Open in Browser</a></b><br><br>" +
+                        "Do you want to download and convert this file?</body></html>");
+        linkPane.setEditable(false);
+        linkPane.setOpaque(false);
+        linkPane.putClientProperty(JEditorPane.HONOR_DISPLAY_PROPERTIES, Boolean.TRUE);
+        linkPane.addHyperlinkListener(e -> {
+            if (javax.swing.event.HyperlinkEvent.EventType.ACTIVATED.equals(e.getEventType())) {
+                try {
+                    Desktop.getDesktop().browse(e.getURL().toURI());
+                } catch (Exception ex) { ex.printStackTrace(); }
+            }
+        });
+
+        int ret = JOptionPane.showConfirmDialog(gameWindow, linkPane, "Security Warning: External Media", JOptionPane.YES_NO_OPTION, JOptionPane.WARNING_MESSAGE);
+        return ret == JOptionPane.YES_OPTION;
+    }
+
     public void handleClientDisconnect() {
         if (controller != null) {
             // Logic handled by controller
@@ -406,6 +450,14 @@ public class SwingUI implements UIInterface {
         }
     }
 
+    /** Shows network latency per player, data is {token, rtt ms, jitter ms, ...} (PLAYER_LATENCY). */
+    public void updatePlayerLatencies(Object[] data) {
+        if (gameWindow == null) return;
+        for (int i = 0; i + 2 < data.length; i += 3) {
+            gameWindow.getInfoPanel().updateLatency((PlayerToken) data[i], (Integer) data[i + 1], (Integer) data[i + 2]);
+        }
+    }
+
     @Override
     public void showRadioWindow() {
         if (gameWindow == null) return;